@@ -0,0 +1,46 @@
+package com.timetable.android;
+
+import android.database.Cursor;
+
+import com.timetable.android.alarm.EventAlarm;
+
+/*
+ * Mapper, that builds EventAlarm from columns of table Alarms.
+ */
+public class AlarmRowMapper extends RowMapper {
+
+	private static final EventAlarm.Type [] TYPES = EventAlarm.Type.values();
+
+	private int mIdIndex;
+
+	private int mTypeIndex;
+
+	private int mTimeIndex;
+
+	@Override
+	protected void resolveColumns(Cursor cursor) {
+		mIdIndex = cursor.getColumnIndex("alm_id");
+		mTypeIndex = cursor.getColumnIndex("alm_type");
+		mTimeIndex = cursor.getColumnIndex("alm_time");
+	}
+
+	/*
+	 * Return true, if current row has no alarm.
+	 */
+	public boolean isNull(Cursor cursor) {
+		bind(cursor);
+		return cursor.isNull(mIdIndex);
+	}
+
+	/*
+	 * Build alarm of given event from current row.
+	 */
+	public EventAlarm map(Cursor cursor, Event event) {
+		bind(cursor);
+		EventAlarm alarm = new EventAlarm(event);
+		alarm.id = cursor.getInt(mIdIndex);
+		alarm.type = TYPES[cursor.getInt(mTypeIndex)];
+		alarm.setTime(cursor.getLong(mTimeIndex));
+		return alarm;
+	}
+}
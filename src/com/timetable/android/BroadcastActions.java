@@ -25,15 +25,5 @@ public class BroadcastActions {
 	 */
 	public static final String ACTION_EVENT_DELETED = "com.timetable.android.ACTION_EVENT_DELETED";
 	
-	/*
-	 * Action to broadcast, when event is started
-	 */
-	public static final String ACTION_EVENT_STARTED = "com.timetable.android.ACTION_EVENT_STARTED";
-	
-	/*
-	 * Action to broadcast, when event is ended
-	 */
-	public static final String ACTION_EVENT_ENDED = "com.timetable.android.ACTION_EVENT_ENDED";
-	
 	
 }
@@ -0,0 +1,261 @@
+package com.timetable.android;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/*
+ * Class, that upgrades database schema step by step without losing data.
+ * Current schema version is saved in table SchemaVersion. Each migration runs in it's own transaction together with
+ * update of the version, so if upgrade is interrupted, it is continued from the last finished migration.
+ * Migrations, that copy many rows, commit each chunk of rows separately, so that database is not locked during whole copy.
+ */
+public class DatabaseMigrator {
+
+	public static final int NO_VERSION = -1;
+
+	public static final int DEFAULT_CHUNK_SIZE = 500;
+
+	private static final long NO_ROWID = Long.MIN_VALUE;
+
+	/*
+	 * Step of upgrade, that brings schema from previous version to version, given in constructor.
+	 */
+	public static abstract class Migration {
+
+		private final int version;
+
+		public Migration(int version) {
+			this.version = version;
+		}
+
+		public int getVersion() {
+			return version;
+		}
+
+		/*
+		 * Change schema and convert data. Is called inside of transaction.
+		 */
+		public abstract void migrate(SQLiteDatabase db, DatabaseMigrator migrator);
+
+		/*
+		 * Run migration and save it's version in one transaction.
+		 */
+		void run(SQLiteDatabase db, DatabaseMigrator migrator) {
+			db.beginTransaction();
+			try {
+				migrate(db, migrator);
+				setVersion(db, version);
+				db.setTransactionSuccessful();
+			} finally {
+				db.endTransaction();
+			}
+		}
+	}
+
+	/*
+	 * Migration, that copies all rows of @sourceTable with @insertQuery, which selects from @sourceTable.
+	 * Schema is prepared by migrate() in one transaction, then each chunk of rows is committed together with the last copied rowid,
+	 * and at last finish() is committed together with the new version. Interrupted copy is continued from the last committed chunk.
+	 */
+	public static abstract class CopyMigration extends Migration {
+
+		private final String sourceTable;
+
+		private final String insertQuery;
+
+		public CopyMigration(int version, String sourceTable, String insertQuery) {
+			super(version);
+			this.sourceTable = sourceTable;
+			this.insertQuery = insertQuery;
+		}
+
+		/*
+		 * Is called inside of transaction after all rows are copied, e.g. to drop source table.
+		 */
+		public abstract void finish(SQLiteDatabase db);
+
+		@Override
+		void run(SQLiteDatabase db, DatabaseMigrator migrator) {
+			long copiedRowId = getCopiedRowId(db, getVersion());
+			if (copiedRowId == NO_ROWID) {
+				db.beginTransaction();
+				try {
+					migrate(db, migrator);
+					db.execSQL("CREATE TABLE IF NOT EXISTS MigrationProgress "
+							+ "(mig_version INTEGER NOT NULL PRIMARY KEY, mig_copied_rowid INTEGER NOT NULL)");
+					db.execSQL("INSERT INTO MigrationProgress (mig_version, mig_copied_rowid) "
+							+ "SELECT ?, IFNULL(MIN(rowid), 1) - 1 FROM " + sourceTable, new Object [] {getVersion()});
+					db.setTransactionSuccessful();
+				} finally {
+					db.endTransaction();
+				}
+				copiedRowId = getCopiedRowId(db, getVersion());
+			}
+
+			migrator.copyRows(db, getVersion(), sourceTable, insertQuery, copiedRowId);
+
+			db.beginTransaction();
+			try {
+				finish(db);
+				db.execSQL("DELETE FROM MigrationProgress WHERE mig_version = ?", new Object [] {getVersion()});
+				setVersion(db, getVersion());
+				db.setTransactionSuccessful();
+			} finally {
+				db.endTransaction();
+			}
+		}
+	}
+
+	public interface OnMigrationProgressListener {
+
+		/*
+		 * Is called after each chunk of rows is copied during migration to given version.
+		 */
+		public void onMigrationProgress(int version, int done, int total);
+	}
+
+	//migrations, sorted by version.
+	private List<Migration> mMigrations = new ArrayList<Migration>();
+
+	private OnMigrationProgressListener mListener;
+
+	private int mChunkSize = DEFAULT_CHUNK_SIZE;
+
+	public DatabaseMigrator addMigration(Migration migration) {
+		int position = mMigrations.size();
+		while (position > 0 && mMigrations.get(position - 1).getVersion() > migration.getVersion()) {
+			position--;
+		}
+		mMigrations.add(position, migration);
+		return this;
+	}
+
+	public DatabaseMigrator setOnMigrationProgressListener(OnMigrationProgressListener listener) {
+		mListener = listener;
+		return this;
+	}
+
+	public DatabaseMigrator setChunkSize(int chunkSize) {
+		mChunkSize = Math.max(1, chunkSize);
+		return this;
+	}
+
+	/*
+	 * Return version of schema after all migrations.
+	 */
+	public int getLatestVersion() {
+		return mMigrations.isEmpty() ? NO_VERSION : mMigrations.get(mMigrations.size() - 1).getVersion();
+	}
+
+	/*
+	 * Create table, that contains schema version, and save given version in it.
+	 */
+	public static void createVersionTable(SQLiteDatabase db, int version) {
+		db.execSQL("CREATE TABLE IF NOT EXISTS SchemaVersion (sch_version INTEGER NOT NULL)");
+		setVersion(db, version);
+	}
+
+	private static void setVersion(SQLiteDatabase db, int version) {
+		db.execSQL("DELETE FROM SchemaVersion");
+		db.execSQL("INSERT INTO SchemaVersion (sch_version) VALUES (?)", new Object [] {version});
+	}
+
+	private static boolean hasTable(SQLiteDatabase db, String table) {
+		Cursor cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type = 'table' AND name = ?", new String [] {table});
+		boolean hasTable = cursor.getCount() > 0;
+		cursor.close();
+		return hasTable;
+	}
+
+	/*
+	 * Return saved schema version or NO_VERSION, if it is not saved.
+	 */
+	public static int getVersion(SQLiteDatabase db) {
+		if (!hasTable(db, "SchemaVersion")) {
+			return NO_VERSION;
+		}
+		Cursor cursor = db.rawQuery("SELECT sch_version FROM SchemaVersion", new String [] {});
+		int version = cursor.moveToFirst() ? cursor.getInt(0) : NO_VERSION;
+		cursor.close();
+		return version;
+	}
+
+	/*
+	 * Return rowid of the last row, copied by migration to given version, or NO_ROWID, if copy is not started.
+	 */
+	private static long getCopiedRowId(SQLiteDatabase db, int version) {
+		if (!hasTable(db, "MigrationProgress")) {
+			return NO_ROWID;
+		}
+		Cursor cursor = db.rawQuery("SELECT mig_copied_rowid FROM MigrationProgress WHERE mig_version = ?",
+									new String [] {Integer.toString(version)});
+		long rowId = cursor.moveToFirst() ? cursor.getLong(0) : NO_ROWID;
+		cursor.close();
+		return rowId;
+	}
+
+	/*
+	 * Run all migrations, whose version is greater than saved one.
+	 * Return true, if database has the latest version after that.
+	 */
+	public boolean migrate(SQLiteDatabase db) {
+		int version = getVersion(db);
+		if (version == NO_VERSION) {
+			Logger.error("DatabaseMigrator.migrate: schema version is not found.");
+			return false;
+		}
+		for (Migration migration: mMigrations) {
+			if (migration.getVersion() <= version) {
+				continue;
+			}
+			Logger.log("DatabaseMigrator.migrate: migrating from version " + Integer.toString(version)
+						+ " to " + Integer.toString(migration.getVersion()));
+			try {
+				migration.run(db, this);
+			} catch (RuntimeException e) {
+				Logger.error("DatabaseMigrator.migrate: migration to version " + Integer.toString(migration.getVersion())
+							+ " failed. " + e.getMessage());
+				return false;
+			}
+			version = migration.getVersion();
+		}
+		return true;
+	}
+
+	/*
+	 * Execute @insertQuery, that selects rows from @sourceTable, for rows after @copiedRowId in chunks of rows with consecutive rowids.
+	 * Each chunk is committed separately together with it's last rowid. Condition on rowid is appended to the query.
+	 */
+	private void copyRows(SQLiteDatabase db, int version, String sourceTable, String insertQuery, long copiedRowId) {
+		Cursor cursor = db.rawQuery("SELECT MIN(rowid), MAX(rowid) FROM " + sourceTable, new String [] {});
+		cursor.moveToFirst();
+		if (cursor.isNull(0)) {
+			cursor.close();
+			return;
+		}
+		long minRowId = cursor.getLong(0);
+		long maxRowId = cursor.getLong(1);
+		cursor.close();
+
+		String query = insertQuery + (insertQuery.toUpperCase().contains(" WHERE ") ? " AND " : " WHERE ")
+						+ sourceTable + ".rowid BETWEEN ? AND ?";
+		int total = (int) (maxRowId - minRowId + 1);
+		for (long from = Math.max(copiedRowId + 1, minRowId); from <= maxRowId; from += mChunkSize) {
+			long to = Math.min(from + mChunkSize - 1, maxRowId);
+			db.beginTransaction();
+			try {
+				db.execSQL(query, new Object [] {from, to});
+				db.execSQL("UPDATE MigrationProgress SET mig_copied_rowid = ? WHERE mig_version = ?", new Object [] {to, version});
+				db.setTransactionSuccessful();
+			} finally {
+				db.endTransaction();
+			}
+			if (mListener != null) {
+				mListener.onMigrationProgress(version, (int) (to - minRowId + 1), total);
+			}
+		}
+	}
+}
@@ -5,19 +5,17 @@ import java.util.Set;
 import java.util.TreeSet;
 
 import android.app.Service;
-import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.media.AudioManager;
-import android.os.Bundle;
 import android.os.IBinder;
 import android.os.Vibrator;
 
 /*
  * Service, that mutes device when appropriate event is started.
+ * It is notified about starts and ends of events by EventTimeline.
  */
-public class DeviceMuteService extends Service {
+public class DeviceMuteService extends Service implements EventTimeline.OnEventStartedListener, EventTimeline.OnEventEndedListener {
 
 	
 	private static final long VIBRATE_DURATION_MILLIS = 500;
@@ -26,7 +24,7 @@ public class DeviceMuteService extends Service {
 	
 	private Vibrator mVibrator;
 
-	private TaskReceiver mReceiver;
+	private EventTimeline mTimeline;
 	
 	//indicates, weather device was muted by the user, before event, that mutes device, has started.  
 	private boolean deviceWasMuted = false;
@@ -51,11 +49,10 @@ public class DeviceMuteService extends Service {
 		Logger.log("DeviceMuteService: service is created.");
 		mAudioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
 		mVibrator = (Vibrator) getSystemService(Context.VIBRATOR_SERVICE);
-		mReceiver = new TaskReceiver();
-		IntentFilter intentFilter = new IntentFilter();
-		intentFilter.addAction(BroadcastActions.ACTION_EVENT_STARTED);
-		intentFilter.addAction(BroadcastActions.ACTION_EVENT_ENDED);
-		registerReceiver(mReceiver, intentFilter);
+		mTimeline = EventTimeline.getInstance(this);
+		mTimeline.addOnEventStartedListener(this);
+		mTimeline.addOnEventEndedListener(this);
+		mTimeline.start();
 	}
 	
 	
@@ -70,7 +67,9 @@ public class DeviceMuteService extends Service {
 	public void onDestroy () {
 		super.onDestroy();
 		Logger.log("DeviceMuteService.onDestroy: service is destroyed.");
-		unregisterReceiver(mReceiver);
+		mTimeline.removeOnEventStartedListener(this);
+		mTimeline.removeOnEventEndedListener(this);
+		mTimeline.stop();
 	}
 	
 	private boolean isMuted() {
@@ -95,53 +94,40 @@ public class DeviceMuteService extends Service {
 	}
 	
 	
-	public class TaskReceiver extends BroadcastReceiver {
-
-		public TaskReceiver() {
-			super();
-		}
-		
-		@Override
-		public void onReceive(Context context, Intent intent) {
-			
-			Bundle extras = intent.getExtras();
-			if (extras == null) {
-				Logger.error("DeviceMuteService.TaskReceiver.onReceive: intent with no data is received");
-				return;
-			}
-			
-			String action = intent.getAction();
-			Bundle eventData = intent.getExtras();
-			Event event;
-			try {
-				event = new Event(eventData);
-			} catch (Exception e) {
-				Logger.error("DeviceMuteService.TaskReceiver.onReceive: unable to parse event. " + e.getMessage());
-				return;
-			}
-			Logger.log("DeviceMuteService.TaskReceiver: action " + action + " received with event " + event.getName() + ", id " + Integer.toString(event.getId()));
-			
-			if (action.equals(BroadcastActions.ACTION_EVENT_STARTED) && event.mutesDevice() && !currentEvents.contains(event)) {
-				boolean deviceIsMuted = isMuted();
-				if (currentEvents.isEmpty() || !deviceIsMuted) {
-					if (deviceIsMuted) {
-						deviceWasMuted = true; 
-					} else {
-						deviceWasMuted = false;
-						muteDevice();
-					}
-				}
-				currentEvents.add(event);
-			} else if (action.equals(BroadcastActions.ACTION_EVENT_ENDED) && event.mutesDevice() && currentEvents.contains(event)
-						//event is updated
-						|| action.equals(BroadcastActions.ACTION_EVENT_STARTED) && currentEvents.contains(event) && !event.mutesDevice()) {
-				currentEvents.remove(event);
-				if (currentEvents.isEmpty()) {
-					if (!deviceWasMuted) {
-						unmuteDevice();
-					}
+	@Override
+	public void onEventStarted(Event event) {
+		Logger.log("DeviceMuteService.onEventStarted: event " + event.getName() + ", id " + Integer.toString(event.getId()));
+		if (event.mutesDevice() && !currentEvents.contains(event)) {
+			boolean deviceIsMuted = isMuted();
+			if (currentEvents.isEmpty() || !deviceIsMuted) {
+				if (deviceIsMuted) {
+					deviceWasMuted = true; 
+				} else {
+					deviceWasMuted = false;
+					muteDevice();
 				}
 			}
+			currentEvents.add(event);
+		} else if (currentEvents.contains(event) && !event.mutesDevice()) {
+			//event is updated
+			removeCurrentEvent(event);
+		}
+	}
+	
+	@Override
+	public void onEventEnded(Event event) {
+		Logger.log("DeviceMuteService.onEventEnded: event " + event.getName() + ", id " + Integer.toString(event.getId()));
+		if (event.mutesDevice() && currentEvents.contains(event)) {
+			removeCurrentEvent(event);
+		}
+	}
+	
+	private void removeCurrentEvent(Event event) {
+		currentEvents.remove(event);
+		if (currentEvents.isEmpty()) {
+			if (!deviceWasMuted) {
+				unmuteDevice();
+			}
 		}
 	}
 }
@@ -1,11 +1,8 @@
 package com.timetable.android;
 
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.Set;
-import java.util.TreeSet;
 
 import android.os.Bundle;
 
@@ -52,17 +49,13 @@ public class Event {
 	//number of milliseconds, that matches null time;
 	public static final long NULL_TIME_MILLIS = -1;
 	
-	public static final SimpleDateFormat dateFormat = DateFormatFactory.getDateFormat();
+	private static final int[] NO_EXCEPTIONS = new int[0];
 	
-	public static final SimpleDateFormat timeFormat = DateFormatFactory.getTimeFormat();
+	//default number of days before and after requested day, for which occurrences are cached.
+	public static final int DEFAULT_OCCURRENCE_HORIZON = 400;
 	
-	public static final Comparator<Date> EXCEPTION_COMPARATOR = new Comparator<Date>() {
-		@Override
-		public int compare(Date first, Date second) {
-			return DateUtils.compareDates(first, second); 
-		}
+	private static volatile int occurrenceHorizon = DEFAULT_OCCURRENCE_HORIZON;
 	
-	};
 	@Deprecated
 	public int id;
 	
@@ -94,9 +87,20 @@ public class Event {
 	@Deprecated
 	public EventPeriod period;
 	
-	//Dates, on which repeated event has no occurrence, even though it should
-	@Deprecated
-	public Set<Date> exceptions = new TreeSet<Date>(EXCEPTION_COMPARATOR);
+	//Sorted days since 01.01.1970, on which repeated event has no occurrence, even though it should
+	private int[] exceptionDays = NO_EXCEPTIONS;
+	
+	//occurrence days around the last requested day, or null, if they should be computed again.
+	private volatile OccurrenceBitmap occurrenceBitmap;
+	
+	//each thread reuses it's own iterator to search occurrences after the end of bitmap.
+	private static final ThreadLocal<EventPeriod.OccurrenceIterator> nextOccurrenceIterator = new ThreadLocal<EventPeriod.OccurrenceIterator>() {
+		
+		@Override
+		protected EventPeriod.OccurrenceIterator initialValue() {
+			return new EventPeriod.OccurrenceIterator();
+		}
+	};
 	
 	public Event(Bundle data) throws ParseException {
 		this();
@@ -120,6 +124,29 @@ public class Event {
 		this.period = new EventPeriod();
 	}
 	
+	/*
+	 * Create copy of given event, that can be changed without changing the original one.
+	 */
+	public Event(Event event) {
+		id = event.id;
+		name = event.name;
+		place = event.place;
+		date = copyDate(event.date);
+		startTime = copyDate(event.startTime);
+		endTime = copyDate(event.endTime);
+		muteDevice = event.muteDevice;
+		note = event.note;
+		exceptionDays = event.exceptionDays.length == 0 ? NO_EXCEPTIONS : event.exceptionDays.clone();
+		period = event.period == null ? null : new EventPeriod(event.period);
+		if (event.alarm != null) {
+			alarm = new EventAlarm(event.alarm, this);
+		}
+	}
+	
+	private static Date copyDate(Date date) {
+		return date == null ? null : new Date(date.getTime());
+	}
+	
 	public Event() {
 		this(INIT_EVENT_ID);
 	}
@@ -181,7 +208,7 @@ public class Event {
 	}
 
 	public String getDateString() {
-		return date == null ? "" : dateFormat.format(date);
+		return date == null ? "" : DateFormatFactory.getThreadDateFormat().format(date);
 	}
 	
 	public long getDateMillis() {
@@ -190,14 +217,17 @@ public class Event {
 	
 	public void setDate(long millis) {
 		date = new Date(millis);
+		invalidateOccurrences();
 	}
 	
 	public void setDate(Date date) {
 		this.date = date;
+		invalidateOccurrences();
 	}
 	
 	public void setDate(String dateString) throws ParseException {
-		date = DateUtils.getDateFromString(dateFormat,dateString, false);
+		date = DateUtils.getDateFromString(DateFormatFactory.getThreadDateFormat(), dateString, false);
+		invalidateOccurrences();
 	}
 	
 	public boolean hasStartTime() {
@@ -213,7 +243,7 @@ public class Event {
 	}
 	
 	public String getStartTimeString() {
-		return hasStartTime() ?  timeFormat.format(startTime) : "";
+		return hasStartTime() ?  DateFormatFactory.getThreadTimeFormat().format(startTime) : "";
 	}
 	
 	public void setStartTime(Date startTime) {
@@ -225,7 +255,7 @@ public class Event {
 	}
 	
 	public void setStartTime(String startTimeString) throws ParseException {
-		startTime = DateUtils.getDateFromString(timeFormat, startTimeString, false);
+		startTime = DateUtils.getDateFromString(DateFormatFactory.getThreadTimeFormat(), startTimeString, false);
 	}
 	
 	public boolean hasEndTime() {
@@ -241,7 +271,7 @@ public class Event {
 	}
 	
 	public String getEndTimeString() {
-		return hasEndTime() ? timeFormat.format(endTime) : "";
+		return hasEndTime() ? DateFormatFactory.getThreadTimeFormat().format(endTime) : "";
 	}
 	
 	public void setEndTime(Date endTime) {
@@ -253,7 +283,7 @@ public class Event {
 	}
 	
 	public void setEndTime(String endTimeString) throws ParseException {
-		endTime = DateUtils.getDateFromString(timeFormat, endTimeString);
+		endTime = DateUtils.getDateFromString(DateFormatFactory.getThreadTimeFormat(), endTimeString);
 	}
 	
 	public void deleteEndTime() {
@@ -296,6 +326,7 @@ public class Event {
 
 	public void setPeriod(EventPeriod period) {
 		this.period = period;
+		invalidateOccurrences();
 	}
 
 	public String getNote() {
@@ -306,25 +337,43 @@ public class Event {
 		this.note = note;
 	}
 
-	public Set<Date> getExceptions() {
-		return exceptions;
-	}
-	
 	public Date[] getExceptionDates() {
-		return exceptions.toArray(new Date[0]);
+		Date[] exDates = new Date[exceptionDays.length];
+		for (int i = 0; i < exDates.length; i++) {
+			exDates[i] = DateUtils.getDateFromEpochDay(exceptionDays[i]);
+		}
+		return exDates;
 	}
 	
 	public String[] getExceptionStrings() {
 		Date[] exDates = getExceptionDates();
 		String[] exStrings = new String[exDates.length];
 		for (int i = 0; i < exStrings.length; i++) {
-			exStrings[i] = dateFormat.format(exDates[i]);
+			exStrings[i] = DateFormatFactory.getThreadDateFormat().format(exDates[i]);
 		}
 		return exStrings;
 	}
 	
-	public void setExceptions(Set<Date> exceptions) {
-		this.exceptions = exceptions;
+	/*
+	 * Set days of exceptions, counted since 01.01.1970. Days can be given in any order.
+	 */
+	public void setExceptionDays(int[] days) {
+		invalidateOccurrences();
+		if (days == null || days.length == 0) {
+			exceptionDays = NO_EXCEPTIONS;
+			return;
+		}
+		int[] sortedDays = new int[days.length];
+		System.arraycopy(days, 0, sortedDays, 0, days.length);
+		Arrays.sort(sortedDays);
+		int size = 1;
+		for (int i = 1; i < sortedDays.length; i++) {
+			if (sortedDays[i] != sortedDays[size - 1]) {
+				sortedDays[size++] = sortedDays[i];
+			}
+		}
+		exceptionDays = new int[size];
+		System.arraycopy(sortedDays, 0, exceptionDays, 0, size);
 	}
 
 	public void addExceptions(String[] exceptionDates) throws ParseException {
@@ -334,19 +383,80 @@ public class Event {
 	}
 	
 	public void addException(String exceptionDate) throws ParseException {
-		exceptions.add(DateUtils.getDateFromString(dateFormat, exceptionDate, false));
+		addException(DateUtils.getDateFromString(DateFormatFactory.getThreadDateFormat(), exceptionDate, false));
 	}
 	
 	public void addException(Date exception) {
-		exceptions.add(exception);
+		addExceptionDay(DateUtils.getEpochDay(exception));
+	}
+	
+	/*
+	 * Add day since 01.01.1970 to exceptions, keeping them sorted.
+	 */
+	public void addExceptionDay(int day) {
+		int position = Arrays.binarySearch(exceptionDays, day);
+		if (position >= 0) {
+			return;
+		}
+		position = -position - 1;
+		int[] days = new int[exceptionDays.length + 1];
+		System.arraycopy(exceptionDays, 0, days, 0, position);
+		days[position] = day;
+		System.arraycopy(exceptionDays, position, days, position + 1, exceptionDays.length - position);
+		exceptionDays = days;
+		invalidateOccurrences();
 	}
 	
 	public void deleteException(Date exception) {
-		exceptions.remove(exception);
+		int position = Arrays.binarySearch(exceptionDays, DateUtils.getEpochDay(exception));
+		if (position < 0) {
+			return;
+		}
+		int[] days = new int[exceptionDays.length - 1];
+		System.arraycopy(exceptionDays, 0, days, 0, position);
+		System.arraycopy(exceptionDays, position + 1, days, position, days.length - position);
+		exceptionDays = days;
+		invalidateOccurrences();
+	}
+	
+	public void clearExceptions() {
+		exceptionDays = NO_EXCEPTIONS;
+		invalidateOccurrences();
+	}
+	
+	public boolean hasExceptions() {
+		return exceptionDays.length != 0;
 	}
 	
 	public boolean isException(Date today) {
-		return exceptions != null && exceptions.contains(today);
+		return isExceptionDay(DateUtils.getEpochDay(today));
+	}
+	
+	public boolean isExceptionDay(int day) {
+		return Arrays.binarySearch(exceptionDays, day) >= 0;
+	}
+	
+	/*
+	 * Return sorted days of exceptions, counted since 01.01.1970.
+	 * Returned array is shared with event and should not be modified.
+	 */
+	public int[] getExceptionDays() {
+		return exceptionDays;
+	}
+	
+	/*
+	 * Return all days between @fromDay and @toDay inclusively, on which event has occurrence.
+	 * Days are counted since 01.01.1970.
+	 */
+	public int[] getOccurrencesBetween(int fromDay, int toDay) {
+		return getOccurrenceIterator(fromDay, toDay, new EventPeriod.OccurrenceIterator()).toArray();
+	}
+	
+	/*
+	 * Prepare given iterator to go through event's occurrences between @fromDay and @toDay inclusively.
+	 */
+	public EventPeriod.OccurrenceIterator getOccurrenceIterator(int fromDay, int toDay, EventPeriod.OccurrenceIterator iterator) {
+		return iterator.reset(period, DateUtils.getEpochDay(date), fromDay, toDay, getExceptionDays());
 	}
 	
 	
@@ -369,7 +479,44 @@ public class Event {
 	 * Return true, if event has period on given date.
 	 */
 	public boolean isToday(Date today) {
-		return !isException(today) && period.hasOccurrenceOnDate(date, today);
+		return isOccurrenceDay(DateUtils.getEpochDay(today));
+	}
+	
+	/*
+	 * Return true, if event has occurrence on given day, counted since 01.01.1970.
+	 * Occurrences are cached in bitmap for occurrence horizon days before and after requested day,
+	 * so that repeated calls for near days are bit tests. Bitmap is built again, when requested day is out of it.
+	 */
+	public boolean isOccurrenceDay(int day) {
+		return getOccurrenceBitmap(day).isSet(day);
+	}
+	
+	/*
+	 * Return valid bitmap, that contains given day, building it, if it is needed.
+	 */
+	private OccurrenceBitmap getOccurrenceBitmap(int day) {
+		OccurrenceBitmap bitmap = occurrenceBitmap;
+		if (bitmap == null || !bitmap.contains(day) || !bitmap.isBuiltFor(this)) {
+			int horizon = occurrenceHorizon;
+			bitmap = new OccurrenceBitmap(this, day - horizon, day + horizon);
+			occurrenceBitmap = bitmap;
+		}
+		return bitmap;
+	}
+	
+	/*
+	 * Set number of days before and after requested day, for which occurrences of each event are cached.
+	 */
+	public static void setOccurrenceHorizon(int days) {
+		occurrenceHorizon = Math.max(0, days);
+	}
+	
+	public static int getOccurrenceHorizon() {
+		return occurrenceHorizon;
+	}
+	
+	private void invalidateOccurrences() {
+		occurrenceBitmap = null;
 	}
 	
 	/*
@@ -406,19 +553,30 @@ public class Event {
 	 * Return nearest event's occurrence, that is later than given date.
 	 */
 	public Date getNextOccurrence(Date today) {
-		Date nextEventDate = today;
-		while (true) {
-			nextEventDate = period.getNextOccurrence(date, nextEventDate);
-
-			if (nextEventDate == null  || period.isFinished(nextEventDate)) {
-				return null;
-			}
-			if (!isException(nextEventDate)) {
-				break;
-			}
-			nextEventDate = DateUtils.addDay(nextEventDate, 1);
+		int nextDay = getNextOccurrenceDay(DateUtils.getEpochDay(today));
+		if (nextDay == EventPeriod.NO_OCCURRENCE) {
+			return null;
+		}
+		if (nextDay == DateUtils.getEpochDay(date)) {
+			return date;
+		}
+		return DateUtils.getDateFromEpochDay(nextDay, today);
+	}
+	
+	/*
+	 * Return the nearest occurrence day, that is not earlier than @today and is not an exception, or NO_OCCURRENCE.
+	 * Days are counted since 01.01.1970.
+	 * Occurrences from occurrence bitmap are already merged with exceptions, so runs of exceptions are skipped
+	 * by scanning whole words of bitmap. Only if there are no occurrences till the end of bitmap,
+	 * occurrences after it are iterated, skipping runs of consecutive exception days at once.
+	 */
+	public int getNextOccurrenceDay(int today) {
+		OccurrenceBitmap bitmap = getOccurrenceBitmap(today);
+		int nextDay = bitmap.getNextSetDay(today);
+		if (nextDay != EventPeriod.NO_OCCURRENCE) {
+			return nextDay;
 		}
-		return nextEventDate;
+		return getOccurrenceIterator(bitmap.toDay + 1, Integer.MAX_VALUE, nextOccurrenceIterator.get()).next();
 	}
 	
 	/*
@@ -504,7 +662,7 @@ public class Event {
 	        && Utils.areEqualOrNulls(this.getNote(), that.getNote())
 	        && Utils.areEqualOrNulls(this.getPeriod(), that.getPeriod())
 	        && Utils.areEqualOrNulls(this.getAlarm(), that.getAlarm())
-	    	&& Utils.areEqualOrNulls(this.getExceptions(), that.getExceptions());
+	    	&& Arrays.equals(this.getExceptionDays(), that.getExceptionDays());
 	    	
 	}
 	
@@ -520,6 +678,77 @@ public class Event {
 				+ (hasAlarm() ? "\n" + alarm.toString() : "\nAlarm: none") + "\n---------------\n";
 	}
 	
+	/*
+	 * Bit set of days between fromDay and toDay inclusively, on which event has occurrence.
+	 * Period and date are mutable objects, that can be shared with other code, so their state is saved to check,
+	 * that bitmap is still valid. Days depend on default time zone, so bitmap is also built for generation of zone. Bitmap is not changed after creation, so it can be read by several threads.
+	 */
+	private static class OccurrenceBitmap {
+		
+		private final int fromDay;
+		
+		private final int toDay;
+		
+		private final long[] bits;
+		
+		private final EventPeriod period;
+		
+		private final EventPeriod.State periodState;
+		
+		private final long dateMillis;
+		
+		private final int zoneGeneration;
+		
+		public OccurrenceBitmap(Event event, int fromDay, int toDay) {
+			this.fromDay = fromDay;
+			this.toDay = toDay;
+			this.bits = new long[((toDay - fromDay) >> 6) + 1];
+			this.period = event.period;
+			this.periodState = event.period.getState();
+			this.dateMillis = event.date.getTime();
+			this.zoneGeneration = DateUtils.getZoneGeneration();
+			
+			EventPeriod.OccurrenceIterator iterator = event.getOccurrenceIterator(fromDay, toDay, new EventPeriod.OccurrenceIterator());
+			while (iterator.hasNext()) {
+				int bit = iterator.next() - fromDay;
+				bits[bit >> 6] |= 1L << bit;
+			}
+		}
+		
+		public boolean contains(int day) {
+			return day >= fromDay && day <= toDay;
+		}
+		
+		/*
+		 * Return true, if period and date of event and default time zone were not changed since bitmap was built.
+		 */
+		public boolean isBuiltFor(Event event) {
+			return period == event.period && periodState.isStateOf(event.period)
+					&& dateMillis == event.date.getTime() && zoneGeneration == DateUtils.getZoneGeneration();
+		}
+		
+		public boolean isSet(int day) {
+			int bit = day - fromDay;
+			return (bits[bit >> 6] & (1L << bit)) != 0;
+		}
+		
+		/*
+		 * Return the first set day, that is not earlier than given day from bitmap, or NO_OCCURRENCE.
+		 */
+		public int getNextSetDay(int day) {
+			int bit = day - fromDay;
+			int word = bit >> 6;
+			long value = bits[word] & (-1L << bit);
+			while (value == 0) {
+				if (++word == bits.length) {
+					return EventPeriod.NO_OCCURRENCE;
+				}
+				value = bits[word];
+			}
+			return fromDay + (word << 6) + Long.numberOfTrailingZeros(value);
+		}
+	}
+	
 	/*
 	 * Class that should be used to create events.
 	 */
@@ -647,8 +876,8 @@ public class Event {
 			return this;
 		}
 		
-		public Builder setExceptions(Set<Date> exceptions) {
-			event.setExceptions(exceptions);
+		public Builder setExceptionDays(int[] days) {
+			event.setExceptionDays(days);
 			return this;
 		}
 		
@@ -2,7 +2,6 @@ package com.timetable.android;
 
 import android.content.Context;
 import android.content.Intent;
-import android.os.Bundle;
 
 /*
  * Class, that can send all main broadcasts.
@@ -29,15 +28,4 @@ public class EventBroadcastSender {
 		context.sendBroadcast(intent);
 		Logger.log("EventBroadcastSender.sendEventDeletedBroadcast: broadcast is sent");
 	}
-	
-	public static void sendEventEndedBroadcast(Context context, Event event) {
-		sendEventEndedBroadcast(context, event.convert());
-	}
-	
-	public static void sendEventEndedBroadcast(Context context, Bundle eventData) {
-		Intent intent = new Intent(BroadcastActions.ACTION_EVENT_ENDED);
-		intent.putExtras(eventData);
-		context.sendBroadcast(intent);
-		Logger.log("EventBroadcastSender.sendEventEndedBroadcast: broadcast is sent");
-	}
 }
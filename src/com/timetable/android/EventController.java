@@ -9,17 +9,20 @@ import android.app.AlertDialog;
 import android.content.Context;
 import android.content.DialogInterface;
 
+import com.timetable.android.TimetableDatabase.ChangeSet;
 import com.timetable.android.alarm.EventAlarm;
 import com.timetable.android.utils.DateUtils;
 
 /*
  * Class for saving events to database, updating and deleting them. If needed, shows dialog for user to choose some option.
+ * Changes are written through EventRepository in background, listeners are called on the main thread after they are committed.
+ * Old versions of events may be shared by EventRepository, so they are not modified: their changed copies are written instead.
  */
 public class EventController {
 	
 	private Context mContext; 
 	
-	private TimetableDatabase db; 
+	private EventRepository mRepository; 
 	
 	private OnEventSavedListener mOnEventSavedListener;
 	
@@ -31,7 +34,7 @@ public class EventController {
 	
 	public EventController(Context context) {
 		mContext = context;
-		db = TimetableDatabase.getInstance(mContext);
+		mRepository = EventRepository.getInstance(mContext);
 	}
 	
 	public void setOnEventSavedListener(OnEventSavedListener onEventSavedListener) {
@@ -108,16 +111,18 @@ public class EventController {
 	/*
 	 * Save given event to database. Call onEventSaved after that.
 	 */
-	public void saveEvent(Event event) {
-		Event savedEvent = db.insertEvent(event);
-		if (savedEvent != null) {
-			EventBroadcastSender.sendEventAddedBroadcast(mContext, event);
-			if (savedEvent.hasAlarm()) {
-				showAlarmToast(savedEvent);
+	public void saveEvent(final Event event) {
+		mRepository.apply(new ChangeSet().insert(event), new EventWriter.OnChangesAppliedListener() {
+			
+			@Override
+			public void onChangesApplied(boolean isApplied) {
+				Event savedEvent = isApplied ? event : null;
+				if (savedEvent != null && savedEvent.hasAlarm()) {
+					showAlarmToast(savedEvent);
+				}
+				mOnEventSavedListener.onEventSaved(savedEvent);
 			}
-		}
-		
-		mOnEventSavedListener.onEventSaved(savedEvent);
+		});
 	}
 	
 	/*
@@ -125,56 +130,53 @@ public class EventController {
 	 * new version of the oldEvent is inserted into the database, and the end editDate of old version is updated,
 	 * so that old oldEvent is already finished on the editDate of editing.
 	 */
-	private void updateOldEventEndDate(Event oldEvent, Date editDate) {
-		//TODO: collide this function an addOldEventException into one function updateOldEvent
-		// change updateEvent method in the database, so that all oldEvent's exception would be updated.
-		oldEvent.getPeriod().setEndDate(editDate);
-		if (oldEvent.getPeriod().isFinished(oldEvent.getDate())) {
-			db.deleteEvent(oldEvent);
-			EventBroadcastSender.sendEventDeletedBroadcast(mContext, oldEvent);
+	private void updateOldEventEndDate(Event oldEvent, Date editDate, ChangeSet changes) {
+		Event changedEvent = new Event(oldEvent);
+		changedEvent.getPeriod().setEndDate(editDate);
+		if (changedEvent.getPeriod().isFinished(changedEvent.getDate())) {
+			changes.delete(changedEvent);
 		} else {
-			db.updateEvent(oldEvent);
-			EventBroadcastSender.sendEventUpdatedBroadcast(mContext, oldEvent);
-			
+			changes.update(changedEvent);
 		}
-		
 	}
 	
 	/*
 	 * When repeatable oldEvent is updated or deleted and option "Change only this oldEvent" is selected by user,
 	 * new version of the oldEvent is inserted into the database, and date of editing is added to exceptions of old oldEvent.
 	 */
-	private void addOldEventException(Event oldEvent, Date editDate) {
-		oldEvent.addException(editDate);
-		db.insertException(oldEvent, editDate);
-		EventBroadcastSender.sendEventUpdatedBroadcast(mContext, oldEvent);	
+	private void addOldEventException(Event oldEvent, Date editDate, ChangeSet changes) {
+		Event changedEvent = new Event(oldEvent);
+		changedEvent.addException(editDate);
+		changes.addException(changedEvent, editDate);
 	}
 	
-	private void updateRepeatableEvent(Event editedEvent, Event oldEvent, Date editDate, boolean overrideFutureEvents) {
-		
-		Event updatedEvent;
+	/*
+	 * Old version of event and new one are written in one transaction.
+	 */
+	private void updateRepeatableEvent(final Event editedEvent, final Event oldEvent, Date editDate, boolean overrideFutureEvents) {
+		ChangeSet changes = new ChangeSet();
 		if (overrideFutureEvents) {
 			//from today on this oldEvent ends
-			updateOldEventEndDate(oldEvent, editDate);
-			
-			updatedEvent = db.insertEvent(editedEvent);
-			//copy exceptions to new oldEvent
-			for (Date exception: editedEvent.getExceptions()) {
-				db.insertException(editedEvent, exception);
-			}
+			updateOldEventEndDate(oldEvent, editDate, changes);
 		} else {
 			//today there is no session of this oldEvent
-			addOldEventException(oldEvent, editDate);
+			addOldEventException(oldEvent, editDate, changes);
 			editedEvent.getPeriod().setType(EventPeriod.NONE);
-			updatedEvent = db.insertEvent(editedEvent);
-			
 		}
+		//new event is inserted together with it's exceptions
+		changes.insert(editedEvent);
 		
-		if (editedEvent.hasAlarm() && (!oldEvent.hasAlarm() || !editedEvent.getAlarm().equals(oldEvent.getAlarm()) ) ) {
-			showAlarmToast(editedEvent);
-		}
-		EventBroadcastSender.sendEventAddedBroadcast(mContext, updatedEvent);
-		mOnEventUpdatedListener.onEventUpdated(updatedEvent);
+		mRepository.apply(changes, new EventWriter.OnChangesAppliedListener() {
+			
+			@Override
+			public void onChangesApplied(boolean isApplied) {
+				Event updatedEvent = isApplied ? editedEvent : null;
+				if (updatedEvent != null) {
+					showAlarmToast(updatedEvent, oldEvent);
+				}
+				mOnEventUpdatedListener.onEventUpdated(updatedEvent);
+			}
+		});
 	}
 	
 	/*
@@ -183,7 +185,7 @@ public class EventController {
 	 * @param oldEvent - event before editing
 	 * @param editDate - date of editing 
 	 */
-	public void updateEvent(Event editedEvent, Event oldEvent, Date editDate) {
+	public void updateEvent(final Event editedEvent, final Event oldEvent, Date editDate) {
 		editedEvent.setId(oldEvent.getId());
 		editedEvent.getPeriod().setId(oldEvent.getPeriod().getId());
 		if (editedEvent.hasAlarm() && oldEvent.hasAlarm()) {
@@ -201,12 +203,17 @@ public class EventController {
 			return;
 		}
 		
-		Event updatedEvent = db.updateEvent(editedEvent);
-		if (updatedEvent != null) {
-			EventBroadcastSender.sendEventUpdatedBroadcast(mContext, updatedEvent);
-			showAlarmToast(updatedEvent, oldEvent);
-		}
-		mOnEventUpdatedListener.onEventUpdated(updatedEvent);
+		mRepository.apply(new ChangeSet().update(editedEvent), new EventWriter.OnChangesAppliedListener() {
+			
+			@Override
+			public void onChangesApplied(boolean isApplied) {
+				Event updatedEvent = isApplied ? editedEvent : null;
+				if (updatedEvent != null) {
+					showAlarmToast(updatedEvent, oldEvent);
+				}
+				mOnEventUpdatedListener.onEventUpdated(updatedEvent);
+			}
+		});
 	}
 	
 	public void deleteEvent(Event event, Date deleteDate) {
@@ -214,20 +221,29 @@ public class EventController {
 			new DeleteDialog(mContext, event, deleteDate);
 			return;
 		}
-		db.deleteEvent(event);
-		EventBroadcastSender.sendEventDeletedBroadcast(mContext, event);
-		mOnEventDeletedListener.onEventDeleted();
+		applyDeletion(new ChangeSet().delete(event));
 	}
 	
 	private void deleteRepeatableEvent(Event event, Date deleteDate, boolean deleteFutureEvents) {
+		ChangeSet changes = new ChangeSet();
 		if (deleteFutureEvents) {
 			//from today on this oldEvent ends
-			updateOldEventEndDate(event, deleteDate);
+			updateOldEventEndDate(event, deleteDate, changes);
 		} else {
 			//today there is no session of this oldEvent
-			addOldEventException(event, deleteDate);
+			addOldEventException(event, deleteDate, changes);
 		}
-		mOnEventDeletedListener.onEventDeleted();
+		applyDeletion(changes);
+	}
+	
+	private void applyDeletion(ChangeSet changes) {
+		mRepository.apply(changes, new EventWriter.OnChangesAppliedListener() {
+			
+			@Override
+			public void onChangesApplied(boolean isApplied) {
+				mOnEventDeletedListener.onEventDeleted();
+			}
+		});
 	}
 	
 	public static interface OnEventSavedListener {
@@ -0,0 +1,92 @@
+package com.timetable.android;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import android.database.Cursor;
+
+/*
+ * Forward-only cursor over events, selected by TimetableDatabase.
+ * Each event is built only when cursor is moved to it's row, so that events can be processed in constant memory.
+ * Rows are mapped by EventRowMapper, so column indexes are resolved once for the whole cursor. Cursor should be closed after use:
+ *
+ * EventCursor cursor = db.queryAllEvents();
+ * try {
+ *     for (Event event: cursor) {
+ *         ...
+ *     }
+ * } finally {
+ *     cursor.close();
+ * }
+ */
+public class EventCursor implements Iterable<Event>, Closeable {
+
+	private final Cursor mCursor;
+
+	private final EventRowMapper mMapper = new EventRowMapper();
+
+	EventCursor(Cursor cursor) {
+		mCursor = cursor;
+		mMapper.bind(cursor);
+	}
+
+	public int getCount() {
+		return mCursor.getCount();
+	}
+
+	/*
+	 * Move to the next event. Return false, if there are no more events.
+	 */
+	public boolean moveToNext() {
+		return mCursor.moveToNext();
+	}
+
+	/*
+	 * Build event from the current row.
+	 */
+	public Event getEvent() {
+		return mMapper.map(mCursor);
+	}
+
+	/*
+	 * Return iterator, that moves this cursor. Cursor can be iterated only once.
+	 */
+	@Override
+	public Iterator<Event> iterator() {
+		return new Iterator<Event>() {
+
+			private boolean isMoved = false;
+
+			private boolean hasNext = false;
+
+			@Override
+			public boolean hasNext() {
+				if (!isMoved) {
+					hasNext = !mCursor.isClosed() && mCursor.moveToNext();
+					isMoved = true;
+				}
+				return hasNext;
+			}
+
+			@Override
+			public Event next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				isMoved = false;
+				return getEvent();
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	@Override
+	public void close() {
+		mCursor.close();
+	}
+}
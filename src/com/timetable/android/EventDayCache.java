@@ -0,0 +1,315 @@
+package com.timetable.android;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.timetable.android.utils.DateUtils;
+
+/*
+ * LRU cache of events, that occur on each day. Days are identified by their epoch day.
+ * Events of each day are sorted by start time, as they are in the snapshot of all events.
+ * Days around displayed one can be prefetched in background, so that sliding to the next day does not compute occurrences.
+ */
+public class EventDayCache {
+
+	public static final int MAX_CACHED_DAYS = 64;
+
+	//number of days before and after displayed day, that are prefetched.
+	public static final int PREFETCH_DAYS = 3;
+
+	private static final int NO_DAY = Integer.MIN_VALUE;
+
+	//one background thread is shared by all caches.
+	private static ExecutorService sPrefetcher;
+
+	//immutable snapshot of all events, sorted by start time.
+	private List<Event> mEvents = Collections.emptyList();
+
+	//incremented each time snapshot changes, so that days computed from previous snapshot are not cached.
+	private int mVersion = 0;
+
+	//generation of default time zone, for which cached days were computed.
+	private int mZoneGeneration = DateUtils.getZoneGeneration();
+
+	private final Map<Integer, List<Event>> mDays = new LinkedHashMap<Integer, List<Event>>(MAX_CACHED_DAYS, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, List<Event>> eldest) {
+			return size() > MAX_CACHED_DAYS;
+		}
+	};
+
+	private int mPrefetchDay = NO_DAY;
+
+	private int mHits = 0;
+
+	private int mMisses = 0;
+
+	private final EventPeriod.OccurrenceIterator mIterator = new EventPeriod.OccurrenceIterator();
+
+	/*
+	 * Return current snapshot of all events.
+	 */
+	public synchronized List<Event> getEvents() {
+		return mEvents;
+	}
+
+	/*
+	 * Replace snapshot of events. Only cached days, on which @changedEvents occur, are invalidated.
+	 * If @changedEvents is null, all days are invalidated.
+	 * Return invalidated days.
+	 */
+	public synchronized Set<Integer> setEvents(List<Event> events, Collection<Event> changedEvents) {
+		mEvents = events;
+		mVersion++;
+		if (changedEvents == null) {
+			Set<Integer> days = new HashSet<Integer>(mDays.keySet());
+			mDays.clear();
+			return days;
+		}
+		Set<Integer> days = new HashSet<Integer>();
+		for (Event event: changedEvents) {
+			invalidate(event, days);
+		}
+		return days;
+	}
+
+	/*
+	 * Add event to snapshot. Return invalidated days.
+	 */
+	public synchronized Set<Integer> addEvent(Event event) {
+		return replaceEvent(event.getId(), event);
+	}
+
+	/*
+	 * Replace event with the same id in snapshot. Return invalidated days.
+	 */
+	public synchronized Set<Integer> updateEvent(Event event) {
+		return replaceEvent(event.getId(), event);
+	}
+
+	/*
+	 * Remove event with the same id from snapshot. Return invalidated days.
+	 */
+	public synchronized Set<Integer> deleteEvent(Event event) {
+		return replaceEvent(event.getId(), null);
+	}
+
+	/*
+	 * Replace event with given id by @newEvent, or remove it, if @newEvent is null.
+	 * Days, on which either old or new version of event occurs, are invalidated.
+	 */
+	private Set<Integer> replaceEvent(int id, Event newEvent) {
+		List<Event> events = new ArrayList<Event>(mEvents.size() + 1);
+		Set<Integer> days = new HashSet<Integer>();
+		for (Event event: mEvents) {
+			if (event.getId() == id) {
+				invalidate(event, days);
+			} else {
+				events.add(event);
+			}
+		}
+		if (newEvent != null) {
+			int position = 0;
+			while (position < events.size() && events.get(position).getStartTimeMillis() <= newEvent.getStartTimeMillis()) {
+				position++;
+			}
+			events.add(position, newEvent);
+			invalidate(newEvent, days);
+		}
+		mEvents = Collections.unmodifiableList(events);
+		mVersion++;
+		return days;
+	}
+
+	/*
+	 * Remove cached days, on which event occurs, and add them to @days.
+	 */
+	private void invalidate(Event event, Set<Integer> days) {
+		if (mDays.isEmpty()) {
+			return;
+		}
+		int fromDay = Integer.MAX_VALUE;
+		int toDay = Integer.MIN_VALUE;
+		for (Integer day: mDays.keySet()) {
+			fromDay = Math.min(fromDay, day);
+			toDay = Math.max(toDay, day);
+		}
+		event.getOccurrenceIterator(fromDay, toDay, mIterator);
+		while (mIterator.hasNext()) {
+			int day = mIterator.next();
+			if (mDays.remove(day) != null) {
+				days.add(day);
+			}
+		}
+	}
+
+	/*
+	 * Return events, that occur on given day, sorted by start time.
+	 * If day is not cached, it is computed in the calling thread.
+	 */
+	public List<Event> getEvents(int day) {
+		List<Event> events;
+		int version;
+		synchronized (this) {
+			checkTimeZone();
+			List<Event> dayEvents = mDays.get(day);
+			if (dayEvents != null) {
+				mHits++;
+				return dayEvents;
+			}
+			mMisses++;
+			events = mEvents;
+			version = mVersion;
+		}
+		Map<Integer, List<Event>> days = computeDays(events, day, day);
+		putDays(days, version);
+		return days.get(day);
+	}
+
+	public synchronized boolean isCached(int day) {
+		checkTimeZone();
+		return mDays.containsKey(day);
+	}
+
+	public synchronized int getHitCount() {
+		return mHits;
+	}
+
+	public synchronized int getMissCount() {
+		return mMisses;
+	}
+
+	/*
+	 * Compute in background days around given day, that are not cached yet.
+	 */
+	public void prefetch(final int day) {
+		synchronized (this) {
+			if (day == mPrefetchDay) {
+				return;
+			}
+			mPrefetchDay = day;
+		}
+		getPrefetcher().execute(new Runnable() {
+
+			@Override
+			public void run() {
+				prefetchNow(day);
+			}
+		});
+	}
+
+	/*
+	 * Compute days around given day, that are not cached yet, in the calling thread.
+	 */
+	public void prefetchNow(int day) {
+		int fromDay = NO_DAY;
+		int toDay = NO_DAY;
+		List<Event> events;
+		int version;
+		synchronized (this) {
+			if (day != mPrefetchDay && mPrefetchDay != NO_DAY) {
+				//user has already moved to another day.
+				return;
+			}
+			checkTimeZone();
+			for (int i = day - PREFETCH_DAYS; i <= day + PREFETCH_DAYS; i++) {
+				if (!mDays.containsKey(i)) {
+					if (fromDay == NO_DAY) {
+						fromDay = i;
+					}
+					toDay = i;
+				}
+			}
+			events = mEvents;
+			version = mVersion;
+		}
+		if (fromDay == NO_DAY) {
+			return;
+		}
+		putDays(computeDays(events, fromDay, toDay), version);
+	}
+
+	private synchronized void putDays(Map<Integer, List<Event>> days, int version) {
+		checkTimeZone();
+		if (version != mVersion) {
+			return;
+		}
+		for (Map.Entry<Integer, List<Event>> entry: days.entrySet()) {
+			if (!mDays.containsKey(entry.getKey())) {
+				mDays.put(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	/*
+	 * Drop all cached days, if default time zone was changed since they were computed.
+	 * Version is incremented, so that days, that are being computed for the old zone, are not cached.
+	 */
+	private void checkTimeZone() {
+		int zoneGeneration = DateUtils.getZoneGeneration();
+		if (zoneGeneration != mZoneGeneration) {
+			mZoneGeneration = zoneGeneration;
+			mDays.clear();
+			mVersion++;
+		}
+	}
+
+	/*
+	 * Return events for each day between @fromDay and @toDay inclusive.
+	 * Occurrences of each event are enumerated once for the whole range.
+	 */
+	private static Map<Integer, List<Event>> computeDays(List<Event> events, int fromDay, int toDay) {
+		Map<Integer, List<Event>> days = new HashMap<Integer, List<Event>>();
+		EventPeriod.OccurrenceIterator iterator = new EventPeriod.OccurrenceIterator();
+		for (Event event: events) {
+			event.getOccurrenceIterator(fromDay, toDay, iterator);
+			while (iterator.hasNext()) {
+				int day = iterator.next();
+				List<Event> dayEvents = days.get(day);
+				if (dayEvents == null) {
+					dayEvents = new ArrayList<Event>();
+					days.put(day, dayEvents);
+				}
+				dayEvents.add(event);
+			}
+		}
+		for (int day = fromDay; day <= toDay; day++) {
+			List<Event> dayEvents = days.get(day);
+			if (dayEvents == null) {
+				days.put(day, Collections.<Event>emptyList());
+			} else {
+				days.put(day, Collections.unmodifiableList(dayEvents));
+			}
+		}
+		return days;
+	}
+
+	private static synchronized ExecutorService getPrefetcher() {
+		if (sPrefetcher == null) {
+			sPrefetcher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "EventDayCache prefetcher");
+					thread.setDaemon(true);
+					thread.setPriority(Thread.MIN_PRIORITY);
+					return thread;
+				}
+			});
+		}
+		return sPrefetcher;
+	}
+}
@@ -1,12 +1,18 @@
 package com.timetable.android;
 
 import java.text.SimpleDateFormat;
+import java.util.Collections;
 import java.util.Date;
-import java.util.Vector;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.holoeverywhere.LayoutInflater;
 import org.holoeverywhere.widget.TextView;
 
+import android.os.AsyncTask;
 import android.support.v4.view.PagerAdapter;
 import android.support.v4.view.ViewPager;
 import android.view.Gravity;
@@ -15,6 +21,7 @@ import android.widget.LinearLayout;
 import android.widget.ScrollView;
 
 import com.timetable.android.activities.EventDayViewActivity;
+import com.timetable.android.utils.DateUtils;
 
 /*
  * Class, that instantiate views of events for each day, and allows user to slide among the days.
@@ -82,31 +89,135 @@ public class EventPager extends ViewPager {
 	
 	/*
 	 * Update pages when content has changed.
+	 * Changes of events are received from EventRepository, so all instantiated pages are only read again from it.
 	 */
 	public void update() {
 		mEventPagerAdapter.update();
-		mEventPagerAdapter.notifyDataSetChanged();
 	}
 	
-	private class EventPagerAdapter extends PagerAdapter{
+	@Override
+	protected void onAttachedToWindow() {
+		super.onAttachedToWindow();
+		EventRepository.getInstance(mActivity).addOnEventChangedListener(mEventPagerAdapter);
+	}
+	
+	@Override
+	protected void onDetachedFromWindow() {
+		EventRepository.getInstance(mActivity).removeOnEventChangedListener(mEventPagerAdapter);
+		mEventPagerAdapter.releasePages();
+		super.onDetachedFromWindow();
+	}
 	
-		//save all events from database into adaptor
-		private Vector<Event> events = new Vector<Event>();
+	/*
+	 * Adapter reads events of each day from EventRepository, and updates only pages, 
+	 * on which added, updated or deleted event occurs.
+	 */
+	private class EventPagerAdapter extends PagerAdapter implements EventRepository.OnEventChangedListener {
+	
+		private boolean isLoaded = false;
+		
+		private EventRepository mRepository;
 		
-		private TimetableDatabase db;
+		private LoadEventsTask mLoadEventsTask;
+		
+		//instantiated pages by their numbers.
+		private Map<Integer, View> mPages = new HashMap<Integer, View>();
+		
+		//events, that are displayed on instantiated pages.
+		private Map<Integer, List<Event>> mPageEvents = new HashMap<Integer, List<Event>>();
+		
+		//pages, that should be instantiated again, because their events have changed.
+		private Set<Integer> mChangedPages = new HashSet<Integer>();
 		
 		public EventPagerAdapter(Date currentDate) {
 			Logger.log("EventPagerAdapter created");
-			db = TimetableDatabase.getInstance(mActivity);
+			mRepository = EventRepository.getInstance(mActivity);
 			loadEvents();
 		}
 		
+		/*
+		 * Instantiate again all pages, if repository is loaded.
+		 */
 		public void update() {
-			loadEvents();
+			if (isLoaded) {
+				updatePages(null);
+			}
 		}
 		
 		private void loadEvents() {
-			events = db.getAllEvents();
+			if (mLoadEventsTask != null) {
+				mLoadEventsTask.cancel(false);
+			}
+			mLoadEventsTask = new LoadEventsTask();
+			mLoadEventsTask.execute();
+		}
+		
+		@Override
+		public void onEventAdded(Event event) {
+			onEventChanged(event);
+		}
+		
+		@Override
+		public void onEventUpdated(Event event) {
+			onEventChanged(event);
+		}
+		
+		@Override
+		public void onEventDeleted(Event event) {
+			onEventChanged(event);
+		}
+		
+		/*
+		 * Update pages, on which new version of event occurs or old version of event was displayed.
+		 */
+		private void onEventChanged(Event event) {
+			if (!isLoaded) {
+				//pages will be instantiated again, when repository is loaded.
+				return;
+			}
+			updatePages(event);
+		}
+		
+		/*
+		 * Instantiate again pages, that displayed or should display changed event.
+		 * If @changedEvent is null, all pages are updated.
+		 */
+		private void updatePages(Event changedEvent) {
+			mChangedPages.clear();
+			for (Integer pageNumber: mPages.keySet()) {
+				if (changedEvent == null || changedEvent.isToday(getDateByPageNumber(pageNumber)) 
+						|| isDisplayed(changedEvent, pageNumber)) {
+					mChangedPages.add(pageNumber);
+				}
+			}
+			Logger.log("EventPagerAdapter.updatePages: " + Integer.toString(mChangedPages.size()) + " pages to update.");
+			if (!mChangedPages.isEmpty()) {
+				notifyDataSetChanged();
+			}
+		}
+		
+		private boolean isDisplayed(Event event, int pageNumber) {
+			List<Event> events = mPageEvents.get(pageNumber);
+			if (events == null) {
+				return false;
+			}
+			for (Event displayedEvent: events) {
+				if (displayedEvent.getId() == event.getId()) {
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		/*
+		 * Return views of all instantiated pages to EventViewProvider, when pager is not displayed anymore.
+		 */
+		public void releasePages() {
+			for (Integer pageNumber: mPages.keySet()) {
+				mEventViewProvider.releaseViews(pageNumber);
+			}
+			mPages.clear();
+			mPageEvents.clear();
 		}
 		
 		@Override
@@ -134,13 +245,10 @@ public class EventPager extends ViewPager {
 			internalLayout.setOrientation(LinearLayout.VERTICAL);
 			internalLayout.setLayoutParams(new LinearLayout.LayoutParams(LinearLayout.LayoutParams.FILL_PARENT, LinearLayout.LayoutParams.WRAP_CONTENT));
 			
-			boolean hasEventsToday = false;
+			boolean hasEventsToday = !isLoaded;
 			
+			List<Event> events = isLoaded ? mRepository.getEvents(DateUtils.getEpochDay(currentDate)) : Collections.<Event>emptyList();
 			for (Event event: events) {
-				if (!event.isToday(currentDate)) {
-					continue;
-				}
-				
 				EventView eventView = mEventViewProvider.getView(pageNumber);
 				eventView.populate(event, currentDate);
 				eventView.setEventViewObserver(mActivity);
@@ -160,23 +268,70 @@ public class EventPager extends ViewPager {
 			externalLayout.addView(scrollView,0);
 			
 			((ViewPager) viewPager).addView(externalLayout,0);
+			externalLayout.setTag(pageNumber);
+			mPages.put(pageNumber, externalLayout);
+			mPageEvents.put(pageNumber, events);
+			mChangedPages.remove(pageNumber);
 			
 			Logger.log("EventPagerAdapter created page # "+ pageNumber + " " + new SimpleDateFormat("dd.MM.yyy").format(currentDate.getTime()));
 			//logger.log("Events added to layout: " + internalLayout.getChildCount());
 			return externalLayout;
 		}
 		
-		//peace of code, that gets update function work
+		/*
+		 * Only pages, whose events have changed, are instantiated again.
+		 */
+		@Override
 		public int getItemPosition(Object object){
-		     return POSITION_NONE;
+			Object pageNumber = ((View) object).getTag();
+			if (pageNumber == null || mChangedPages.contains(pageNumber)) {
+				return POSITION_NONE;
+			}
+			return POSITION_UNCHANGED;
+		}
+		
+		/*
+		 * Prepare events of the days around displayed one, while user is looking at it.
+		 */
+		@Override
+		public void setPrimaryItem(View viewPager, int pageNumber, Object view) {
+			super.setPrimaryItem(viewPager, pageNumber, view);
+			if (isLoaded) {
+				mRepository.prefetch(DateUtils.getEpochDay(getDateByPageNumber(pageNumber)));
+			}
 		}
 		
 		@Override
 	    public void destroyItem(View viewPager, int pageNumber, Object view) {
 	            Logger.verbose("EventPagerAdapter destroys page number " + pageNumber);
 	            ((ViewPager) viewPager).removeView((View) view);
+	            if (mPages.get(pageNumber) == view) {
+	            	mPages.remove(pageNumber);
+	            	mPageEvents.remove(pageNumber);
+	            }
 	            mEventViewProvider.releaseViews(pageNumber);
 		}
+		
+		/*
+		 * Load events of repository in background. Repository reads database only on first access.
+		 */
+		private class LoadEventsTask extends AsyncTask<Void, Void, Void> {
+
+			@Override
+			protected Void doInBackground(Void... params) {
+				mRepository.getEvents();
+				return null;
+			}
+			
+			@Override
+			protected void onPostExecute(Void result) {
+				if (isCancelled()) {
+					return;
+				}
+				isLoaded = true;
+				updatePages(null);
+			}
+		}
 	}
 
 }
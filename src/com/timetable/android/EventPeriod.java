@@ -1,8 +1,7 @@
 package com.timetable.android;
 
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
+import java.util.Arrays;
 import java.util.Date;
 
 import android.os.Bundle;
@@ -64,6 +63,16 @@ public class EventPeriod {
 
 	public static final int SATURDAY = 6;
 	
+	/*
+	 * Returned by getNextOccurrence, when period has no more occurrences.
+	 */
+	public static final int NO_OCCURRENCE = Integer.MIN_VALUE;
+	
+	private static final int MAX_SKIPPED_PERIODS = 400;
+	
+	//occurrences after this year are not computed, so that days since 01.01.1970 fit into int.
+	private static final int MAX_YEAR = 1000000;
+	
 	public static final Type NONE = Type.NONE;
 	
 	public static final Type DAILY = Type.DAILY;
@@ -86,7 +95,7 @@ public class EventPeriod {
 	
 	public static final String BUNDLE_PERIOD_END_DATE = "per_end_date";
 	
-	public static final SimpleDateFormat dateFormat = DateFormatFactory.getDateFormat();
+	public static final String BUNDLE_PERIOD_RULE = "per_rrule";
 	
 	@Deprecated
 	public int id;
@@ -106,6 +115,15 @@ public class EventPeriod {
 	@Deprecated
 	public int numberOfRepeats;
 	
+	//rule, that defines occurrences instead of type, interval and week occurrences, or null.
+	private RecurrenceRule rule;
+	
+	//is incremented by every setter, so that caches, built from period, can notice it's changes.
+	private int modificationCount = 0;
+	
+	//end day for the last requested start day, or null, if it is not computed yet.
+	private volatile EndDay endDayCache;
+	
 	public EventPeriod(Bundle data) throws ParseException {
 		id = data.getInt(BUNDLE_PERIOD_ID);
 		interval = data.getInt(BUNDLE_PERIOD_INTERVAL);
@@ -113,12 +131,26 @@ public class EventPeriod {
 		setWeekOccurrences(data.getInt(BUNDLE_PERIOD_WEEK_OCCURRENCES));
 		type = EventPeriod.Type.values()[data.getInt(BUNDLE_PERIOD_TYPE)];
 		setEndDate(data.getString(BUNDLE_PERIOD_END_DATE));
+		setRule(data.getString(BUNDLE_PERIOD_RULE));
 	}
 	
 	public EventPeriod(int id) {
 		this.id = id;
 	}
 	
+	/*
+	 * Create copy of given period. Rule is immutable, so it is shared by both periods.
+	 */
+	public EventPeriod(EventPeriod period) {
+		id = period.id;
+		type = period.type;
+		interval = period.interval;
+		weekOccurrences = period.weekOccurrences.clone();
+		endDate = period.endDate == null ? null : new Date(period.endDate.getTime());
+		numberOfRepeats = period.numberOfRepeats;
+		rule = period.rule;
+	}
+	
 	public EventPeriod() {
 		this(-1);
 	}
@@ -131,6 +163,7 @@ public class EventPeriod {
 		bundle.putInt(BUNDLE_PERIOD_TYPE, type.ordinal());
 		bundle.putInt(BUNDLE_PERIOD_WEEK_OCCURRENCES, getWeekOccurrencesInt());
 		bundle.putString(BUNDLE_PERIOD_END_DATE, getEndDateString());
+		bundle.putString(BUNDLE_PERIOD_RULE, getRuleString());
 		return bundle;
 	}
 	
@@ -152,10 +185,12 @@ public class EventPeriod {
 
 	public void setType(EventPeriod.Type type) {
 		this.type = type;
+		modificationCount++;
 	}
 
 	public void setType(int typeInt) {
 		type = Type.getType(typeInt);
+		modificationCount++;
 	}
 	public int getInterval() {
 		return interval;
@@ -163,6 +198,7 @@ public class EventPeriod {
 
 	public void setInterval(int interval) {
 		this.interval = interval;
+		modificationCount++;
 	}
 
 	public boolean hasEndDate() {
@@ -178,23 +214,66 @@ public class EventPeriod {
 	}
 	
 	public String getEndDateString() {
-		return hasEndDate() ? dateFormat.format(endDate) : "";
+		return hasEndDate() ? DateFormatFactory.getThreadDateFormat().format(endDate) : "";
 	}
 	
 	public void setEndDate(Date endDate) {
 		this.endDate = endDate;
+		modificationCount++;
 	}
 	
 	public void setEndDate(String endDateString) throws ParseException {
-		endDate = DateUtils.getDateFromString(dateFormat,endDateString);
+		endDate = DateUtils.getDateFromString(DateFormatFactory.getThreadDateFormat(), endDateString);
+		modificationCount++;
 	}
 	
 	public void setEndDate(long millis) {
 		endDate = millis == 0 ? null : new Date(millis);
+		modificationCount++;
 	}
 	
 	public void deleteEndDate() {
 		endDate = null;
+		modificationCount++;
+	}
+	
+	public boolean hasRule() {
+		return rule != null;
+	}
+	
+	public RecurrenceRule getRule() {
+		return rule;
+	}
+	
+	/*
+	 * Return rule in format of RFC 5545 or null, if period has no rule.
+	 */
+	public String getRuleString() {
+		return hasRule() ? rule.toString() : null;
+	}
+	
+	/*
+	 * Set rule, that defines occurrences of period. Type and interval are set to frequency and interval of rule,
+	 * so that period can be shown and saved as before. End date and number of repeats still limit occurrences.
+	 */
+	public void setRule(RecurrenceRule rule) {
+		this.rule = rule;
+		if (rule != null) {
+			type = rule.getFrequency();
+			interval = rule.getInterval();
+		}
+		modificationCount++;
+	}
+	
+	/*
+	 * Parse and set rule. If string is null or empty, rule is deleted.
+	 */
+	public void setRule(String ruleString) throws ParseException {
+		setRule(ruleString == null || ruleString.length() == 0 ? null : RecurrenceRule.parse(ruleString));
+	}
+	
+	public void deleteRule() {
+		setRule((RecurrenceRule) null);
 	}
 	
 	public int getNumberOfRepeats() {
@@ -203,6 +282,7 @@ public class EventPeriod {
 
 	public void setNumberOfRepeats(int numberOfRepeats) {
 		this.numberOfRepeats = numberOfRepeats;
+		modificationCount++;
 	}
 
 	/*
@@ -239,6 +319,22 @@ public class EventPeriod {
 		return val;
 	}
 	
+	/*
+	 * Return week occurrences as bit mask, i-th bit is set if period has occurrence on i-th day of the week.
+	 */
+	public int getWeekOccurrencesMask() {
+		if (type != WEEKLY) {
+			return 0;
+		}
+		int mask = 0;
+		for (int i = 0; i < 7; i++) {
+			if (weekOccurrences[i]) {
+				mask |= 1 << i;
+			}
+		}
+		return mask;
+	}
+	
 	public boolean[] getWeekOccurrences() {
 		return weekOccurrences;
 	}
@@ -248,10 +344,12 @@ public class EventPeriod {
 			weekOccurrences[7 - i - 1] = (val % 2) != 0;
 			val = val >> 1;
 		}
+		modificationCount++;
 	}
 	
 	public void setWeekOccurrences(boolean[] occurrences) {
 		this.weekOccurrences = occurrences;
+		modificationCount++;
 	}
 	/*
 	 * Add session of weekly period on given day of the week.
@@ -261,6 +359,7 @@ public class EventPeriod {
 			return;
 		}
 		weekOccurrences[day] = true;
+		modificationCount++;
 	}
 	
 	/*
@@ -271,10 +370,74 @@ public class EventPeriod {
 			return;
 		}
 		weekOccurrences[day] = false;
+		modificationCount++;
+	}
+	
+	/*
+	 * Return number of changes, made to period through it's setters.
+	 * Changes, made directly to deprecated public fields or to array of week occurrences, are not counted.
+	 */
+	public int getModificationCount() {
+		return modificationCount;
+	}
+	
+	/*
+	 * Return current state of period, that can be used to check later, whether period was changed.
+	 */
+	public State getState() {
+		return new State(this);
 	}
 	
 	public boolean isFinished(Date today) {
-		return hasEndDate() && DateUtils.compareDates(today, endDate) != DateUtils.BEFORE;
+		return hasEndDate() && DateUtils.getEpochDay(today) >= getEndDay();
+	}
+	
+	/*
+	 * Return true, if period, started on @startDate, has no occurrences on @today and later
+	 * because of end date or number of repeats.
+	 */
+	public boolean isFinished(Date startDate, Date today) {
+		return DateUtils.getEpochDay(today) >= getEndDay(DateUtils.getEpochDay(startDate));
+	}
+	
+	/*
+	 * Return the first day, on which period has no occurrences, or Integer.MAX_VALUE, if period has no end date.
+	 */
+	public int getEndDay() {
+		return hasEndDate() ? DateUtils.getEpochDay(endDate) : Integer.MAX_VALUE;
+	}
+	
+	/*
+	 * Return the first day, on which period, started on @startDay, has no occurrences, taking into account
+	 * both end date and number of repeats, or Integer.MAX_VALUE, if period is not limited.
+	 * Day is computed once for the last start day, until period or default time zone is changed.
+	 */
+	public int getEndDay(int startDay) {
+		int zoneGeneration = DateUtils.getZoneGeneration();
+		EndDay cache = endDayCache;
+		if (cache != null && cache.startDay == startDay && cache.zoneGeneration == zoneGeneration
+				&& cache.state.isStateOf(this)) {
+			return cache.endDay;
+		}
+		State state = getState();
+		int endDay = computeEndDay(startDay);
+		endDayCache = new EndDay(startDay, state, zoneGeneration, endDay);
+		return endDay;
+	}
+	
+	private int computeEndDay(int startDay) {
+		int endDay = getEndDay();
+		if (hasRule()) {
+			endDay = Math.min(endDay, rule.getEndDay(startDay));
+		}
+		if (numberOfRepeats > 0 && isRepeatable()) {
+			int lastDay = hasRule() ? rule.getOccurrenceByIndex(startDay, numberOfRepeats - 1)
+							: getOccurrenceByIndex(type, interval, getWeekOccurrencesMask(), startDay, numberOfRepeats - 1);
+			if (lastDay != NO_OCCURRENCE && lastDay < endDay) {
+				endDay = lastDay + 1;
+			}
+		}
+		return endDay;
 	}
 	
 	/*
@@ -313,7 +476,8 @@ public class EventPeriod {
 	    	(this.interval != that.interval || 
 	    		!Utils.areEqualOrNulls(this.endDate, that.endDate) || 
 	    		this.numberOfRepeats != that.numberOfRepeats) ||
-	    	this.type == Type.WEEKLY && this.getWeekOccurrencesInt() != that.getWeekOccurrencesInt()) {
+	    	this.type == Type.WEEKLY && this.getWeekOccurrencesInt() != that.getWeekOccurrencesInt() ||
+	    	!Utils.areEqualOrNulls(this.rule, that.rule)) {
 	    	
 	    	return false; 
 	    }
@@ -324,14 +488,15 @@ public class EventPeriod {
 	public String toString() {
 		return "Period. Type: " + this.type.toString() + "; Interval: " + Integer.toString(interval) + 
 				"; Week days: " + Integer.toString(getWeekOccurrencesInt()) + "; End date: " 
-				+ (endDate != null ? endDate.toString() : "null"); 
+				+ (endDate != null ? endDate.toString() : "null") + (hasRule() ? "; Rule: " + rule.toString() : ""); 
 	}
 	
 	/*
 	 * Return true, if period, that was started on given @startDate, has occurrence on given @date.
 	 */
 	public boolean hasOccurrenceOnDate(Date startDate, Date date) {
-		return DateUtils.areSameDates(date, getNextOccurrence(startDate, date));
+		int day = DateUtils.getEpochDay(date);
+		return getNextOccurrence(DateUtils.getEpochDay(startDate), day) == day;
 	}
 	
 	/*
@@ -342,90 +507,517 @@ public class EventPeriod {
 	 * Assume, that if period is weekly, it has occurrence on it's startDate
 	 */
 	public Date getNextOccurrence(Date startDate, Date today) {
-		if (DateUtils.compareDates(startDate, today) != DateUtils.BEFORE && !isFinished(today)){
+		int startDay = DateUtils.getEpochDay(startDate);
+		int nextDay = getNextOccurrence(startDay, DateUtils.getEpochDay(today));
+		if (nextDay == NO_OCCURRENCE) {
+			return null;
+		}
+		if (nextDay == startDay) {
 			return startDate;
 		}
+		return DateUtils.getDateFromEpochDay(nextDay, today);
+	}
+	
+	/*
+	 * Return the nearest occurrence of period, that is not earlier than @today, or NO_OCCURRENCE.
+	 * Days are numbers of days since 01.01.1970.
+	 */
+	public int getNextOccurrence(int startDay, int today) {
+		if (hasRule()) {
+			int endDay = getEndDay(startDay);
+			int ans = today >= endDay ? NO_OCCURRENCE : rule.getNextOccurrence(startDay, today);
+			return ans >= endDay ? NO_OCCURRENCE : ans;
+		}
+		return getNextOccurrence(type, interval, getWeekOccurrencesMask(), startDay, getEndDay(startDay), today);
+	}
+	
+	/*
+	 * Compute the nearest occurrence of period, that is not earlier than @today, without creating any objects.
+	 * Bit i of @weekMask is set, if weekly period has occurrence on i-th day of the week(SUNDAY is 0).
+	 * Period has no occurrences on @endDay and later.
+	 */
+	public static int getNextOccurrence(Type type, int interval, int weekMask, int startDay, int endDay, int today) {
+		if (today >= endDay) {
+			return NO_OCCURRENCE;
+		}
+		if (startDay >= today) {
+			return startDay;
+		}
+		if (interval <= 0) {
+			return NO_OCCURRENCE;
+		}
 		
-		Calendar todayCal = Calendar.getInstance();
-		todayCal.setTime(today);
-		Calendar dateCal = Calendar.getInstance();
-		dateCal.setTime(startDate);
-		Calendar ansCal = Calendar.getInstance();
+		int ans;
+		switch(type) {
+			case DAILY:
+				ans = today + (interval - (today - startDay) % interval) % interval;
+				break;
+			case WEEKLY:
+				ans = getNextWeeklyOccurrence(interval, weekMask, startDay, today);
+				break;
+			case MONTHLY:
+				ans = getNextMonthlyOccurrence(interval, 1, startDay, today);
+				break;
+			case YEARLY:
+				ans = getNextMonthlyOccurrence(interval, 12, startDay, today);
+				break;
+			default:
+				return NO_OCCURRENCE;
+		}
 		
-		long dateLong = startDate.getTime(), todayLong = todayCal.getTime().getTime(); 
-		long day = 1000*60*60*24, week = 1000*60*60*24*7;
+		if (ans == NO_OCCURRENCE || ans >= endDay) {
+			return NO_OCCURRENCE;
+		}
+		return ans;
+	}
+	
+	/*
+	 * Weeks of weekly period start on the day of week of it's start day.
+	 * Period has occurrences only in every @interval-th week.
+	 */
+	private static int getNextWeeklyOccurrence(int interval, int weekMask, int startDay, int today) {
+		if (weekMask == 0) {
+			return NO_OCCURRENCE;
+		}
+		int startDayOfWeek = DateUtils.getDayOfWeek(startDay);
+		int week = (today - startDay) / 7;
+		int dayOfWeek = (today - startDay) % 7;
+		if (week % interval == 0) {
+			int ans = getNextWeekOccurrence(weekMask, startDayOfWeek, dayOfWeek);
+			if (ans != NO_OCCURRENCE) {
+				return startDay + week * 7 + ans;
+			}
+		}
+		week += interval - week % interval;
+		return startDay + week * 7 + getNextWeekOccurrence(weekMask, startDayOfWeek, 0);
+	}
+	
+	/*
+	 * Return the first day of the week since @fromDay, on which period has occurrence, or NO_OCCURRENCE.
+	 * Days are counted from the beginning of the week, that starts on @firstDayOfWeek.
+	 */
+	private static int getNextWeekOccurrence(int weekMask, int firstDayOfWeek, int fromDay) {
+		int rotatedMask = getRotatedWeekMask(weekMask, firstDayOfWeek) >>> fromDay << fromDay;
+		return rotatedMask == 0 ? NO_OCCURRENCE : Integer.numberOfTrailingZeros(rotatedMask);
+	}
+	
+	/*
+	 * Rotate mask, so that bit 0 corresponds to the first day of week.
+	 */
+	private static int getRotatedWeekMask(int weekMask, int firstDayOfWeek) {
+		return ((weekMask >>> firstDayOfWeek) | (weekMask << (7 - firstDayOfWeek))) & 0x7F;
+	}
+	
+	/*
+	 * Compute next occurrence of period, that repeats every @interval * @monthsInPeriod months on the same day of month.
+	 * Months, that do not have this day, are skipped.
+	 */
+	private static int getNextMonthlyOccurrence(int interval, int monthsInPeriod, int startDay, int today) {
+		int step = interval * monthsInPeriod;
+		int dayOfMonth = DateUtils.getDayOfMonth(startDay);
+		int startMonth = DateUtils.getYear(startDay) * 12 + DateUtils.getMonth(startDay) - 1;
+		int todayMonth = DateUtils.getYear(today) * 12 + DateUtils.getMonth(today) - 1;
+		int month = todayMonth + (step - (todayMonth - startMonth) % step) % step;
 		
-		int diff;
+		//the same month repeats every 400 years at last, so loop always finishes.
+		for (int i = 0; i <= MAX_SKIPPED_PERIODS; i++, month += step) {
+			int year = month / 12;
+			if (dayOfMonth > DateUtils.getDaysInMonth(year, month % 12 + 1)) {
+				continue;
+			}
+			int ans = DateUtils.getEpochDay(year, month % 12 + 1, dayOfMonth);
+			if (ans >= today) {
+				return ans;
+			}
+		}
+		return NO_OCCURRENCE;
+	}
+	
+	/*
+	 * Return the day of occurrence with given @index(the first occurrence on @startDay has index 0)
+	 * of unlimited period, or NO_OCCURRENCE, if period has less occurrences.
+	 * Day is computed directly from index, so that number of repeats can be converted into end day.
+	 */
+	public static int getOccurrenceByIndex(Type type, int interval, int weekMask, int startDay, int index) {
+		if (index == 0) {
+			return startDay;
+		}
+		if (index < 0 || interval <= 0) {
+			return NO_OCCURRENCE;
+		}
+		long ans;
 		switch(type) {
-			case NONE:
-				return null;
 			case DAILY:
-				diff = this.interval - (int) (todayLong / day - dateLong / day) % this.interval;
-				System.out.println(todayLong + " " + dateLong + " " + todayLong / day + " " + dateLong / day);
-				
-				if (diff == this.interval) diff = 0;
-				ansCal.setTime(todayCal.getTime());
-				ansCal.add(Calendar.DATE, diff);
-				System.out.println(diff);
+				ans = startDay + (long) index * interval;
 				break;
 			case WEEKLY:
-				if (getFirstWeekOccurrence() == -1) {
-					return null;
-				}
-				
-				diff = interval - (int) ((todayLong - dateLong) / week) % interval;
-				if (diff == interval) diff = 0;
-				ansCal.setTime(todayCal.getTime());
-				
-				if (diff == 0) {
-					
-					boolean isFound = false;
-					int count = 0;
-					for (int i = todayCal.get(Calendar.DAY_OF_WEEK); i < dateCal.get(Calendar.DAY_OF_WEEK) + 
-												(todayCal.get(Calendar.DAY_OF_WEEK) >= dateCal.get(Calendar.DAY_OF_WEEK) ? 7 : 0); i++) {
-						if (isWeekOccurrence((i - 1) % 7)) {
-							ansCal.add(Calendar.DATE, count);	
-							isFound = true;
-							break;
-						} else {
-							count ++;
-						}
-					}
-					if (isFound) {
-						break;
-					} else {
-						diff = interval;
-					}
-				}	
-				ansCal.add(Calendar.WEEK_OF_YEAR, diff);
-				ansCal.add(Calendar.DATE, -(todayCal.get(Calendar.DAY_OF_WEEK) - dateCal.get(Calendar.DAY_OF_WEEK)
-						 						+ (todayCal.get(Calendar.DAY_OF_WEEK) < dateCal.get(Calendar.DAY_OF_WEEK ) ? 7 : 0)));
+				ans = getWeeklyOccurrenceByIndex(interval, weekMask, startDay, index);
 				break;
 			case MONTHLY:
-				diff = this.interval - ((todayCal.get(Calendar.YEAR)- dateCal.get(Calendar.YEAR))*12 
-										+ todayCal.get(Calendar.MONTH) - dateCal.get(Calendar.MONTH)) % this.interval;
-				if (diff == this.interval && todayCal.get(Calendar.DAY_OF_MONTH) <= dateCal.get(Calendar.DAY_OF_MONTH)) diff = 0;
-				ansCal.setTime(todayCal.getTime());
-				ansCal.add(Calendar.MONTH, diff);
-				ansCal.set(Calendar.DAY_OF_MONTH, dateCal.get(Calendar.DAY_OF_MONTH));
+				ans = getMonthlyOccurrenceByIndex(interval, 1, startDay, index);
 				break;
-				
 			case YEARLY:
-				diff = this.interval - (todayCal.get(Calendar.YEAR) - dateCal.get(Calendar.YEAR)) % this.interval;
-				if (diff == this.interval && todayCal.get(Calendar.DAY_OF_YEAR) <=  dateCal.get(Calendar.DAY_OF_YEAR)) diff = 0;
-				ansCal.setTime(todayCal.getTime());
-				ansCal.add(Calendar.YEAR, diff);
-				ansCal.set(Calendar.MONTH, dateCal.get(Calendar.MONTH));
-				ansCal.set(Calendar.DAY_OF_MONTH, dateCal.get(Calendar.DAY_OF_MONTH));
+				ans = getMonthlyOccurrenceByIndex(interval, 12, startDay, index);
 				break;
 			default:
-				return null;
+				return NO_OCCURRENCE;
+		}
+		return ans == NO_OCCURRENCE || ans > Integer.MAX_VALUE ? NO_OCCURRENCE : (int) ans;
+	}
+	
+	/*
+	 * The first week of period contains start day and days of week from @weekMask, every next @interval-th week
+	 * contains only days of week from @weekMask.
+	 */
+	private static long getWeeklyOccurrenceByIndex(int interval, int weekMask, int startDay, int index) {
+		int startDayOfWeek = DateUtils.getDayOfWeek(startDay);
+		int firstWeekCount = Integer.bitCount(getRotatedWeekMask(weekMask | (1 << startDayOfWeek), startDayOfWeek));
+		if (index < firstWeekCount) {
+			return startDay + getWeekOccurrenceByIndex(weekMask | (1 << startDayOfWeek), startDayOfWeek, index);
 		}
+		int weekCount = Integer.bitCount(weekMask & 0x7F);
+		if (weekCount == 0) {
+			return NO_OCCURRENCE;
+		}
+		index -= firstWeekCount;
+		long week = (long) (1 + index / weekCount) * interval;
+		return startDay + week * 7 + getWeekOccurrenceByIndex(weekMask, startDayOfWeek, index % weekCount);
+	}
+	
+	/*
+	 * Return number of day since the beginning of the week, that starts on @firstDayOfWeek,
+	 * of @index-th occurrence in the week.
+	 */
+	private static int getWeekOccurrenceByIndex(int weekMask, int firstDayOfWeek, int index) {
+		int rotatedMask = getRotatedWeekMask(weekMask, firstDayOfWeek);
+		for (int i = 0; i < index; i++) {
+			rotatedMask &= rotatedMask - 1;
+		}
+		return Integer.numberOfTrailingZeros(rotatedMask);
+	}
+	
+	/*
+	 * Months of monthly period, that do not have it's day, are skipped. Days up to 28th exist in every month,
+	 * 30th and 31st depend only on month of year, so which months are skipped repeats in cycle of at most 12 periods.
+	 * 29th is skipped only in February of common years, which are counted without looking through months.
+	 */
+	private static long getMonthlyOccurrenceByIndex(int interval, int monthsInPeriod, int startDay, int index) {
+		int step = interval * monthsInPeriod;
+		int dayOfMonth = DateUtils.getDayOfMonth(startDay);
+		int startMonth = DateUtils.getYear(startDay) * 12 + DateUtils.getMonth(startDay) - 1;
 		
-		if (isFinished(ansCal.getTime())) {
-			return null;
+		long month;
+		if (dayOfMonth == 29) {
+			month = getLeapMonthByIndex(startMonth, step, index);
+		} else {
+			int cycleMonths = dayOfMonth <= 28 ? step : 12;
+			int periodsInCycle = cycleMonths / gcd(step, cycleMonths);
+			
+			//number of existing days in one cycle, at least start day exists.
+			int cycleCount = 0;
+			for (int i = 0; i < periodsInCycle; i++) {
+				if (hasDayOfMonth(startMonth + i * step, dayOfMonth)) {
+					cycleCount++;
+				}
+			}
+			month = startMonth + (long) (index / cycleCount) * periodsInCycle * step;
+			index %= cycleCount;
+			for (int i = 0; ; i++) {
+				if (hasDayOfMonth(startMonth + i * step, dayOfMonth) && index-- == 0) {
+					month += (long) i * step;
+					break;
+				}
+			}
+		}
+		if (month / 12 > MAX_YEAR) {
+			return NO_OCCURRENCE;
+		}
+		return DateUtils.getEpochDay((int) (month / 12), (int) (month % 12) + 1, dayOfMonth);
+	}
+	
+	/*
+	 * Return month of @index-th occurrence of period on 29th day, that starts in @startMonth and repeats every @step months.
+	 * First k periods contain k minus number of common Februaries among them occurrences, so the least k,
+	 * for which it is greater than @index, is found by binary search. Start month has 29th day and months with the same
+	 * remainder modulo 400 years have the same days, so k is not greater than 400 * (index + 1).
+	 */
+	private static long getLeapMonthByIndex(int startMonth, int step, int index) {
+		long low = index + 1;
+		long high = 400L * (index + 1);
+		while (low < high) {
+			long middle = (low + high) >>> 1;
+			if (middle - countCommonFebruaries(startMonth, step, middle) > index) {
+				high = middle;
+			} else {
+				low = middle + 1;
+			}
+		}
+		return startMonth + (low - 1) * step;
+	}
+	
+	/*
+	 * Return number of Februaries of common years among the first @periods months of period,
+	 * that starts in @startMonth and repeats every @step months.
+	 */
+	private static long countCommonFebruaries(int startMonth, int step, long periods) {
+		int firstFebruary = -1;
+		for (int i = 0; i < 12; i++) {
+			if ((startMonth + i * step) % 12 == 1) {
+				firstFebruary = i;
+				break;
+			}
+		}
+		if (firstFebruary == -1 || firstFebruary >= periods) {
+			return 0;
+		}
+		//every februaryStep-th period is in February, and years of these Februaries form arithmetic progression.
+		int februaryStep = 12 / gcd(step, 12);
+		long februaries = (periods - 1 - firstFebruary) / februaryStep + 1;
+		long firstYear = (startMonth + (long) firstFebruary * step) / 12;
+		long yearStep = (long) februaryStep * step / 12;
+		long leapYears = countMultiples(firstYear, yearStep, februaries, 4) - countMultiples(firstYear, yearStep, februaries, 100)
+							+ countMultiples(firstYear, yearStep, februaries, 400);
+		return februaries - leapYears;
+	}
+	
+	/*
+	 * Return number of @count first members of arithmetic progression, that starts with @first and has difference @step,
+	 * which are divisible by @divisor. Index of the first such member is solution of linear congruence.
+	 */
+	private static long countMultiples(long first, long step, long count, int divisor) {
+		int g = gcd((int) (step % divisor), divisor);
+		int remainder = (int) ((divisor - first % divisor) % divisor);
+		if (remainder % g != 0) {
+			return 0;
+		}
+		int modulus = divisor / g;
+		long firstIndex = remainder / g * getModularInverse(step / g % modulus, modulus) % modulus;
+		return firstIndex >= count ? 0 : (count - 1 - firstIndex) / modulus + 1;
+	}
+	
+	/*
+	 * Return x, such that @value * x is 1 modulo @modulus. Value and modulus should be coprime.
+	 */
+	private static long getModularInverse(long value, int modulus) {
+		long oldRemainder = value % modulus;
+		long remainder = modulus;
+		long oldCoefficient = 1;
+		long coefficient = 0;
+		while (remainder != 0) {
+			long quotient = oldRemainder / remainder;
+			long next = oldRemainder - quotient * remainder;
+			oldRemainder = remainder;
+			remainder = next;
+			next = oldCoefficient - quotient * coefficient;
+			oldCoefficient = coefficient;
+			coefficient = next;
+		}
+		return (oldCoefficient % modulus + modulus) % modulus;
+	}
+	
+	private static boolean hasDayOfMonth(int month, int dayOfMonth) {
+		return dayOfMonth <= DateUtils.getDaysInMonth(month / 12, month % 12 + 1);
+	}
+	
+	private static int gcd(int a, int b) {
+		while (b != 0) {
+			int c = a % b;
+			a = b;
+			b = c;
+		}
+		return a;
+	}
+	
+	/*
+	 * Return all occurrences of period, started on @startDay, between @fromDay and @toDay inclusively.
+	 * Days, contained in sorted array @exceptionDays, are skipped. @exceptionDays can be null.
+	 */
+	public int[] getOccurrencesBetween(int startDay, int fromDay, int toDay, int[] exceptionDays) {
+		return new OccurrenceIterator().reset(this, startDay, fromDay, toDay, exceptionDays).toArray();
+	}
+	
+	/*
+	 * Values of period, that define it's occurrences, saved at some moment.
+	 * Deprecated public fields and array of week occurrences can be changed without setters,
+	 * so their values are compared in addition to modification count.
+	 */
+	public static final class State {
+		private final int modificationCount;
+		private final Type type;
+		private final int interval;
+		private final int weekOccurrencesMask;
+		private final long endDateMillis;
+		private final int numberOfRepeats;
+		
+		private State(EventPeriod period) {
+			this.modificationCount = period.modificationCount;
+			this.type = period.type;
+			this.interval = period.interval;
+			this.weekOccurrencesMask = period.getWeekOccurrencesMask();
+			this.endDateMillis = period.getEndDateMillis();
+			this.numberOfRepeats = period.numberOfRepeats;
+		}
+		
+		/*
+		 * Return true, if period was not changed since state was saved.
+		 */
+		public boolean isStateOf(EventPeriod period) {
+			return modificationCount == period.modificationCount && type == period.type && interval == period.interval
+					&& weekOccurrencesMask == period.getWeekOccurrencesMask() && endDateMillis == period.getEndDateMillis()
+					&& numberOfRepeats == period.numberOfRepeats;
+		}
+	}
+	
+	/*
+	 * End day of period for given start day, valid while period has given state
+	 * and default time zone has given generation.
+	 */
+	private static final class EndDay {
+		final int startDay;
+		final State state;
+		final int zoneGeneration;
+		final int endDay;
+		
+		EndDay(int startDay, State state, int zoneGeneration, int endDay) {
+			this.startDay = startDay;
+			this.state = state;
+			this.zoneGeneration = zoneGeneration;
+			this.endDay = endDay;
+		}
+	}
+	
+	/*
+	 * Iterator over occurrence days of period in given range.
+	 * It takes into account end date, number of repeats and exceptions of period.
+	 * Iterator can be reused for another period or range by calling reset.
+	 */
+	public static class OccurrenceIterator {
+		
+		private Type type;
+		
+		private int interval;
+		
+		private int weekMask;
+		
+		private int startDay;
+		
+		private int endDay;
+		
+		private int toDay;
+		
+		private int[] exceptionDays;
+		
+		private int exceptionIndex;
+		
+		private int next = NO_OCCURRENCE;
+		
+		//iterator over occurrences of period's rule, or null, if period has no rule.
+		private RecurrenceRule.OccurrenceIterator ruleIterator;
+		
+		private RecurrenceRule.OccurrenceIterator freeRuleIterator;
+		
+		public OccurrenceIterator reset(EventPeriod period, int startDay, int fromDay, int toDay, int[] exceptionDays) {
+			ruleIterator = null;
+			if (period.hasRule()) {
+				if (freeRuleIterator == null) {
+					freeRuleIterator = new RecurrenceRule.OccurrenceIterator();
+				}
+				ruleIterator = freeRuleIterator.reset(period.getRule(), startDay);
+			}
+			this.type = period.getType();
+			this.interval = period.getInterval();
+			this.weekMask = period.getWeekOccurrencesMask();
+			this.startDay = startDay;
+			//number of repeats is converted into end day.
+			this.endDay = period.getEndDay(startDay);
+			this.toDay = toDay;
+			this.exceptionDays = exceptionDays;
+			this.exceptionIndex = 0;
+			if (exceptionDays != null) {
+				//exceptions before @fromDay are skipped at once.
+				int position = Arrays.binarySearch(exceptionDays, fromDay);
+				exceptionIndex = position >= 0 ? position : -position - 1;
+			}
+			advance(fromDay);
+			return this;
+		}
+		
+		public boolean hasNext() {
+			return next != NO_OCCURRENCE;
+		}
+		
+		/*
+		 * Return next occurrence day, or NO_OCCURRENCE, if there are no more occurrences.
+		 */
+		public int next() {
+			int ans = next;
+			if (ans != NO_OCCURRENCE) {
+				advance(ans + 1);
+			}
+			return ans;
+		}
+		
+		private void advance(int day) {
+			while (true) {
+				if (ruleIterator != null) {
+					next = day >= endDay ? NO_OCCURRENCE : ruleIterator.getNextOccurrence(day);
+					next = next >= endDay ? NO_OCCURRENCE : next;
+				} else {
+					next = getNextOccurrence(type, interval, weekMask, startDay, endDay, day);
+				}
+				if (next == NO_OCCURRENCE || next > toDay) {
+					next = NO_OCCURRENCE;
+					return;
+				}
+				if (!isException(next)) {
+					return;
+				}
+				day = skipExceptions(next);
+			}
+		}
+		
+		/*
+		 * Return the first day after run of consecutive exception days, that starts with given exception day.
+		 * Exception index is left on the last day of run.
+		 */
+		private int skipExceptions(int day) {
+			day++;
+			while (exceptionIndex + 1 < exceptionDays.length && exceptionDays[exceptionIndex + 1] == day) {
+				exceptionIndex++;
+				day++;
+			}
+			return day;
+		}
+		
+		private boolean isException(int day) {
+			if (exceptionDays == null) {
+				return false;
+			}
+			while (exceptionIndex < exceptionDays.length && exceptionDays[exceptionIndex] < day) {
+				exceptionIndex++;
+			}
+			return exceptionIndex < exceptionDays.length && exceptionDays[exceptionIndex] == day;
+		}
+		
+		/*
+		 * Return all remaining occurrences.
+		 */
+		public int[] toArray() {
+			int[] occurrences = new int[8];
+			int size = 0;
+			while (hasNext()) {
+				if (size == occurrences.length) {
+					occurrences = copyOf(occurrences, size * 2);
+				}
+				occurrences[size++] = next();
+			}
+			return copyOf(occurrences, size);
+		}
+		
+		private static int[] copyOf(int[] array, int length) {
+			int[] copy = new int[length];
+			System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+			return copy;
 		}
-		return ansCal.getTime();
 	}
-
 }
@@ -0,0 +1,206 @@
+package com.timetable.android;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.timetable.android.TimetableDatabase.ChangeSet;
+
+/*
+ * Application-wide in-memory copy of all events, indexed by id and by day.
+ * Events are loaded from database on first access. Changes are written to database by EventWriter,
+ * and after they are committed, indexes are updated and listeners are notified on the main thread.
+ * EventTimeline and EventPager read events only from repository and learn about changes from it's listeners.
+ * Events, returned by repository, are shared and should not be modified.
+ */
+public class EventRepository {
+
+	private static EventRepository mInstance;
+
+	private final Context mContext;
+
+	private boolean isLoaded = false;
+
+	private final Map<Integer, Event> mEventsById = new HashMap<Integer, Event>();
+
+	//index by day and snapshot of all events, sorted by start time.
+	private final EventDayCache mDays = new EventDayCache();
+
+	private final Vector<OnEventChangedListener> mListeners = new Vector<OnEventChangedListener>();
+
+	private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+	public interface OnEventChangedListener {
+
+		public void onEventAdded(Event event);
+
+		public void onEventUpdated(Event event);
+
+		public void onEventDeleted(Event event);
+	}
+
+	private EventRepository(Context context) {
+		mContext = context;
+	}
+
+	public static synchronized EventRepository getInstance(Context context) {
+		if (mInstance == null) {
+			mInstance = new EventRepository(context.getApplicationContext());
+		}
+		return mInstance;
+	}
+
+	/*
+	 * Load all events from database, if they are not loaded yet.
+	 */
+	private synchronized void ensureLoaded() {
+		if (isLoaded) {
+			return;
+		}
+		List<Event> events = new ArrayList<Event>();
+		EventCursor cursor = TimetableDatabase.getInstance(mContext).queryAllEvents();
+		try {
+			while (cursor.moveToNext()) {
+				Event event = cursor.getEvent();
+				events.add(event);
+				mEventsById.put(event.getId(), event);
+			}
+		} finally {
+			cursor.close();
+		}
+		mDays.setEvents(Collections.unmodifiableList(events), null);
+		isLoaded = true;
+		Logger.log("EventRepository.ensureLoaded: " + Integer.toString(events.size()) + " events are loaded.");
+	}
+
+	/*
+	 * Forget loaded events, so that they are loaded from database again on next access.
+	 * Should be called, if database is changed not through EventWriter.
+	 */
+	public synchronized void reload() {
+		isLoaded = false;
+		mEventsById.clear();
+	}
+
+	/*
+	 * Return event with given id or null, if there is no such event.
+	 */
+	public synchronized Event getEvent(int id) {
+		ensureLoaded();
+		return mEventsById.get(id);
+	}
+
+	public synchronized boolean containsEvent(int id) {
+		ensureLoaded();
+		return mEventsById.containsKey(id);
+	}
+
+	/*
+	 * Return unmodifiable snapshot of all events, sorted by start time.
+	 */
+	public synchronized List<Event> getEvents() {
+		ensureLoaded();
+		return mDays.getEvents();
+	}
+
+	/*
+	 * Return events, that occur on given epoch day, sorted by start time.
+	 * If day is not cached, it is computed in the calling thread.
+	 */
+	public List<Event> getEvents(int day) {
+		ensureLoaded();
+		return mDays.getEvents(day);
+	}
+
+	/*
+	 * Compute in background events of the days around given day, so that they are cached, when they are displayed.
+	 */
+	public void prefetch(int day) {
+		ensureLoaded();
+		mDays.prefetch(day);
+	}
+
+	public void addOnEventChangedListener(OnEventChangedListener listener) {
+		mListeners.add(listener);
+	}
+
+	public void removeOnEventChangedListener(OnEventChangedListener listener) {
+		mListeners.remove(listener);
+	}
+
+	/*
+	 * Write changes to database in background. Repository is updated after changes are committed.
+	 */
+	public void apply(ChangeSet changes, EventWriter.OnChangesAppliedListener listener) {
+		EventWriter.getInstance(mContext).apply(changes, listener);
+	}
+
+	/*
+	 * Update indexes after given changes are committed to database. Is called by EventWriter on it's thread.
+	 */
+	synchronized void onChangesApplied(ChangeSet changes) {
+		if (!isLoaded) {
+			//changes will be read from database together with all events.
+			return;
+		}
+		for (Event event: changes.getDeletedEvents()) {
+			mEventsById.remove(event.getId());
+			mDays.deleteEvent(event);
+			notifyListeners(BroadcastActions.ACTION_EVENT_DELETED, event);
+		}
+		for (Event event: changes.getUpdatedEvents()) {
+			mEventsById.put(event.getId(), event);
+			mDays.updateEvent(event);
+			notifyListeners(BroadcastActions.ACTION_EVENT_UPDATED, event);
+		}
+		for (Event event: changes.getInsertedEvents()) {
+			mEventsById.put(event.getId(), event);
+			mDays.addEvent(event);
+			notifyListeners(BroadcastActions.ACTION_EVENT_ADDED, event);
+		}
+		Set<Integer> updatedIds = new HashSet<Integer>();
+		for (Event event: changes.getInsertedEvents()) {
+			updatedIds.add(event.getId());
+		}
+		for (Event event: changes.getUpdatedEvents()) {
+			updatedIds.add(event.getId());
+		}
+		for (Event event: changes.getExceptionEvents()) {
+			if (mEventsById.containsKey(event.getId()) && updatedIds.add(event.getId())) {
+				mEventsById.put(event.getId(), event);
+				mDays.updateEvent(event);
+				notifyListeners(BroadcastActions.ACTION_EVENT_UPDATED, event);
+			}
+		}
+	}
+
+	private void notifyListeners(final String action, final Event event) {
+		if (mListeners.isEmpty()) {
+			return;
+		}
+		mMainHandler.post(new Runnable() {
+
+			@Override
+			public void run() {
+				for (OnEventChangedListener listener: new ArrayList<OnEventChangedListener>(mListeners)) {
+					if (BroadcastActions.ACTION_EVENT_ADDED.equals(action)) {
+						listener.onEventAdded(event);
+					} else if (BroadcastActions.ACTION_EVENT_UPDATED.equals(action)) {
+						listener.onEventUpdated(event);
+					} else {
+						listener.onEventDeleted(event);
+					}
+				}
+			}
+		});
+	}
+}
@@ -0,0 +1,101 @@
+package com.timetable.android;
+
+import android.database.Cursor;
+
+/*
+ * Mapper, that builds Event together with it's period, alarm and exceptions from the row of TimetableDatabase.EVENT_QUERY.
+ */
+public class EventRowMapper extends RowMapper {
+
+	private static final String EXCEPTIONS_SEPARATOR = ",";
+
+	private final PeriodRowMapper mPeriodMapper = new PeriodRowMapper();
+
+	private final AlarmRowMapper mAlarmMapper = new AlarmRowMapper();
+
+	private int mIdIndex;
+
+	private int mNameIndex;
+
+	private int mPlaceIndex;
+
+	private int mNoteIndex;
+
+	private int mMuteDeviceIndex;
+
+	private int mStartTimeIndex;
+
+	private int mDateIndex;
+
+	private int mEndTimeIndex;
+
+	private int mExceptionsIndex;
+
+	@Override
+	protected void resolveColumns(Cursor cursor) {
+		mIdIndex = cursor.getColumnIndex("evt_id");
+		mNameIndex = cursor.getColumnIndex("evt_name");
+		mPlaceIndex = cursor.getColumnIndex("evt_place");
+		mNoteIndex = cursor.getColumnIndex("evt_note");
+		mMuteDeviceIndex = cursor.getColumnIndex("evt_mute_device");
+		mStartTimeIndex = cursor.getColumnIndex("evt_start_time");
+		mDateIndex = cursor.getColumnIndex("evt_date");
+		mEndTimeIndex = cursor.getColumnIndex("evt_end_time");
+		mExceptionsIndex = cursor.getColumnIndex("evt_exceptions");
+		mPeriodMapper.bind(cursor);
+		mAlarmMapper.bind(cursor);
+	}
+
+	public Event map(Cursor cursor) {
+		bind(cursor);
+		EventPeriod period = null;
+		if (mPeriodMapper.isNull(cursor)) {
+			Logger.error("EventRowMapper.map: Error. Period of event with id "
+						+ Integer.toString(cursor.getInt(mIdIndex)) + " is not found.");
+		} else {
+			period = mPeriodMapper.map(cursor);
+		}
+		Event event = new Event.Builder()
+						.setId(cursor.getInt(mIdIndex))
+						.setName(cursor.getString(mNameIndex))
+						.setPlace(cursor.getString(mPlaceIndex))
+						.setNote(cursor.getString(mNoteIndex))
+						.setPeriod(period)
+						.setMuteDevice(cursor.getInt(mMuteDeviceIndex) != 0)
+						.setStartTime(cursor.getLong(mStartTimeIndex))
+						.setDate(cursor.getLong(mDateIndex))
+						.setEndTime(cursor.getLong(mEndTimeIndex))
+						.setExceptionDays(parseExceptionDays(cursor.getString(mExceptionsIndex)))
+						.build();
+		if (!mAlarmMapper.isNull(cursor)) {
+			event.setAlarm(mAlarmMapper.map(cursor, event));
+		}
+		return event;
+	}
+
+	/*
+	 * Parse exception days, concatenated by the query into one string.
+	 */
+	private static int[] parseExceptionDays(String exceptionsString) {
+		if (exceptionsString == null) {
+			return null;
+		}
+		String[] dayStrings = exceptionsString.split(EXCEPTIONS_SEPARATOR);
+		int[] days = new int[dayStrings.length];
+		int size = 0;
+		for (String dayString: dayStrings) {
+			try {
+				days[size] = Integer.parseInt(dayString);
+				size++;
+			} catch (NumberFormatException e) {
+				Logger.log("EventRowMapper.parseExceptionDays: Ivalid exception found.");
+			}
+		}
+		if (size < days.length) {
+			int[] validDays = new int[size];
+			System.arraycopy(days, 0, validDays, 0, size);
+			days = validDays;
+		}
+		return days;
+	}
+}
@@ -0,0 +1,521 @@
+package com.timetable.android;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Vector;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.database.sqlite.SQLiteException;
+import android.os.AsyncTask;
+
+import com.timetable.android.utils.IndexedPriorityQueue;
+import com.timetable.android.utils.Utils;
+
+/*
+ * Ordered timeline of all upcoming event starts, event ends and alarms.
+ * Events are loaded from database only once, on background thread, because database can be migrated, when it is opened
+ * for the first time. After that timeline is updated by listener of EventRepository.
+ * Only one system alarm is set for the earliest transition in timeline.
+ * When it runs, all transitions, that are due, are dispatched to listeners.
+ * Timeline is shared by services, so each of them calls start() when it is created and stop() when it is destroyed.
+ * Timeline keeps running, while at least one of them is alive. Listeners, that are added to running timeline,
+ * are notified about events, that have already started.
+ * Timeline is changed only under it's lock, both by services and by it's listeners.
+ */
+public class EventTimeline {
+
+	/*
+	 * Broadcasted by AlarmManager, when the earliest transition in timeline is due.
+	 */
+	public static final String ACTION_TIMELINE_WAKEUP = "com.timetable.android.ACTION_TIMELINE_WAKEUP";
+
+	private static final int WAKEUP_REQUEST_CODE = 0;
+
+	private static final long NO_WAKEUP = -1;
+
+	private static EventTimeline mInstance;
+
+	private Context mContext;
+
+	private AlarmManager mAlarmManager;
+
+	private TimelineReceiver mReceiver;
+
+	private EventChangeListener mEventChangeListener = new EventChangeListener();
+
+	//number of services, that have started timeline and have not stopped it yet.
+	private int mStartCount = 0;
+
+	//true, if events of running timeline are loaded and scheduled.
+	private boolean isLoaded = false;
+
+	private LoadEventsTask mLoadEventsTask;
+
+	//time, for which system alarm is set.
+	private long mWakeupTime = NO_WAKEUP;
+
+	//all transitions are indexed by event id.
+	private IndexedPriorityQueue<Event> mStarts = new IndexedPriorityQueue<Event>();
+
+	private IndexedPriorityQueue<Event> mEnds = new IndexedPriorityQueue<Event>();
+
+	private IndexedPriorityQueue<Event> mAlarms = new IndexedPriorityQueue<Event>();
+
+	private Vector<OnEventStartedListener> mStartedListeners = new Vector<OnEventStartedListener>();
+
+	private Vector<OnEventEndedListener> mEndedListeners = new Vector<OnEventEndedListener>();
+
+	private Vector<OnAlarmFiredListener> mAlarmFiredListeners = new Vector<OnAlarmFiredListener>();
+
+	private Vector<OnAlarmsChangedListener> mAlarmsChangedListeners = new Vector<OnAlarmsChangedListener>();
+
+	public interface OnEventStartedListener {
+		public void onEventStarted(Event event);
+	}
+
+	public interface OnEventEndedListener {
+		public void onEventEnded(Event event);
+	}
+
+	public interface OnAlarmFiredListener {
+		public void onAlarmFired(Event event);
+	}
+
+	/*
+	 * Is called, when the set of scheduled alarms is changed.
+	 */
+	public interface OnAlarmsChangedListener {
+		public void onAlarmsChanged();
+	}
+
+	public static synchronized EventTimeline getInstance(Context context) {
+		if (mInstance == null) {
+			mInstance = new EventTimeline(context.getApplicationContext());
+		}
+		return mInstance;
+	}
+
+	private EventTimeline(Context context) {
+		mContext = context;
+		mAlarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+	}
+
+	/*
+	 * Start receiving changes of events and load events from EventRepository in background.
+	 * If timeline is already started, only number of it's users is increased. Should be called on the main thread.
+	 */
+	public synchronized void start() {
+		if (mStartCount++ > 0) {
+			return;
+		}
+		mReceiver = new TimelineReceiver();
+		mContext.registerReceiver(mReceiver, new IntentFilter(ACTION_TIMELINE_WAKEUP));
+		EventRepository.getInstance(mContext).addOnEventChangedListener(mEventChangeListener);
+		mLoadEventsTask = new LoadEventsTask();
+		mLoadEventsTask.execute();
+	}
+
+	/*
+	 * Schedule all events of EventRepository again. Should be called, after repository is reloaded.
+	 * Events are read on calling thread, if repository is not loaded yet.
+	 */
+	public synchronized void reload() {
+		if (mStartCount == 0) {
+			return;
+		}
+		mStarts.clear();
+		mEnds.clear();
+		mAlarms.clear();
+		load(EventRepository.getInstance(mContext).getEvents());
+	}
+
+	private void load(List<Event> events) {
+		isLoaded = true;
+		long now = Utils.getCurrDateTime().getTime();
+		for (Event event: events) {
+			scheduleEvent(event, now);
+			scheduleAlarm(event, now);
+		}
+		Logger.log("EventTimeline.load: " + Integer.toString(events.size()) + " events are loaded.");
+		dispatchDueTransitions();
+		notifyAlarmsChanged();
+	}
+
+	/*
+	 * Stop receiving changes of events and cancel system alarm, when the last user of timeline stops it.
+	 */
+	public synchronized void stop() {
+		if (mStartCount == 0 || --mStartCount > 0) {
+			return;
+		}
+		mContext.unregisterReceiver(mReceiver);
+		EventRepository.getInstance(mContext).removeOnEventChangedListener(mEventChangeListener);
+		mLoadEventsTask.cancel(false);
+		isLoaded = false;
+		cancelWakeup();
+		mStarts.clear();
+		mEnds.clear();
+		mAlarms.clear();
+	}
+
+	/*
+	 * Add listener. If timeline is already started, starts of current events have already been dispatched,
+	 * so listener is notified about them immediately.
+	 */
+	public synchronized void addOnEventStartedListener(OnEventStartedListener listener) {
+		mStartedListeners.add(listener);
+		if (!isLoaded) {
+			//starts of current events will be dispatched, when events are loaded.
+			return;
+		}
+		Date currentTime = Utils.getCurrDateTime();
+		for (Event event: EventRepository.getInstance(mContext).getEvents()) {
+			if (event.isCurrent(currentTime)) {
+				listener.onEventStarted(event);
+			}
+		}
+	}
+
+	public void removeOnEventStartedListener(OnEventStartedListener listener) {
+		mStartedListeners.remove(listener);
+	}
+
+	public void addOnEventEndedListener(OnEventEndedListener listener) {
+		mEndedListeners.add(listener);
+	}
+
+	public void removeOnEventEndedListener(OnEventEndedListener listener) {
+		mEndedListeners.remove(listener);
+	}
+
+	public void addOnAlarmFiredListener(OnAlarmFiredListener listener) {
+		mAlarmFiredListeners.add(listener);
+	}
+
+	public void removeOnAlarmFiredListener(OnAlarmFiredListener listener) {
+		mAlarmFiredListeners.remove(listener);
+	}
+
+	public void addOnAlarmsChangedListener(OnAlarmsChangedListener listener) {
+		mAlarmsChangedListeners.add(listener);
+	}
+
+	public void removeOnAlarmsChangedListener(OnAlarmsChangedListener listener) {
+		mAlarmsChangedListeners.remove(listener);
+	}
+
+	/*
+	 * Return event, whose alarm will be fired next, or null, if no alarms are scheduled.
+	 */
+	public synchronized Event getNextAlarmEvent() {
+		return mAlarms.peek();
+	}
+
+	/*
+	 * Return time of the next alarm, or null, if no alarms are scheduled.
+	 */
+	public synchronized Date getNextAlarmTime() {
+		return mAlarms.isEmpty() ? null : new Date(mAlarms.peekPriority());
+	}
+
+	public synchronized boolean hasAlarms() {
+		return !mAlarms.isEmpty();
+	}
+
+	public synchronized boolean hasAlarm(Event event) {
+		return mAlarms.contains(event.getId());
+	}
+
+	/*
+	 * Schedule next occurrence of event's alarm. Is called, when alarm is dismissed.
+	 */
+	public synchronized void updateAlarm(Event event) {
+		if (mStartCount == 0) {
+			return;
+		}
+		scheduleAlarm(event, Utils.getCurrDateTime().getTime());
+		rescheduleWakeup();
+		notifyAlarmsChanged();
+	}
+
+	/*
+	 * Fire event's alarm once more on given time.
+	 */
+	public synchronized void snoozeAlarm(Event event, long alarmTime) {
+		if (mStartCount == 0) {
+			return;
+		}
+		mAlarms.offer(event.getId(), alarmTime, event);
+		rescheduleWakeup();
+		notifyAlarmsChanged();
+	}
+
+	/*
+	 * Dispatch transitions, that are due. Is called, when system alarm for the earliest transition runs.
+	 */
+	public synchronized void wakeUp() {
+		if (mStartCount == 0) {
+			return;
+		}
+		mWakeupTime = NO_WAKEUP;
+		dispatchDueTransitions();
+	}
+
+	private void onEventAdded(Event event) {
+		long now = Utils.getCurrDateTime().getTime();
+		scheduleEvent(event, now);
+		scheduleAlarm(event, now);
+		dispatchDueTransitions();
+		notifyAlarmsChanged();
+	}
+
+	private void onEventUpdated(Event event) {
+		long now = Utils.getCurrDateTime().getTime();
+		scheduleEvent(event, now);
+		scheduleAlarm(event, now);
+		if (!event.isCurrent(new Date(now))) {
+			notifyEventEnded(event);
+		}
+		dispatchDueTransitions();
+		notifyAlarmsChanged();
+	}
+
+	private void onEventDeleted(Event event) {
+		mStarts.remove(event.getId());
+		mEnds.remove(event.getId());
+		mAlarms.remove(event.getId());
+		if (event.isCurrent(Utils.getCurrDateTime())) {
+			notifyEventEnded(event);
+		}
+		rescheduleWakeup();
+		notifyAlarmsChanged();
+	}
+
+	/*
+	 * Put next start and end of event into timeline.
+	 * If event is taking place right now, it's start is scheduled immediately.
+	 */
+	private void scheduleEvent(Event event, long now) {
+		mStarts.remove(event.getId());
+		mEnds.remove(event.getId());
+		if (!event.hasStartTime() || !event.hasEndTime()) {
+			return;
+		}
+		Date currentTime = new Date(now);
+		if (event.isCurrent(currentTime)) {
+			mStarts.offer(event.getId(), now, event);
+		} else {
+			scheduleEventStart(event, currentTime);
+		}
+		scheduleEventEnd(event, currentTime);
+	}
+
+	private void scheduleEventStart(Event event, Date currentTime) {
+		Date nextStartTime = event.getNextStartTime(currentTime);
+		if (nextStartTime != null) {
+			mStarts.offer(event.getId(), nextStartTime.getTime(), event);
+		}
+	}
+
+	private void scheduleEventEnd(Event event, Date currentTime) {
+		Date nextEndTime = event.getNextEndTime(currentTime);
+		if (nextEndTime != null) {
+			mEnds.offer(event.getId(), nextEndTime.getTime(), event);
+		}
+	}
+
+	private void scheduleAlarm(Event event, long now) {
+		mAlarms.remove(event.getId());
+		if (!event.hasAlarm()) {
+			return;
+		}
+		Date nextAlarmTime = event.getAlarm().getNextOccurrence(new Date(now));
+		if (nextAlarmTime == null || nextAlarmTime.getTime() <= now) {
+			return;
+		}
+		mAlarms.offer(event.getId(), nextAlarmTime.getTime(), event);
+	}
+
+	/*
+	 * Dispatch all transitions, that should have happened till now, in order of their time, and set system alarm for the next one.
+	 * If several transitions have the same time, ends are dispatched before starts and starts before alarms.
+	 */
+	private void dispatchDueTransitions() {
+		Date currentTime = Utils.getCurrDateTime();
+		long now = currentTime.getTime();
+		boolean alarmsChanged = false;
+		while (true) {
+			long endTime = mEnds.isEmpty() ? Long.MAX_VALUE : mEnds.peekPriority();
+			long startTime = mStarts.isEmpty() ? Long.MAX_VALUE : mStarts.peekPriority();
+			long alarmTime = mAlarms.isEmpty() ? Long.MAX_VALUE : mAlarms.peekPriority();
+			long nextTime = Math.min(endTime, Math.min(startTime, alarmTime));
+			if (nextTime > now) {
+				break;
+			}
+			if (endTime == nextTime) {
+				Event event = mEnds.poll();
+				scheduleEventEnd(event, currentTime);
+				notifyEventEnded(event);
+			} else if (startTime == nextTime) {
+				Event event = mStarts.poll();
+				scheduleEventStart(event, currentTime);
+				notifyEventStarted(event);
+			} else {
+				//alarm is scheduled again, when user dismisses it.
+				Event event = mAlarms.poll();
+				alarmsChanged = true;
+				notifyAlarmFired(event);
+			}
+		}
+		rescheduleWakeup();
+		if (alarmsChanged) {
+			notifyAlarmsChanged();
+		}
+	}
+
+	private PendingIntent getWakeupPendingIntent() {
+		return PendingIntent.getBroadcast(mContext, WAKEUP_REQUEST_CODE, new Intent(ACTION_TIMELINE_WAKEUP), PendingIntent.FLAG_UPDATE_CURRENT);
+	}
+
+	/*
+	 * Set system alarm to the time of the earliest transition. System alarm is changed only if this time has changed.
+	 */
+	private void rescheduleWakeup() {
+		long nextTime = Long.MAX_VALUE;
+		if (!mEnds.isEmpty()) {
+			nextTime = Math.min(nextTime, mEnds.peekPriority());
+		}
+		if (!mStarts.isEmpty()) {
+			nextTime = Math.min(nextTime, mStarts.peekPriority());
+		}
+		if (!mAlarms.isEmpty()) {
+			nextTime = Math.min(nextTime, mAlarms.peekPriority());
+		}
+		if (nextTime == Long.MAX_VALUE) {
+			cancelWakeup();
+			return;
+		}
+		if (nextTime == mWakeupTime) {
+			return;
+		}
+		mAlarmManager.set(AlarmManager.RTC_WAKEUP, nextTime, getWakeupPendingIntent());
+		mWakeupTime = nextTime;
+		Logger.log("EventTimeline.rescheduleWakeup: next wakeup at " + new Date(nextTime).toString());
+	}
+
+	private void cancelWakeup() {
+		if (mWakeupTime == NO_WAKEUP) {
+			return;
+		}
+		mAlarmManager.cancel(getWakeupPendingIntent());
+		mWakeupTime = NO_WAKEUP;
+	}
+
+	private void notifyEventStarted(Event event) {
+		for (OnEventStartedListener listener: mStartedListeners) {
+			listener.onEventStarted(event);
+		}
+	}
+
+	private void notifyEventEnded(Event event) {
+		for (OnEventEndedListener listener: mEndedListeners) {
+			listener.onEventEnded(event);
+		}
+	}
+
+	private void notifyAlarmFired(Event event) {
+		for (OnAlarmFiredListener listener: mAlarmFiredListeners) {
+			listener.onAlarmFired(event);
+		}
+	}
+
+	private void notifyAlarmsChanged() {
+		for (OnAlarmsChangedListener listener: mAlarmsChangedListeners) {
+			listener.onAlarmsChanged();
+		}
+	}
+
+	/*
+	 * Load repository in background and schedule it's events on the main thread.
+	 * Events are taken from repository again on the main thread, so that changes, that were notified,
+	 * while events were loaded, are not lost.
+	 */
+	private class LoadEventsTask extends AsyncTask<Void, Void, Boolean> {
+
+		@Override
+		protected Boolean doInBackground(Void... params) {
+			try {
+				EventRepository.getInstance(mContext).getEvents();
+				return true;
+			} catch (SQLiteException e) {
+				Logger.error("EventTimeline.LoadEventsTask: events are not loaded. " + e.getMessage());
+				return false;
+			}
+		}
+
+		@Override
+		protected void onPostExecute(Boolean isRead) {
+			synchronized (EventTimeline.this) {
+				//timeline can be stopped or reloaded, while events are read.
+				if (!isRead || isCancelled() || isLoaded) {
+					return;
+				}
+				load(EventRepository.getInstance(mContext).getEvents());
+			}
+		}
+	}
+
+	/*
+	 * Is notified by EventRepository on the main thread. Changes, that are made before events are loaded,
+	 * are already contained in repository, when they are loaded.
+	 */
+	private class EventChangeListener implements EventRepository.OnEventChangedListener {
+
+		@Override
+		public void onEventAdded(Event event) {
+			synchronized (EventTimeline.this) {
+				if (isLoaded) {
+					EventTimeline.this.onEventAdded(event);
+				}
+			}
+		}
+
+		@Override
+		public void onEventUpdated(Event event) {
+			synchronized (EventTimeline.this) {
+				if (isLoaded) {
+					EventTimeline.this.onEventUpdated(event);
+				}
+			}
+		}
+
+		@Override
+		public void onEventDeleted(Event event) {
+			synchronized (EventTimeline.this) {
+				if (isLoaded) {
+					EventTimeline.this.onEventDeleted(event);
+				}
+			}
+		}
+	}
+
+	private class TimelineReceiver extends BroadcastReceiver {
+
+		@Override
+		public void onReceive(Context context, Intent intent) {
+			String action = intent.getAction();
+			if (action == null) {
+				return;
+			}
+			Logger.log("EventTimeline.onReceive: received action " + action);
+			if (ACTION_TIMELINE_WAKEUP.equals(action)) {
+				wakeUp();
+			}
+		}
+	}
+}
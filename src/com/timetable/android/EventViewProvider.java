@@ -1,78 +1,137 @@
 package com.timetable.android;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import android.content.Context;
+import android.view.ViewGroup;
+import android.view.ViewParent;
 
 /*
  * Class that should be used to create EventViews.
- * It tries to reuse EventView, if it is possible.
- * After EventView is not needed(visible) anymore, method releaseViews should be called.
+ * It keeps bounded pool of free EventViews and reuses them, so that layout of event is inflated only when pool is empty.
+ * After EventViews of some owner are not needed(visible) anymore, method releaseViews should be called.
+ * Pool keeps context, in which views were created, so it should be cleared, when that context is destroyed.
  */
 public class EventViewProvider {
 
+	//maximal number of free views, that are kept in pool.
+	public static final int MAX_POOL_SIZE = 40;
+
+	//number of views, that are created, when activity is started.
+	public static final int PREWARM_VIEWS_NUMBER = 12;
+
 	private static EventViewProvider mInstance;
-	
+
 	private Context mContext;
-	
+
 	private static final int ID_NO_OWNER = 0;
-	
-	private List<ViewContainer> views = new ArrayList<ViewContainer>();
-	
+
+	private List<EventView> mFreeViews = new ArrayList<EventView>();
+
+	//views, that are used by each owner.
+	private Map<Integer, List<EventView>> mOwnedViews = new HashMap<Integer, List<EventView>>();
+
+	private int mHits = 0;
+
+	private int mMisses = 0;
+
 	private EventViewProvider(Context context) {
 		mContext = context;
 	}
-	
+
+	/*
+	 * Return provider for given context.
+	 * Views are bound to context, in which they were created, so pool is created again, when context changes.
+	 */
 	public static EventViewProvider getInstance(Context context) {
-		if (mInstance == null) {
-			return new EventViewProvider(context);
+		if (mInstance == null || mInstance.mContext != context) {
+			mInstance = new EventViewProvider(context);
 		}
 		return mInstance;
 	}
-	
+
 	/*
-	 * Get view. If there is free view, return it.
+	 * Drop pool of views, created in given context, so that destroyed activity is not kept by static instance.
+	 * Should be called from onDestroy of activity, that uses provider.
+	 */
+	public static void clear(Context context) {
+		if (mInstance != null && mInstance.mContext == context) {
+			mInstance.mFreeViews.clear();
+			mInstance.mOwnedViews.clear();
+			mInstance = null;
+		}
+	}
+
+	/*
+	 * Create free views, so that pool contains at least @count views.
+	 */
+	public void prewarm(int count) {
+		count = Math.min(count, MAX_POOL_SIZE);
+		while (mFreeViews.size() < count) {
+			mFreeViews.add(new EventView(mContext));
+		}
+		Logger.log("EventViewProvider.prewarm: " + Integer.toString(mFreeViews.size()) + " views in pool.");
+	}
+
+	/*
+	 * Get view. If there is free view, return it, otherwise create new one.
 	 * Assign view to given owner.
 	 */
 	public EventView getView(int ownerId) {
 		if (ownerId == ID_NO_OWNER) {
 			return null;
 		}
-		for (ViewContainer view: views) {
-			if (!hasOwner(view)) {
-				view.ownerId = ownerId;
-				return view.eventView;
-			}
+		EventView view;
+		if (mFreeViews.isEmpty()) {
+			view = new EventView(mContext);
+			mMisses++;
+		} else {
+			view = mFreeViews.remove(mFreeViews.size() - 1);
+			mHits++;
+		}
+		List<EventView> ownerViews = mOwnedViews.get(ownerId);
+		if (ownerViews == null) {
+			ownerViews = new ArrayList<EventView>();
+			mOwnedViews.put(ownerId, ownerViews);
 		}
-		return new EventView(mContext);
+		ownerViews.add(view);
+		return view;
 	}
-	
+
 	/*
 	 * Release all views, attached to given owner, so that they can be used later by another owner.
+	 * Views are detached from their parents. If pool is full, released views are dropped.
 	 */
 	public void releaseViews(int ownerId) {
-		for (ViewContainer view: views) {
-			if (view.ownerId == ownerId) {
-				view.ownerId = ID_NO_OWNER;
+		List<EventView> ownerViews = mOwnedViews.remove(ownerId);
+		if (ownerViews == null) {
+			return;
+		}
+		for (EventView view: ownerViews) {
+			ViewParent parent = view.getParent();
+			if (parent instanceof ViewGroup) {
+				((ViewGroup) parent).removeView(view);
+			}
+			if (mFreeViews.size() < MAX_POOL_SIZE) {
+				mFreeViews.add(view);
 			}
 		}
+		Logger.verbose("EventViewProvider.releaseViews: " + Integer.toString(mFreeViews.size()) + " free views, "
+						+ Integer.toString(mHits) + " hits, " + Integer.toString(mMisses) + " misses.");
+	}
+
+	public int getFreeViewsCount() {
+		return mFreeViews.size();
 	}
-	
-	private boolean hasOwner(ViewContainer view) {
-		return view.ownerId != ID_NO_OWNER;
+
+	public int getHitCount() {
+		return mHits;
 	}
-	
-	static class ViewContainer {
-		
-		public int ownerId;
-		
-		public EventView eventView;
-		
-		public ViewContainer(EventView _eventView, int _ownerId) {
-			eventView = _eventView;
-			ownerId = _ownerId;
-		}
-		
+
+	public int getMissCount() {
+		return mMisses;
 	}
 }
@@ -0,0 +1,86 @@
+package com.timetable.android;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.timetable.android.TimetableDatabase.ChangeSet;
+
+/*
+ * Class, that applies changes of events to database on one background thread.
+ * Changes are applied in order of submission, each change set in one transaction.
+ * After change set is committed, EventRepository is updated and notifies it's listeners,
+ * and listener of change set is called on the main thread.
+ */
+public class EventWriter {
+
+	private static EventWriter mInstance;
+
+	private final Context mContext;
+
+	private final ExecutorService mExecutor;
+
+	private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+	public interface OnChangesAppliedListener {
+
+		/*
+		 * Is called on the main thread after change set is committed or rolled back.
+		 */
+		public void onChangesApplied(boolean isApplied);
+	}
+
+	private EventWriter(Context context) {
+		mContext = context.getApplicationContext();
+		mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				return new Thread(runnable, "EventWriter");
+			}
+		});
+	}
+
+	public static synchronized EventWriter getInstance(Context context) {
+		if (mInstance == null) {
+			mInstance = new EventWriter(context);
+		}
+		return mInstance;
+	}
+
+	/*
+	 * Apply given changes in background. Changes should not be modified after submission.
+	 */
+	public void apply(final ChangeSet changes, final OnChangesAppliedListener listener) {
+		mExecutor.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				boolean isApplied;
+				try {
+					isApplied = TimetableDatabase.getInstance(mContext).applyChanges(changes);
+				} catch (RuntimeException e) {
+					Logger.error("EventWriter.apply: error applying changes " + changes.toString() + ". " + e.getMessage());
+					isApplied = false;
+				}
+				if (isApplied) {
+					EventRepository.getInstance(mContext).onChangesApplied(changes);
+				}
+				if (listener != null) {
+					final boolean result = isApplied;
+					mMainHandler.post(new Runnable() {
+
+						@Override
+						public void run() {
+							listener.onChangesApplied(result);
+						}
+					});
+				}
+			}
+		});
+	}
+}
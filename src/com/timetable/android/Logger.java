@@ -1,9 +1,15 @@
 package com.timetable.android;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
 
 import org.acra.ACRA;
 
@@ -34,6 +40,36 @@ public class Logger {
 	
 	private static final String FILE_NAME = "sdcard/Timetable.log";
 	
+	private static final String BACKUP_FILE_NAME = FILE_NAME + ".1";
+	
+	//when log file gets bigger, it is moved to backup file.
+	private static final long MAX_FILE_SIZE = 512 * 1024;
+	
+	//should be a power of two.
+	private static final int QUEUE_CAPACITY = 1024;
+	
+	private static final long WRITE_INTERVAL_NANOS = 200 * 1000 * 1000;
+	
+	private static final String CHARSET = "UTF-8";
+	
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+	
+	//ring buffer of messages, that are not written yet. Messages are added without locking and written by writer thread.
+	private static final AtomicReferenceArray<LogRecord> queue = new AtomicReferenceArray<LogRecord>(QUEUE_CAPACITY);
+	
+	private static final AtomicLong writeIndex = new AtomicLong();
+	
+	private static final AtomicLong readIndex = new AtomicLong();
+	
+	private static final AtomicInteger droppedMessages = new AtomicInteger();
+	
+	//guards writer thread creation and everything, that is used for writing to file.
+	private static final Object writerLock = new Object();
+	
+	private static volatile Thread writer;
+	
+	private static FileChannel channel;
+	
 	private static final String ERROR_TAG = "Error";
 	
 	private static final String DEBUG_TAG = "Debug";
@@ -70,35 +106,168 @@ public class Logger {
 	}
 	
 	/*
-	 * Log message to file.
+	 * Queue message to be written to file by background writer thread.
+	 * If queue is full, message is dropped.
 	 */
 	public static void logToFile(String tag, String message) {
 		if (!logToFile) {
 			return;
 		}
-		File logFile = new File(FILE_NAME);
-		if (!logFile.exists()) {
-		      try {
-		         logFile.createNewFile();
-		      } 
-		      catch (IOException e) {
-		    	  //Log.e(logTag, e.getMessage());
-				  //that's bad.
-		      }
-		   }
-		   try {
-			  String messageToLog = DateFormatFactory.getLongDateTimeFormat().format(Utils.getCurrDateTime());
-			  messageToLog += "; " + message; 
-		      //BufferedWriter for performance, true to set append to file flag
-		      BufferedWriter buf = new BufferedWriter(new FileWriter(logFile, true)); 
-		      buf.append(messageToLog);
-		      buf.newLine();
-		      buf.close();
-		   }
-		   catch (IOException e)
-		   {
-			   //Log.e(logTag, e.getMessage());
-			   //that's bad
-		   }
+		startWriter();
+		long index;
+		do {
+			index = writeIndex.get();
+			if (index - readIndex.get() >= QUEUE_CAPACITY) {
+				droppedMessages.incrementAndGet();
+				return;
+			}
+		} while (!writeIndex.compareAndSet(index, index + 1));
+		queue.lazySet((int) (index & (QUEUE_CAPACITY - 1)), new LogRecord(Utils.getCurrDateTime().getTime(), message));
+		long queued = index - readIndex.get();
+		if (queued == 0 || queued == QUEUE_CAPACITY / 2) {
+			//wake up writer, that is waiting for messages, or before queue is full.
+			LockSupport.unpark(writer);
+		}
+	}
+	
+	/*
+	 * Write all queued messages to file on the calling thread.
+	 */
+	public static void flush() {
+		synchronized (writerLock) {
+			drain();
+			try {
+				if (channel != null) {
+					channel.force(false);
+				}
+			} catch (IOException e) {
+				//that's bad
+			}
+		}
+	}
+	
+	private static void startWriter() {
+		if (writer != null) {
+			return;
+		}
+		synchronized (writerLock) {
+			if (writer != null) {
+				return;
+			}
+			writer = new Thread(new Runnable() {
+				
+				@Override
+				public void run() {
+					while (true) {
+						synchronized (writerLock) {
+							drain();
+						}
+						if (readIndex.get() == writeIndex.get()) {
+							//nothing is logged, wait until the first message is queued.
+							LockSupport.park();
+						}
+						//collect messages, that are logged shortly after, into one batch.
+						LockSupport.parkNanos(WRITE_INTERVAL_NANOS);
+					}
+				}
+			}, "Logger writer");
+			writer.setDaemon(true);
+			writer.start();
+			
+			//write queued messages before application is killed by uncaught exception.
+			final Thread.UncaughtExceptionHandler defaultHandler = Thread.getDefaultUncaughtExceptionHandler();
+			Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+				
+				@Override
+				public void uncaughtException(Thread thread, Throwable ex) {
+					logToFile(ERROR_TAG, "Uncaught exception in thread " + thread.getName() + ": " + ex.toString());
+					flush();
+					if (defaultHandler != null) {
+						defaultHandler.uncaughtException(thread, ex);
+					}
+				}
+			});
+		}
+	}
+	
+	/*
+	 * Write all published messages from queue to file in one batch.
+	 * Should be called with writerLock held.
+	 */
+	private static void drain() {
+		StringBuilder batch = new StringBuilder();
+		long index = readIndex.get();
+		while (index < writeIndex.get()) {
+			int slot = (int) (index & (QUEUE_CAPACITY - 1));
+			LogRecord record = queue.get(slot);
+			if (record == null) {
+				//message is claimed, but not published yet.
+				break;
+			}
+			queue.set(slot, null);
+			index++;
+			readIndex.set(index);
+			batch.append(DateFormatFactory.getThreadLongDateTimeFormat().format(new Date(record.time))).append("; ").append(record.message).append(LINE_SEPARATOR);
+		}
+		int dropped = droppedMessages.getAndSet(0);
+		if (dropped > 0) {
+			batch.append(Integer.toString(dropped)).append(" messages are dropped.").append(LINE_SEPARATOR);
+		}
+		if (batch.length() == 0) {
+			return;
+		}
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(batch.toString().getBytes(CHARSET));
+			openChannel();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			if (channel.size() > MAX_FILE_SIZE) {
+				rotate();
+			}
+		} catch (IOException e) {
+			//that's bad
+			closeChannel();
+		}
+	}
+	
+	private static void openChannel() throws IOException {
+		if (channel == null) {
+			channel = new FileOutputStream(FILE_NAME, true).getChannel();
+		}
+	}
+	
+	private static void closeChannel() {
+		if (channel == null) {
+			return;
+		}
+		try {
+			channel.close();
+		} catch (IOException e) {
+			//that's bad
+		}
+		channel = null;
+	}
+	
+	/*
+	 * Move current log to backup file, so that logs take at most two times MAX_FILE_SIZE.
+	 */
+	private static void rotate() {
+		closeChannel();
+		File backup = new File(BACKUP_FILE_NAME);
+		backup.delete();
+		new File(FILE_NAME).renameTo(backup);
+	}
+	
+	private static class LogRecord {
+		
+		public final long time;
+		
+		public final String message;
+		
+		public LogRecord(long time, String message) {
+			this.time = time;
+			this.message = message;
 		}
+	}
 }
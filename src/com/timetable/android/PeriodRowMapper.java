@@ -0,0 +1,80 @@
+package com.timetable.android;
+
+import java.text.ParseException;
+
+import android.database.Cursor;
+
+/*
+ * Mapper, that builds EventPeriod from columns of table Periods.
+ */
+public class PeriodRowMapper extends RowMapper {
+
+	private int mIdIndex;
+
+	private int mTypeIndex;
+
+	private int mIntervalIndex;
+
+	private int mWeekOccurrencesIndex;
+
+	private int mEndDateIndex;
+
+	private int mNumberOfRepeatsIndex;
+
+	//index of column with recurrence rule or -1, if cursor has no such column.
+	private int mRuleIndex;
+
+	@Override
+	protected void resolveColumns(Cursor cursor) {
+		mIdIndex = cursor.getColumnIndex("per_id");
+		mTypeIndex = cursor.getColumnIndex("per_type");
+		mIntervalIndex = cursor.getColumnIndex("per_interval");
+		mWeekOccurrencesIndex = cursor.getColumnIndex("per_week_occurences");
+		mEndDateIndex = cursor.getColumnIndex("per_end_date");
+		mNumberOfRepeatsIndex = cursor.getColumnIndex("per_num_of_repeats");
+		mRuleIndex = cursor.getColumnIndex("per_rrule");
+	}
+
+	/*
+	 * Return true, if current row has no period, for example, if period is not found by left join.
+	 */
+	public boolean isNull(Cursor cursor) {
+		bind(cursor);
+		return cursor.isNull(mIdIndex);
+	}
+
+	public EventPeriod map(Cursor cursor) {
+		bind(cursor);
+		return map(cursor, new EventPeriod(cursor.getInt(mIdIndex)));
+	}
+
+	/*
+	 * Set fields of given period to values from current row and return it.
+	 */
+	public EventPeriod map(Cursor cursor, EventPeriod period) {
+		bind(cursor);
+		period.setId(cursor.getInt(mIdIndex));
+		period.setType(cursor.getInt(mTypeIndex));
+		period.setInterval(cursor.getInt(mIntervalIndex));
+		period.setWeekOccurrences(cursor.getInt(mWeekOccurrencesIndex));
+		period.setEndDate(cursor.getLong(mEndDateIndex));
+		period.setNumberOfRepeats(cursor.getInt(mNumberOfRepeatsIndex));
+		period.setRule(mapRule(cursor));
+		return period;
+	}
+
+	/*
+	 * Return rule from current row. If rule can not be parsed, it is ignored and old columns of period are used.
+	 */
+	private RecurrenceRule mapRule(Cursor cursor) {
+		if (mRuleIndex < 0 || cursor.isNull(mRuleIndex)) {
+			return null;
+		}
+		try {
+			return RecurrenceRule.parse(cursor.getString(mRuleIndex));
+		} catch (ParseException e) {
+			Logger.error("PeriodRowMapper.mapRule: " + e.getMessage());
+			return null;
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package com.timetable.android;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/*
+ * Class, that checks with EXPLAIN QUERY PLAN, that queries use indexes instead of scanning whole tables.
+ * Is used in debug mode and in tests.
+ */
+public class QueryPlanVerifier {
+
+	private final SQLiteDatabase mDb;
+
+	//steps of query plans, that scan whole table, together with their queries.
+	private List<String> mViolations = new ArrayList<String>();
+
+	public QueryPlanVerifier(SQLiteDatabase db) {
+		mDb = db;
+	}
+
+	/*
+	 * Explain given query and remember each step of it's plan, that scans whole table.
+	 */
+	public QueryPlanVerifier verify(String query, String [] args) {
+		Cursor cursor = mDb.rawQuery("EXPLAIN QUERY PLAN " + query, args);
+		int detailIndex = cursor.getColumnIndex("detail");
+		while (cursor.moveToNext()) {
+			String detail = cursor.getString(detailIndex);
+			if (isTableScan(detail)) {
+				mViolations.add(detail + " in query: " + query);
+			}
+		}
+		cursor.close();
+		return this;
+	}
+
+	/*
+	 * Return true, if step of query plan reads whole table without index.
+	 * Older versions of SQLite describe it as "SCAN TABLE name", newer as "SCAN name".
+	 * Scans of subqueries and of covering indexes are allowed.
+	 */
+	public static boolean isTableScan(String detail) {
+		if (detail == null || !detail.startsWith("SCAN ")) {
+			return false;
+		}
+		return !detail.contains(" USING ") && !detail.startsWith("SCAN SUBQUERY") && !detail.startsWith("SCAN CONSTANT ROW");
+	}
+
+	public List<String> getViolations() {
+		return mViolations;
+	}
+
+	public boolean isOk() {
+		return mViolations.isEmpty();
+	}
+}
@@ -0,0 +1,662 @@
+package com.timetable.android;
+
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Locale;
+
+import com.timetable.android.utils.DateUtils;
+
+/*
+ * Recurrence rule in format of RFC 5545 (RRULE), for example "FREQ=MONTHLY;BYDAY=2TU" for every second Tuesday of month
+ * or "FREQ=MONTHLY;BYDAY=MO,TU,WE,TH,FR;BYSETPOS=-1" for the last weekday of month.
+ * Rule is parsed once into immutable masks and lists, that are evaluated by OccurrenceIterator without creating objects.
+ * Only whole days are supported: FREQ should be DAILY, WEEKLY, MONTHLY or YEARLY, other supported parts are
+ * INTERVAL, COUNT, UNTIL, BYMONTH, BYMONTHDAY, BYDAY, BYSETPOS and WKST.
+ * As in RFC 5545, start day of event is always the first occurrence and is counted by COUNT.
+ */
+public class RecurrenceRule {
+
+	private static final String [] WEEK_DAYS = new String [] {"SU", "MO", "TU", "WE", "TH", "FR", "SA"};
+
+	//number of days, months and years in 400 years, after which calendar repeats.
+	private static final int DAYS_IN_CYCLE = 146097;
+
+	private static final int MONTHS_IN_CYCLE = 4800;
+
+	private static final int YEARS_IN_CYCLE = 400;
+
+	private static final long NO_END_DAY_CACHED = Long.MIN_VALUE;
+
+	//each thread reuses it's own iterator for single lookups.
+	private static final ThreadLocal<OccurrenceIterator> sIterator = new ThreadLocal<OccurrenceIterator>() {
+
+		@Override
+		protected OccurrenceIterator initialValue() {
+			return new OccurrenceIterator();
+		}
+	};
+
+	private final String source;
+
+	private final EventPeriod.Type frequency;
+
+	private final int interval;
+
+	//number of occurrences or 0, if it is not limited.
+	private final int count;
+
+	//the last day, on which rule can have occurrence, or Integer.MAX_VALUE.
+	private final int untilDay;
+
+	//bit i is set, if rule has BYMONTH with month i, counted from 1.
+	private final int byMonthMask;
+
+	//bit i is set, if rule has BYMONTHDAY with day i or -i.
+	private final int byMonthDayMask;
+
+	private final int byNegativeMonthDayMask;
+
+	//bit i is set, if rule has BYDAY with i-th day of the week without ordinal, SUNDAY is 0.
+	private final int byDayMask;
+
+	//ordinals and days of the week of BYDAY items like 2TU or -1FR.
+	private final int [] byDayOrdinals;
+
+	private final int [] byDayOrdinalWeekDays;
+
+	private final int [] bySetPos;
+
+	private final int weekStart;
+
+	//start day and end day for it, packed into one value, so that it can be read without lock.
+	private volatile long endDayCache = NO_END_DAY_CACHED;
+
+	private RecurrenceRule(String rule) throws ParseException {
+		String text = rule.trim().toUpperCase(Locale.US);
+		if (text.startsWith("RRULE:")) {
+			text = text.substring("RRULE:".length());
+		}
+		EventPeriod.Type frequency = null;
+		int interval = 1;
+		int count = 0;
+		int untilDay = Integer.MAX_VALUE;
+		int byMonthMask = 0;
+		int byMonthDayMask = 0;
+		int byNegativeMonthDayMask = 0;
+		int byDayMask = 0;
+		int [] byDayOrdinals = new int[0];
+		int [] byDayOrdinalWeekDays = new int[0];
+		int [] bySetPos = new int[0];
+		int weekStart = EventPeriod.MONDAY;
+
+		String [] parts = text.split(";");
+		int offset = 0;
+		for (String part: parts) {
+			int separator = part.indexOf('=');
+			if (separator <= 0) {
+				throw new ParseException("Invalid part of recurrence rule: " + part, offset);
+			}
+			String name = part.substring(0, separator);
+			String [] values = part.substring(separator + 1).split(",");
+
+			if (name.equals("FREQ")) {
+				frequency = parseFrequency(values[0], offset);
+			} else if (name.equals("INTERVAL")) {
+				interval = parseInt(values[0], 1, Integer.MAX_VALUE, offset);
+			} else if (name.equals("COUNT")) {
+				count = parseInt(values[0], 1, Integer.MAX_VALUE, offset);
+			} else if (name.equals("UNTIL")) {
+				untilDay = parseDay(values[0], offset);
+			} else if (name.equals("BYMONTH")) {
+				for (String value: values) {
+					byMonthMask |= 1 << parseInt(value, 1, 12, offset);
+				}
+			} else if (name.equals("BYMONTHDAY")) {
+				for (String value: values) {
+					int day = parseInt(value, -31, 31, offset);
+					if (day > 0) {
+						byMonthDayMask |= 1 << day;
+					} else if (day < 0) {
+						byNegativeMonthDayMask |= 1 << -day;
+					} else {
+						throw new ParseException("Invalid BYMONTHDAY: " + value, offset);
+					}
+				}
+			} else if (name.equals("BYDAY")) {
+				byDayOrdinals = new int[values.length];
+				byDayOrdinalWeekDays = new int[values.length];
+				int ordinalsCount = 0;
+				for (String value: values) {
+					if (value.length() < 2) {
+						throw new ParseException("Invalid BYDAY: " + value, offset);
+					}
+					int weekDay = parseWeekDay(value.substring(value.length() - 2), offset);
+					if (value.length() == 2) {
+						byDayMask |= 1 << weekDay;
+					} else {
+						int ordinal = parseInt(value.substring(0, value.length() - 2), -53, 53, offset);
+						if (ordinal == 0) {
+							throw new ParseException("Invalid BYDAY: " + value, offset);
+						}
+						byDayOrdinals[ordinalsCount] = ordinal;
+						byDayOrdinalWeekDays[ordinalsCount] = weekDay;
+						ordinalsCount++;
+					}
+				}
+				byDayOrdinals = copyOf(byDayOrdinals, ordinalsCount);
+				byDayOrdinalWeekDays = copyOf(byDayOrdinalWeekDays, ordinalsCount);
+			} else if (name.equals("BYSETPOS")) {
+				bySetPos = new int[values.length];
+				for (int i = 0; i < values.length; i++) {
+					bySetPos[i] = parseInt(values[i], -366, 366, offset);
+					if (bySetPos[i] == 0) {
+						throw new ParseException("Invalid BYSETPOS: " + values[i], offset);
+					}
+				}
+			} else if (name.equals("WKST")) {
+				weekStart = parseWeekDay(values[0], offset);
+			} else {
+				throw new ParseException("Unsupported part of recurrence rule: " + name, offset);
+			}
+			offset += part.length() + 1;
+		}
+
+		if (frequency == null) {
+			throw new ParseException("Recurrence rule has no FREQ: " + rule, 0);
+		}
+		if (count > 0 && untilDay != Integer.MAX_VALUE) {
+			throw new ParseException("Recurrence rule can not have both COUNT and UNTIL: " + rule, 0);
+		}
+		if (byDayOrdinals.length > 0 && frequency != EventPeriod.Type.MONTHLY && frequency != EventPeriod.Type.YEARLY) {
+			throw new ParseException("BYDAY with ordinals is allowed only in MONTHLY and YEARLY rules: " + rule, 0);
+		}
+		if ((byMonthDayMask | byNegativeMonthDayMask) != 0 && frequency == EventPeriod.Type.WEEKLY) {
+			throw new ParseException("BYMONTHDAY is not allowed in WEEKLY rules: " + rule, 0);
+		}
+
+		this.source = text;
+		this.frequency = frequency;
+		this.interval = interval;
+		this.count = count;
+		this.untilDay = untilDay;
+		this.byMonthMask = byMonthMask;
+		this.byMonthDayMask = byMonthDayMask;
+		this.byNegativeMonthDayMask = byNegativeMonthDayMask;
+		this.byDayMask = byDayMask;
+		this.byDayOrdinals = byDayOrdinals;
+		this.byDayOrdinalWeekDays = byDayOrdinalWeekDays;
+		this.bySetPos = bySetPos;
+		this.weekStart = weekStart;
+	}
+
+	/*
+	 * Parse rule from string like "FREQ=WEEKLY;INTERVAL=2;BYDAY=MO,TH". Prefix "RRULE:" is allowed.
+	 */
+	public static RecurrenceRule parse(String rule) throws ParseException {
+		if (rule == null) {
+			throw new ParseException("Recurrence rule is null", 0);
+		}
+		return new RecurrenceRule(rule);
+	}
+
+	/*
+	 * Return rule, that has the same occurrences as given legacy period, started on @startDay,
+	 * or null, if period is not repeatable.
+	 * Weeks of weekly period start on the day of week of start day, so WKST is set to it.
+	 */
+	public static RecurrenceRule fromPeriod(EventPeriod period, int startDay) {
+		if (!period.isRepeatable() || period.getInterval() <= 0) {
+			return null;
+		}
+		StringBuilder rule = new StringBuilder("FREQ=").append(period.getType().name())
+								.append(";INTERVAL=").append(period.getInterval());
+		int endDay = period.getEndDay(startDay);
+		if (period.isEveryWeek()) {
+			int weekMask = period.getWeekOccurrencesMask();
+			if (weekMask == 0) {
+				//period has occurrence only on start day.
+				endDay = Math.min(endDay, startDay + 1);
+			} else {
+				rule.append(";BYDAY=");
+				for (int i = 0; i < 7; i++) {
+					if ((weekMask & (1 << i)) != 0) {
+						rule.append(WEEK_DAYS[i]).append(',');
+					}
+				}
+				rule.setLength(rule.length() - 1);
+			}
+			rule.append(";WKST=").append(WEEK_DAYS[DateUtils.getDayOfWeek(startDay)]);
+		}
+		if (endDay != Integer.MAX_VALUE) {
+			int lastDay = endDay - 1;
+			rule.append(";UNTIL=").append(String.format(Locale.US, "%04d%02d%02d", DateUtils.getYear(lastDay),
+								DateUtils.getMonth(lastDay), DateUtils.getDayOfMonth(lastDay)));
+		}
+		try {
+			return parse(rule.toString());
+		} catch (ParseException e) {
+			Logger.error("RecurrenceRule.fromPeriod: " + e.getMessage());
+			return null;
+		}
+	}
+
+	private static EventPeriod.Type parseFrequency(String value, int offset) throws ParseException {
+		if (value.equals("DAILY")) {
+			return EventPeriod.Type.DAILY;
+		} else if (value.equals("WEEKLY")) {
+			return EventPeriod.Type.WEEKLY;
+		} else if (value.equals("MONTHLY")) {
+			return EventPeriod.Type.MONTHLY;
+		} else if (value.equals("YEARLY")) {
+			return EventPeriod.Type.YEARLY;
+		}
+		throw new ParseException("Unsupported FREQ: " + value, offset);
+	}
+
+	private static int parseInt(String value, int min, int max, int offset) throws ParseException {
+		int ans;
+		try {
+			ans = Integer.parseInt(value.startsWith("+") ? value.substring(1) : value);
+		} catch (NumberFormatException e) {
+			throw new ParseException("Invalid number: " + value, offset);
+		}
+		if (ans < min || ans > max) {
+			throw new ParseException("Number is out of range: " + value, offset);
+		}
+		return ans;
+	}
+
+	private static int parseWeekDay(String value, int offset) throws ParseException {
+		for (int i = 0; i < WEEK_DAYS.length; i++) {
+			if (WEEK_DAYS[i].equals(value)) {
+				return i;
+			}
+		}
+		throw new ParseException("Invalid day of the week: " + value, offset);
+	}
+
+	/*
+	 * Parse day from date "yyyyMMdd" or date-time "yyyyMMddTHHmmss". Time is ignored.
+	 */
+	private static int parseDay(String value, int offset) throws ParseException {
+		if (value.length() < 8) {
+			throw new ParseException("Invalid UNTIL: " + value, offset);
+		}
+		int year = parseInt(value.substring(0, 4), 0, 9999, offset);
+		int month = parseInt(value.substring(4, 6), 1, 12, offset);
+		int dayOfMonth = parseInt(value.substring(6, 8), 1, DateUtils.getDaysInMonth(year, month), offset);
+		return DateUtils.getEpochDay(year, month, dayOfMonth);
+	}
+
+	private static int [] copyOf(int [] array, int length) {
+		int [] copy = new int[length];
+		System.arraycopy(array, 0, copy, 0, length);
+		return copy;
+	}
+
+	public EventPeriod.Type getFrequency() {
+		return frequency;
+	}
+
+	public int getInterval() {
+		return interval;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	/*
+	 * Return the nearest occurrence of rule, started on @startDay, that is not earlier than @today, or NO_OCCURRENCE.
+	 */
+	public int getNextOccurrence(int startDay, int today) {
+		return sIterator.get().reset(this, startDay).getNextOccurrence(today);
+	}
+
+	/*
+	 * Return the first day, on which rule, started on @startDay, has no occurrences because of COUNT or UNTIL,
+	 * or Integer.MAX_VALUE, if rule is not limited. Day is computed once for the last start day.
+	 */
+	public int getEndDay(int startDay) {
+		if (count == 0) {
+			return untilDay == Integer.MAX_VALUE ? Integer.MAX_VALUE : untilDay + 1;
+		}
+		long cache = endDayCache;
+		if (cache != NO_END_DAY_CACHED && (int) (cache >> 32) == startDay) {
+			return (int) cache;
+		}
+		int lastDay = getOccurrenceByIndex(startDay, count - 1);
+		int endDay = lastDay == EventPeriod.NO_OCCURRENCE ? Integer.MAX_VALUE : lastDay + 1;
+		endDayCache = ((long) startDay << 32) | (endDay & 0xFFFFFFFFL);
+		return endDay;
+	}
+
+	/*
+	 * Return the day of occurrence with given @index(start day has index 0) without regard to COUNT,
+	 * or NO_OCCURRENCE, if rule has less occurrences.
+	 */
+	public int getOccurrenceByIndex(int startDay, int index) {
+		OccurrenceIterator iterator = new OccurrenceIterator();
+		iterator.init(this, startDay);
+		int day = startDay;
+		for (int i = 0; i < index && day != EventPeriod.NO_OCCURRENCE; i++) {
+			day = iterator.findNextOccurrence(day + 1);
+		}
+		return day;
+	}
+
+	/*
+	 * Return number of periods of rule's frequency in 400 years, after which calendar and the rule repeat.
+	 */
+	private int getMaxSkippedPeriods() {
+		switch(frequency) {
+			case DAILY:
+				return DAYS_IN_CYCLE / interval + 1;
+			case WEEKLY:
+				return DAYS_IN_CYCLE / 7 / interval + 1;
+			case MONTHLY:
+				return MONTHS_IN_CYCLE / interval + 1;
+			default:
+				return YEARS_IN_CYCLE / interval + 1;
+		}
+	}
+
+	/*
+	 * Return the first day of the week, containing given day.
+	 */
+	private int getWeekFirstDay(int day) {
+		return day - (DateUtils.getDayOfWeek(day) - weekStart + 7) % 7;
+	}
+
+	private static int getMonthIndex(int day) {
+		return DateUtils.getYear(day) * 12 + DateUtils.getMonth(day) - 1;
+	}
+
+	/*
+	 * Return number of the first period, that contains days not earlier than @day and has occurrences according to interval.
+	 * Periods are counted from the period of @startDay, which has number 0.
+	 */
+	private int getPeriodNumber(int startDay, int day) {
+		int periods;
+		switch(frequency) {
+			case DAILY:
+				periods = day - startDay;
+				break;
+			case WEEKLY:
+				periods = (getWeekFirstDay(day) - getWeekFirstDay(startDay)) / 7;
+				break;
+			case MONTHLY:
+				periods = getMonthIndex(day) - getMonthIndex(startDay);
+				break;
+			default:
+				periods = DateUtils.getYear(day) - DateUtils.getYear(startDay);
+		}
+		return (periods + interval - 1) / interval * interval;
+	}
+
+	private boolean hasMonth(int month) {
+		return byMonthMask == 0 || (byMonthMask & (1 << month)) != 0;
+	}
+
+	private boolean hasMonthDays() {
+		return (byMonthDayMask | byNegativeMonthDayMask) != 0;
+	}
+
+	private boolean hasMonthDay(int dayOfMonth, int daysInMonth) {
+		return (byMonthDayMask & (1 << dayOfMonth)) != 0 || (byNegativeMonthDayMask & (1 << (daysInMonth - dayOfMonth + 1))) != 0;
+	}
+
+	private boolean hasWeekDays() {
+		return byDayMask != 0 || byDayOrdinals.length > 0;
+	}
+
+	/*
+	 * Return true, if BYDAY contains day of the week of the day with given @index in it's month or year of @length days.
+	 */
+	private boolean hasWeekDay(int weekDay, int index, int length) {
+		if ((byDayMask & (1 << weekDay)) != 0) {
+			return true;
+		}
+		for (int i = 0; i < byDayOrdinals.length; i++) {
+			if (byDayOrdinalWeekDays[i] == weekDay
+					&& (byDayOrdinals[i] > 0 ? index / 7 + 1 == byDayOrdinals[i] : (length - 1 - index) / 7 + 1 == -byDayOrdinals[i])) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof RecurrenceRule && source.equals(((RecurrenceRule) other).source);
+	}
+
+	@Override
+	public int hashCode() {
+		return source.hashCode();
+	}
+
+	/*
+	 * Return rule in format of RFC 5545 without prefix "RRULE:".
+	 */
+	@Override
+	public String toString() {
+		return source;
+	}
+
+	/*
+	 * Iterator over occurrences of rule, started on given day. It keeps days of one period(day, week, month or year),
+	 * that match the rule, in bit set, so no objects are created during iteration.
+	 * Iterator can be reused for another rule by calling reset.
+	 */
+	public static class OccurrenceIterator {
+
+		private static final int NO_PERIOD = -1;
+
+		private RecurrenceRule rule;
+
+		private int startDay;
+
+		private int endDay;
+
+		//number of period since the period of start day, whose days are in bit set, or NO_PERIOD.
+		private int period = NO_PERIOD;
+
+		private int periodFirstDay;
+
+		private int periodLength;
+
+		//days of current period, that match the rule, bit i corresponds to i-th day of period.
+		private long [] days = new long[6];
+
+		private long [] selectedDays = new long[6];
+
+		public OccurrenceIterator reset(RecurrenceRule rule, int startDay) {
+			init(rule, startDay);
+			endDay = rule.getEndDay(startDay);
+			return this;
+		}
+
+		private void init(RecurrenceRule rule, int startDay) {
+			this.rule = rule;
+			this.startDay = startDay;
+			this.period = NO_PERIOD;
+			this.endDay = Integer.MAX_VALUE;
+		}
+
+		/*
+		 * Return the first occurrence, that is not earlier than @day, or NO_OCCURRENCE.
+		 * Is faster, if days of consecutive calls do not decrease.
+		 */
+		public int getNextOccurrence(int day) {
+			if (day >= endDay) {
+				return EventPeriod.NO_OCCURRENCE;
+			}
+			int ans = findNextOccurrence(day);
+			return ans >= endDay ? EventPeriod.NO_OCCURRENCE : ans;
+		}
+
+		/*
+		 * Find the first occurrence, that is not earlier than @day, without regard to COUNT and UNTIL.
+		 */
+		private int findNextOccurrence(int day) {
+			if (day <= startDay) {
+				return startDay;
+			}
+			int number = rule.getPeriodNumber(startDay, day);
+			int maxSkippedPeriods = rule.getMaxSkippedPeriods();
+			for (int i = 0; i <= maxSkippedPeriods; i++, number += rule.interval) {
+				if (number != period) {
+					loadPeriod(number);
+				}
+				int offset = getNextSetBit(days, Math.max(day - periodFirstDay, 0), periodLength);
+				if (offset >= 0) {
+					return periodFirstDay + offset;
+				}
+			}
+			return EventPeriod.NO_OCCURRENCE;
+		}
+
+		/*
+		 * Compute days of period with given number, that match the rule.
+		 */
+		private void loadPeriod(int number) {
+			period = number;
+			Arrays.fill(days, 0);
+			switch(rule.frequency) {
+				case DAILY:
+					periodFirstDay = startDay + number;
+					periodLength = 1;
+					loadDays();
+					break;
+				case WEEKLY:
+					periodFirstDay = rule.getWeekFirstDay(startDay) + 7 * number;
+					periodLength = 7;
+					loadDays();
+					break;
+				case MONTHLY:
+					int month = getMonthIndex(startDay) + number;
+					periodFirstDay = DateUtils.getEpochDay(month / 12, month % 12 + 1, 1);
+					periodLength = DateUtils.getDaysInMonth(month / 12, month % 12 + 1);
+					loadMonth(month / 12, month % 12 + 1, 0);
+					break;
+				default:
+					int year = DateUtils.getYear(startDay) + number;
+					periodFirstDay = DateUtils.getEpochDay(year, 1, 1);
+					periodLength = DateUtils.isLeapYear(year) ? 366 : 365;
+					for (int i = 1, index = 0; i <= 12; i++) {
+						loadMonth(year, i, index);
+						index += DateUtils.getDaysInMonth(year, i);
+					}
+			}
+			if (rule.bySetPos.length > 0) {
+				selectSetPositions();
+			}
+		}
+
+		/*
+		 * Days of daily and weekly periods are limited by BYMONTH, BYMONTHDAY and BYDAY.
+		 * Weekly period without BYDAY has occurrence on the day of the week of start day.
+		 */
+		private void loadDays() {
+			boolean isWeekly = rule.frequency == EventPeriod.Type.WEEKLY;
+			int startWeekDay = DateUtils.getDayOfWeek(startDay);
+			for (int i = 0; i < periodLength; i++) {
+				int day = periodFirstDay + i;
+				int weekDay = DateUtils.getDayOfWeek(day);
+				if (rule.hasWeekDays() ? !rule.hasWeekDay(weekDay, 0, 1) : isWeekly && weekDay != startWeekDay) {
+					continue;
+				}
+				if (rule.byMonthMask != 0 && !rule.hasMonth(DateUtils.getMonth(day))) {
+					continue;
+				}
+				if (rule.hasMonthDays()
+						&& !rule.hasMonthDay(DateUtils.getDayOfMonth(day), DateUtils.getDaysInMonth(DateUtils.getYear(day), DateUtils.getMonth(day)))) {
+					continue;
+				}
+				setBit(days, i);
+			}
+		}
+
+		/*
+		 * Mark days of given month, that match the rule. Month starts on day @index of period.
+		 * Ordinals of BYDAY are counted in month, if rule is monthly or has BYMONTH, and in year otherwise.
+		 * Without BYMONTHDAY and BYDAY, rule has occurrence on the day of month of start day
+		 * and yearly rule without BYMONTH only in the month of start day.
+		 */
+		private void loadMonth(int year, int month, int index) {
+			if (!rule.hasMonth(month)) {
+				return;
+			}
+			int daysInMonth = DateUtils.getDaysInMonth(year, month);
+			if (!rule.hasMonthDays() && !rule.hasWeekDays()) {
+				int dayOfMonth = DateUtils.getDayOfMonth(startDay);
+				if (dayOfMonth <= daysInMonth && (rule.frequency == EventPeriod.Type.MONTHLY || rule.byMonthMask != 0
+						|| month == DateUtils.getMonth(startDay))) {
+					setBit(days, index + dayOfMonth - 1);
+				}
+				return;
+			}
+			boolean isCountedInMonth = rule.frequency == EventPeriod.Type.MONTHLY || rule.byMonthMask != 0;
+			int weekDay = DateUtils.getDayOfWeek(periodFirstDay + index);
+			for (int i = 0; i < daysInMonth; i++, weekDay = (weekDay + 1) % 7) {
+				if (rule.hasMonthDays() && !rule.hasMonthDay(i + 1, daysInMonth)) {
+					continue;
+				}
+				if (rule.hasWeekDays() && !(isCountedInMonth ? rule.hasWeekDay(weekDay, i, daysInMonth)
+											: rule.hasWeekDay(weekDay, index + i, periodLength))) {
+					continue;
+				}
+				setBit(days, index + i);
+			}
+		}
+
+		/*
+		 * Leave only days on positions from BYSETPOS among matched days of period.
+		 */
+		private void selectSetPositions() {
+			int count = 0;
+			for (long word: days) {
+				count += Long.bitCount(word);
+			}
+			Arrays.fill(selectedDays, 0);
+			for (int position: rule.bySetPos) {
+				int index = position > 0 ? position - 1 : count + position;
+				if (index < 0 || index >= count) {
+					continue;
+				}
+				int bit = getNextSetBit(days, 0, periodLength);
+				for (int i = 0; i < index; i++) {
+					bit = getNextSetBit(days, bit + 1, periodLength);
+				}
+				setBit(selectedDays, bit);
+			}
+			long [] swap = days;
+			days = selectedDays;
+			selectedDays = swap;
+		}
+
+		private static void setBit(long [] bits, int bit) {
+			bits[bit >> 6] |= 1L << bit;
+		}
+
+		/*
+		 * Return the first set bit, that is not less than @from and less than @length, or -1.
+		 */
+		private static int getNextSetBit(long [] bits, int from, int length) {
+			if (from >= length) {
+				return -1;
+			}
+			int word = from >> 6;
+			long value = bits[word] & (-1L << from);
+			while (value == 0) {
+				if (++word == bits.length) {
+					return -1;
+				}
+				value = bits[word];
+			}
+			int bit = (word << 6) + Long.numberOfTrailingZeros(value);
+			return bit < length ? bit : -1;
+		}
+	}
+}
@@ -0,0 +1,27 @@
+package com.timetable.android;
+
+import android.database.Cursor;
+
+/*
+ * Base class of objects, that build entities from rows of cursor.
+ * Column indexes are resolved by name only once, when mapper meets new cursor, and are reused for all it's rows.
+ */
+public abstract class RowMapper {
+
+	private Cursor mCursor;
+
+	/*
+	 * Resolve column indexes, if given cursor differs from the previous one.
+	 */
+	public void bind(Cursor cursor) {
+		if (cursor != mCursor) {
+			resolveColumns(cursor);
+			mCursor = cursor;
+		}
+	}
+
+	/*
+	 * Save indexes of all columns, that are read by mapper.
+	 */
+	protected abstract void resolveColumns(Cursor cursor);
+}
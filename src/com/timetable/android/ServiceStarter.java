@@ -5,9 +5,12 @@ import android.content.Context;
 import android.content.Intent;
 
 import com.timetable.android.alarm.AlarmService;
+import com.timetable.android.utils.DateUtils;
 
 /*
  * Class, that receives broadcast, when device is restarted and starts all services.
+ * Services are started immediately, so that process is kept alive, and they open database in background through EventTimeline.
+ * It also drops cached offsets of time zone, when time zone is changed.
  */
 public class ServiceStarter extends BroadcastReceiver {
 
@@ -20,6 +23,8 @@ public class ServiceStarter extends BroadcastReceiver {
 			context.startService(new Intent(context, DeviceMuteService.class));
 			context.startService(new Intent(context, AlarmService.class));
 			context.startService(new Intent(context, EventService.class));
+		} else if (Intent.ACTION_TIMEZONE_CHANGED.equals(action)) {
+			DateUtils.resetTimeZone();
 		}
 	}
 	
@@ -1,43 +1,139 @@
 package com.timetable.android;
 
-import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
-import java.util.Set;
-import java.util.TreeSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.Vector;
 
+import android.annotation.TargetApi;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 
 import com.timetable.android.alarm.EventAlarm;
-import com.timetable.android.utils.DateFormatFactory;
+import com.timetable.android.utils.DateUtils;
+import com.timetable.android.utils.Utils;
 
 /*
  * Class for working with database(inserting, updating and deleting events, etc.).
+ * One instance is shared by all threads. Since Android 3.0 database uses write-ahead log, 
+ * so that reading threads are not blocked by the writing one.
  */
 public class TimetableDatabase extends SQLiteOpenHelper {
 	
 	private static final String DB_NAME = "TimeTable";
 	
-	private static final SimpleDateFormat dateFormat = DateFormatFactory.getFormat("yyyy-MM-dd");
+	/*
+	 * Version of database, known to SQLiteOpenHelper. Since version 6 schema is upgraded by migrations in onOpen,
+	 * and it's version is saved in SchemaVersion table, so this version should not be changed anymore.
+	 */
+	private static final int DB_VERSION = 6;
+	
+	private static DatabaseMigrator.OnMigrationProgressListener sMigrationProgressListener;
+	
+	/*
+	 * Number of days before and after the horizon anchor, for which event occurrences are saved in the Occurrences table.
+	 */
+	public static final int OCCURRENCES_HORIZON_PAST_DAYS = 90;
+	
+	public static final int OCCURRENCES_HORIZON_FUTURE_DAYS = 365;
+	
+	/*
+	 * When current day is moved this number of days away from the horizon anchor, Occurrences table is rebuilt.
+	 */
+	public static final int OCCURRENCES_HORIZON_SHIFT_DAYS = 30;
 	
 	private SQLiteDatabase dbRead;
 	
 	private SQLiteDatabase dbWrite;
 	
-	private static TimetableDatabase mInstance;
+	private static volatile TimetableDatabase mInstance;
+	
+	//Day, around which occurrences are saved in the Occurrences table, or NO_HORIZON, if table is not built yet.
+	private volatile int mHorizonAnchor = NO_HORIZON;
+	
+	private volatile boolean isHorizonLoaded = false;
+	
+	private static final int NO_HORIZON = Integer.MIN_VALUE;
+	
+	//each thread reuses it's own iterator.
+	private final ThreadLocal<EventPeriod.OccurrenceIterator> mOccurrenceIterator = new ThreadLocal<EventPeriod.OccurrenceIterator>() {
+		
+		@Override
+		protected EventPeriod.OccurrenceIterator initialValue() {
+			return new EventPeriod.OccurrenceIterator();
+		}
+	};
+	
+	/*
+	 * Query, that selects events together with their periods, alarms and exceptions, so that whole event can be
+	 * built from one cursor row. Exceptions of each event are concatenated into one column. 
+	 * Condition and order should be appended to this query.
+	 */
+	private static final String EVENT_QUERY = "SELECT Events.evt_id AS evt_id, evt_name, evt_place, evt_start_time, evt_end_time, "
+				+ "evt_date, evt_mute_device, evt_note, "
+				+ "Periods.per_id AS per_id, per_type, per_interval, per_week_occurences, per_end_date, per_num_of_repeats, per_rrule, "
+				+ "alm_id, alm_type, alm_time, "
+				+ "(SELECT GROUP_CONCAT(ex_day) FROM Exceptions WHERE Exceptions.evt_id = Events.evt_id) AS evt_exceptions "
+				+ "FROM Events "
+				+ "LEFT JOIN Periods ON Events.per_id = Periods.per_id "
+				+ "LEFT JOIN Alarms ON Events.evt_id = Alarms.evt_id ";
+	
+	/*
+	 * Queries, that are executed often. Each of them should use index, what is checked by verifyQueryPlans.
+	 */
+	private static final String EVENT_BY_ID_CONDITION = "WHERE Events.evt_id = ?";
+	
+	private static final String ALL_EVENTS_CONDITION = "ORDER BY evt_start_time ASC";
+	
+	private static final String EVENTS_WITH_ALARM_CONDITION = "WHERE Events.evt_id IN (SELECT evt_id FROM Alarms)";
+	
+	private static final String EVENTS_THAT_MUTE_DEVICE_CONDITION = "WHERE evt_mute_device = 1";
+	
+	private static final String EVENTS_BY_DAY_CONDITION = "WHERE Events.evt_id IN (SELECT evt_id FROM Occurrences WHERE occ_day = ?) "
+				+ "ORDER BY evt_start_time ASC";
+	
+	private static final String EVENTS_BETWEEN_DAYS_CONDITION = "WHERE Events.evt_id IN "
+				+ "(SELECT evt_id FROM Occurrences WHERE occ_day BETWEEN ? AND ?) ORDER BY evt_start_time ASC";
+	
+	private static final String OCCURRENCES_BETWEEN_DAYS_QUERY = "SELECT Occurrences.occ_day, Occurrences.evt_id FROM Occurrences "
+				+ "INNER JOIN Events ON Occurrences.evt_id = Events.evt_id "
+				+ "WHERE occ_day BETWEEN ? AND ? ORDER BY occ_day, evt_start_time ASC";
+	
+	private static final String ALARM_BY_EVENT_QUERY = "SELECT * FROM Alarms WHERE evt_id = ?";
+	
+	private static final String EXCEPTION_DAYS_QUERY = "SELECT ex_day FROM Exceptions WHERE evt_id = ? ORDER BY ex_day";
+	
+	private static final String IS_EXCEPTION_QUERY = "SELECT 1 FROM Exceptions WHERE evt_id = ? AND ex_day = ?";
+	
+	private static final String INSERT_OCCURRENCE_QUERY = "INSERT OR IGNORE INTO Occurrences (occ_day, evt_id) VALUES (?, ?)";
+	
+	private static final String INSERT_EXCEPTION_QUERY = "INSERT OR IGNORE INTO Exceptions (evt_id, ex_day) VALUES (?, ?)";
 	
 	public static TimetableDatabase getInstance(Context context) {
+		TimetableDatabase instance = mInstance;
+		if (instance != null) {
+			return instance;
+		}
 		return getInstance(context, false);
 	}
 	
 	/*
 	 * Is needed for testing.
 	 */
-	public static TimetableDatabase getInstance(Context context, boolean updateCurrent) {
+	public static synchronized TimetableDatabase getInstance(Context context, boolean updateCurrent) {
 		if (updateCurrent || mInstance == null) {
 			mInstance = new TimetableDatabase(context);
 			Logger.log("TimetableDatabase.getInstance: creating new instance.");
@@ -46,11 +142,22 @@ public class TimetableDatabase extends SQLiteOpenHelper {
 	}
 	
 	private TimetableDatabase(Context context) {
-		super(context, DB_NAME, null, 3);
-		dbRead = this.getReadableDatabase();
+		super(context, DB_NAME, null, DB_VERSION);
 		dbWrite = this.getWritableDatabase();
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+			enableWriteAheadLogging(dbWrite);
+		}
+		//writable database is returned, if it is already opened. With write-ahead log it reads in parallel with writes.
+		dbRead = this.getReadableDatabase();
     }
 	
+	@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+	private static void enableWriteAheadLogging(SQLiteDatabase db) {
+		if (!db.enableWriteAheadLogging()) {
+			Logger.log("TimetableDatabase.enableWriteAheadLogging: write-ahead log is not enabled.");
+		}
+	}
+	
 	@Override
     public void onCreate(SQLiteDatabase db) {
 		/*
@@ -68,14 +175,7 @@ public class TimetableDatabase extends SQLiteOpenHelper {
 				+ "evt_note TEXT)", Event.MAX_NAME_LENGTH, Event.MAX_PLACE_LENGTH);
 		db.execSQL(query);
 		
-		/*
-		 * Table, containing days, on which repeating event has no occurrence.
-		 */
-		query = "CREATE TABLE Exceptions ("
-				+ "ex_id INTEGER PRIMARY KEY AUTOINCREMENT, "
-				+ "evt_id INTEGER NOT NULL, "
-				+ "ex_date DATE)"; 
-		db.execSQL(query);
+		createExceptionsTable(db);
 		
 		/*
 		 * Table, containing information about event's period type, end date, interval etc.
@@ -86,7 +186,8 @@ public class TimetableDatabase extends SQLiteOpenHelper {
 				+ "per_interval INTEGER, "
 				+ "per_week_occurences INTEGER,"
 				+ "per_end_date BIGINT,"
-				+ "per_num_of_repeats INTEGER)";
+				+ "per_num_of_repeats INTEGER,"
+				+ "per_rrule TEXT)";
 		db.execSQL(query);
 		
 		/*
@@ -98,15 +199,212 @@ public class TimetableDatabase extends SQLiteOpenHelper {
 				"alm_type INTEGER," +
 				"evt_id INTEGER)";
 		db.execSQL(query);
+		
+		createOccurrencesTables(db);
+		createIndexes(db);
+		DatabaseMigrator.createVersionTable(db, createMigrator().getLatestVersion());
+	}
+	
+	/*
+	 * Create table, containing days, on which repeating event has no occurrence.
+	 * Days are counted since 01.01.1970.
+	 */
+	private static void createExceptionsTable(SQLiteDatabase db) {
+		db.execSQL("CREATE TABLE Exceptions ("
+				+ "ex_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+				+ "evt_id INTEGER NOT NULL, "
+				+ "ex_day INTEGER NOT NULL)");
+		db.execSQL("CREATE UNIQUE INDEX Exceptions_evt_id_ex_day ON Exceptions (evt_id, ex_day)");
+	}
+	
+	/*
+	 * Create indexes, that are used by lookups of alarms and events.
+	 * Exceptions are looked up by unique index on (evt_id, ex_day).
+	 */
+	private static void createIndexes(SQLiteDatabase db) {
+		db.execSQL("CREATE INDEX IF NOT EXISTS Alarms_evt_id ON Alarms (evt_id)");
+		db.execSQL("CREATE INDEX IF NOT EXISTS Events_per_id ON Events (per_id)");
+		db.execSQL("CREATE INDEX IF NOT EXISTS Events_evt_mute_device ON Events (evt_mute_device)");
+	}
+	
+	/*
+	 * Create tables, containing days, on which events have occurrences, within rolling horizon.
+	 * Table OccurrencesHorizon contains one row with the day, around which the horizon is built.
+	 */
+	private static void createOccurrencesTables(SQLiteDatabase db) {
+		db.execSQL("CREATE TABLE Occurrences ("
+				+ "occ_day INTEGER NOT NULL, "
+				+ "evt_id INTEGER NOT NULL, "
+				+ "PRIMARY KEY (occ_day, evt_id))");
+		db.execSQL("CREATE INDEX Occurrences_evt_id ON Occurrences (evt_id)");
+		db.execSQL("CREATE TABLE OccurrencesHorizon (hor_anchor_day INTEGER NOT NULL)");
 	}
 
+	/*
+	 * Return migrator, that contains all steps of schema upgrade since version 3.
+	 */
+	public static DatabaseMigrator createMigrator() {
+		return new DatabaseMigrator()
+			.addMigration(new DatabaseMigrator.Migration(4) {
+				
+				/*
+				 * Occurrences table will be filled, when it is accessed for the first time.
+				 */
+				@Override
+				public void migrate(SQLiteDatabase db, DatabaseMigrator migrator) {
+					createOccurrencesTables(db);
+				}
+			})
+			.addMigration(new DatabaseMigrator.CopyMigration(5, "ExceptionsOld", "INSERT OR IGNORE INTO Exceptions (evt_id, ex_day) "
+							+ "SELECT evt_id, CAST(julianday(ex_date) - 2440587.5 AS INTEGER) FROM ExceptionsOld "
+							+ "WHERE julianday(ex_date) IS NOT NULL") {
+				
+				/*
+				 * Replace exception dates, saved as 'yyyy-MM-dd' strings, with days since 01.01.1970.
+				 * Invalid dates are dropped.
+				 */
+				@Override
+				public void migrate(SQLiteDatabase db, DatabaseMigrator migrator) {
+					db.execSQL("ALTER TABLE Exceptions RENAME TO ExceptionsOld");
+					createExceptionsTable(db);
+				}
+				
+				@Override
+				public void finish(SQLiteDatabase db) {
+					db.execSQL("DROP TABLE ExceptionsOld");
+				}
+			})
+			.addMigration(new DatabaseMigrator.Migration(6) {
+				
+				@Override
+				public void migrate(SQLiteDatabase db, DatabaseMigrator migrator) {
+					createIndexes(db);
+				}
+			})
+			.addMigration(new DatabaseMigrator.Migration(7) {
+				
+				/*
+				 * Recurrence rule is saved alongside old columns of period. Old periods have no rule.
+				 */
+				@Override
+				public void migrate(SQLiteDatabase db, DatabaseMigrator migrator) {
+					db.execSQL("ALTER TABLE Periods ADD COLUMN per_rrule TEXT");
+				}
+			});
+	}
+	
+	/*
+	 * Explain all queries, that are executed often, and return steps of their plans, that scan whole table.
+	 * Is called by tests, so that plans are not explained, when database is opened.
+	 */
+	public List<String> verifyQueryPlans() {
+		String [] idArgs = new String [] {"1"};
+		String [] dayArgs = new String [] {"1", "2"};
+		return new QueryPlanVerifier(dbRead)
+			.verify(EVENT_QUERY + EVENT_BY_ID_CONDITION, idArgs)
+			.verify(EVENT_QUERY + EVENTS_WITH_ALARM_CONDITION, new String [] {})
+			.verify(EVENT_QUERY + EVENTS_THAT_MUTE_DEVICE_CONDITION, new String [] {})
+			.verify(EVENT_QUERY + EVENTS_BY_DAY_CONDITION, idArgs)
+			.verify(EVENT_QUERY + EVENTS_BETWEEN_DAYS_CONDITION, dayArgs)
+			.verify(OCCURRENCES_BETWEEN_DAYS_QUERY, dayArgs)
+			.verify(ALARM_BY_EVENT_QUERY, idArgs)
+			.verify(EXCEPTION_DAYS_QUERY, idArgs)
+			.verify(IS_EXCEPTION_QUERY, dayArgs)
+			.getViolations();
+	}
+	
+	/*
+	 * Set listener, that is notified about progress of schema upgrade. Should be set before database is opened.
+	 */
+	public static void setOnMigrationProgressListener(DatabaseMigrator.OnMigrationProgressListener listener) {
+		sMigrationProgressListener = listener;
+	}
+	
+	/*
+	 * Open database on background thread, so that schema is migrated not on the main thread.
+	 * Listener is called on the main thread. Should be used by components, that start application, before they access database.
+	 */
+	public static void openInBackground(Context context, final OnDatabaseOpenedListener listener) {
+		final Context appContext = context.getApplicationContext();
+		final Handler mainHandler = new Handler(Looper.getMainLooper());
+		new Thread(new Runnable() {
+			
+			@Override
+			public void run() {
+				boolean isOpened;
+				try {
+					getInstance(appContext);
+					isOpened = true;
+				} catch (SQLiteException e) {
+					Logger.error("TimetableDatabase.openInBackground: database is not opened. " + e.getMessage());
+					isOpened = false;
+				}
+				final boolean result = isOpened;
+				mainHandler.post(new Runnable() {
+					
+					@Override
+					public void run() {
+						listener.onDatabaseOpened(result);
+					}
+				});
+			}
+		}, "TimetableDatabase open").start();
+	}
+	
+	public interface OnDatabaseOpenedListener {
+		
+		/*
+		 * Is called on the main thread. @isOpened is false, if schema could not be migrated.
+		 */
+		public void onDatabaseOpened(boolean isOpened);
+	}
+	
+	/*
+	 * Schema is upgraded here and not in onUpgrade, because onUpgrade runs in one transaction,
+	 * while each migration should be committed separately.
+	 * If migration fails, database is not opened, so that application does not work with half-migrated schema.
+	 * Migration is continued from the last committed step, when database is opened next time.
+	 * Schema is not migrated on the main thread: database should be opened for the first time by openInBackground.
+	 */
+	@Override
+	public void onOpen(SQLiteDatabase db) {
+		super.onOpen(db);
+		if (db.isReadOnly()) {
+			return;
+		}
+		DatabaseMigrator migrator = createMigrator().setOnMigrationProgressListener(sMigrationProgressListener);
+		if (DatabaseMigrator.getVersion(db) >= migrator.getLatestVersion()) {
+			return;
+		}
+		if (Looper.myLooper() == Looper.getMainLooper()) {
+			throw new SQLiteException("Schema should not be migrated on the main thread.");
+		}
+		if (!migrator.migrate(db)) {
+			throw new SQLiteException("Schema is not migrated to version " + Integer.toString(migrator.getLatestVersion()));
+		}
+	}
+	
+    /*
+     * Databases since version 3 keep their data: their version is saved and they are migrated in onOpen.
+     * Older databases are created again.
+     */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+    	if (oldVersion >= 3) {
+    		if (DatabaseMigrator.getVersion(db) == DatabaseMigrator.NO_VERSION) {
+    			Logger.log("Upgrading database from " + oldVersion + " to " + newVersion + ". Schema will be migrated.");
+    			DatabaseMigrator.createVersionTable(db, oldVersion);
+    		}
+    		return;
+    	}
     	Logger.log("Upgrading database from " + oldVersion + "to " + newVersion + ". All data will be deleted.");
     	db.execSQL("DROP TABLE IF EXISTS Events");
     	db.execSQL("DROP TABLE IF EXISTS Periods");
     	db.execSQL("DROP TABLE IF EXISTS Alarms");
     	db.execSQL("DROP TABLE IF EXISTS Exceptions"); 
+    	db.execSQL("DROP TABLE IF EXISTS Occurrences");
+    	db.execSQL("DROP TABLE IF EXISTS OccurrencesHorizon");
+    	db.execSQL("DROP TABLE IF EXISTS SchemaVersion");
         onCreate(db);
     }
     
@@ -119,15 +417,6 @@ public class TimetableDatabase extends SQLiteOpenHelper {
     	return values;
     }
     
-    private EventAlarm getEventAlarmFromCursor(Cursor cursor, Event event) {
-    	EventAlarm alarm = new EventAlarm(event);
-    	alarm.id = cursor.getInt(cursor.getColumnIndex("alm_id"));
-    	alarm.type = EventAlarm.Type.values()[cursor.getInt(cursor.getColumnIndex("alm_type"))];
-    	alarm.setTime(cursor.getLong(cursor.getColumnIndex("alm_time")));
-    	alarm.event = event;
-    	return alarm;
-    }
-    
     /*
      * Insert alarm of given event into database.
      * Return id of inserted alarm or -1, if an error has occurred during insertion.
@@ -166,16 +455,15 @@ public class TimetableDatabase extends SQLiteOpenHelper {
      * Return null if alarm is not found.
      */
     public EventAlarm getEventAlarm(Event event) {
-    	String query = "SELECT * FROM Alarms WHERE evt_id = ?";
-    	Cursor cursor = dbRead.rawQuery(query, new String [] { Integer.toString(event.getId()) });
+    	Cursor cursor = dbRead.rawQuery(ALARM_BY_EVENT_QUERY, new String [] { Integer.toString(event.getId()) });
     	if (cursor.getCount() != 1) {
     		cursor.close();
     		return null;
     	}
     	cursor.moveToFirst();
-    	
-    	return getEventAlarmFromCursor(cursor, event);
-    
+    	EventAlarm alarm = new AlarmRowMapper().map(cursor, event);
+    	cursor.close();
+    	return alarm;
     }
     
     /* 
@@ -197,6 +485,7 @@ public class TimetableDatabase extends SQLiteOpenHelper {
     	values.put("per_week_occurences", period.getWeekOccurrencesInt());
     	values.put("per_end_date", period.getEndDateMillis());
     	values.put("per_num_of_repeats", period.getNumberOfRepeats());
+    	values.put("per_rrule", period.getRuleString());
     	return values;
     }
     
@@ -241,12 +530,7 @@ public class TimetableDatabase extends SQLiteOpenHelper {
     		return null;
     	}
     	cursor.moveToFirst();
-    	EventPeriod period = new EventPeriod(id);
-    	period.setType(cursor.getInt(cursor.getColumnIndex("per_type")));
-    	period.setInterval(cursor.getInt(cursor.getColumnIndex("per_interval")));
-    	period.setWeekOccurrences(cursor.getInt(cursor.getColumnIndex("per_week_occurences")));
-    	period.setEndDate(cursor.getLong(cursor.getColumnIndex("per_end_date")));
-    	period.setNumberOfRepeats(cursor.getInt(cursor.getColumnIndex("per_num_of_repeats")));
+    	EventPeriod period = new PeriodRowMapper().map(cursor);
     	cursor.close();
     	return period;
     }
@@ -255,48 +539,47 @@ public class TimetableDatabase extends SQLiteOpenHelper {
      * Insert into Exceptions event id and date, on which this repeated event has no occurrence.
      */
     public long insertException(Event event, Date date) {
-    	ContentValues values = new ContentValues();
-    	values.put("evt_id", event.getId());
-    	values.put("ex_date", dateFormat.format(date));
-    	return dbWrite.insert("Exceptions", null, values);
+    	int day = DateUtils.getEpochDay(date);
+    	SQLiteStatement statement = dbWrite.compileStatement(INSERT_EXCEPTION_QUERY);
+    	statement.bindLong(1, event.getId());
+    	statement.bindLong(2, day);
+    	long id = statement.executeInsert();
+    	statement.close();
+    	dbWrite.delete("Occurrences", "evt_id = ? AND occ_day = ?", 
+    					new String [] {Integer.toString(event.getId()), Integer.toString(day)});
+    	return id;
     	}
     /*
-     * Get all event exceptions.
+     * Get sorted days of all event exceptions.
      */
-    public Set<Date> getEventExceptions(Event event) {
-    	String query = "SELECT * FROM Exceptions where evt_id = ?";
-    	Cursor cursor = dbRead.rawQuery(query,  new String [] {Integer.toString(event.getId())});
-    	Set<Date> exceptions = new TreeSet<Date>(Event.EXCEPTION_COMPARATOR); 
-    	if (cursor.getCount() == 0) {
-    		cursor.close();
-    		return exceptions;
+    public int[] getEventExceptionDays(Event event) {
+    	Cursor cursor = dbRead.rawQuery(EXCEPTION_DAYS_QUERY,  new String [] {Integer.toString(event.getId())});
+    	int[] days = new int[cursor.getCount()];
+    	int i = 0;
+    	while (cursor.moveToNext()) {
+    		days[i++] = cursor.getInt(0);
     	}
-    	cursor.moveToFirst();
-    	do {
-    		try {
-    			Date exception = dateFormat.parse(cursor.getString(cursor.getColumnIndex("ex_date")));
-    			exceptions.add(exception);
-    		} catch (Exception e) {	
-    			Logger.log("TimetableDatabase.getEventException: Ivalid exception found.");
-    		}
-    	} while(cursor.moveToNext());
     	cursor.close();
-    	return exceptions;
+    	return days;
     }
     
     /*
      * Delete all exceptions of given event.
      */
     public int deleteAllEventExceptions(Event event) {
-    	return dbWrite.delete("Exceptions", "evt_id = ?", new String [] { Integer.toString(event.getId()) } );
+    	int deleted = dbWrite.delete("Exceptions", "evt_id = ?", new String [] { Integer.toString(event.getId()) } );
+    	Event updatedEvent = searchEventById(event.getId());
+    	if (updatedEvent != null) {
+    		indexEventOccurrences(updatedEvent);
+    	}
+    	return deleted;
     	}
     
     /*
      * Check if repeated event has no occurrence today.
      */
     public boolean isException(Event event, Date date) {
-    	String query = "SELECT * FROM Exceptions where evt_id = ? and ex_date = ?";
-    	Cursor cursor = dbRead.rawQuery(query, new String [] {Integer.toString(event.getId()), dateFormat.format(date)});
+    	Cursor cursor = dbRead.rawQuery(IS_EXCEPTION_QUERY, new String [] {Integer.toString(event.getId()), Integer.toString(DateUtils.getEpochDay(date))});
     	boolean isException = cursor.getCount() != 0;
     	cursor.close();
     	return isException;
@@ -347,6 +630,7 @@ public class TimetableDatabase extends SQLiteOpenHelper {
         		return null;
         	}
     	}
+    	indexEventOccurrences(event);
     	return event;
     }
     
@@ -382,6 +666,7 @@ public class TimetableDatabase extends SQLiteOpenHelper {
     		Logger.log("TimetableDatabase.updateEvent: Error updating event.");
         	return null;
     	}
+    	indexEventOccurrences(event);
     	return event;
     }
     
@@ -394,128 +679,499 @@ public class TimetableDatabase extends SQLiteOpenHelper {
     	if (event.hasAlarm()) {
     		deleteEventAlarm(event);
     	}
+    	dbWrite.delete("Occurrences", "evt_id = ?", new String [] {Integer.toString(event.getId())});
     	return dbWrite.delete("Events", "evt_id = ?", new String [] {Integer.toString(event.getId())});
     }
     
-    private Event getEventFromCursor(Cursor cursor) {
-    	Event.Builder builder = new Event.Builder();
-    	builder.setId(cursor.getInt(cursor.getColumnIndex("evt_id")))
-    			.setName(cursor.getString(cursor.getColumnIndex("evt_name")))
-    			.setPlace(cursor.getString(cursor.getColumnIndex("evt_place")))
-    			.setNote(cursor.getString(cursor.getColumnIndex("evt_note")))
-    			.setPeriod(searchEventPeriodById(cursor.getInt(cursor.getColumnIndex("per_id"))))
-    			.setMuteDevice(cursor.getInt(cursor.getColumnIndex("evt_mute_device")) != 0)
-    			.setStartTime(cursor.getLong(cursor.getColumnIndex("evt_start_time")))
-				.setDate(cursor.getLong(cursor.getColumnIndex("evt_date")))
-				.setEndTime(cursor.getLong(cursor.getColumnIndex("evt_end_time")));
-		Event event = builder.build();
-		event.setAlarm(getEventAlarm(event));
-		event.setExceptions(getEventExceptions(event));
-		//Logger.error(event.name + " " + dateFormat.format(event.date) + " - exceptions: " + Integer.toString(event.exceptions.size()));
-    	return event;
+    /*
+     * Insert given events together with their exceptions in one transaction.
+     * Return true, if all events were inserted. Otherwise no event is inserted.
+     */
+    public boolean insertEvents(Collection<Event> events) {
+    	ChangeSet changes = new ChangeSet();
+    	for (Event event: events) {
+    		changes.insert(event);
+    	}
+    	return applyChanges(changes);
     }
     
     /*
-     * Search event given event id.
+     * Apply all changes in one transaction: deleted events are deleted, updated are updated, 
+     * inserted are inserted together with their exceptions, and after that exceptions are added.
+     * Inserts are done with statements, that are compiled once for the whole change set.
+     * Return true, if all changes were applied. Otherwise the transaction is rolled back.
      */
-    public Event searchEventById(int id) {
-    	String query = "SELECT * FROM Events where evt_id = ?";
-    	Cursor cursor = dbRead.rawQuery(query, new String [] {Integer.toString(id)});
-    	Event event = null;
-    	if (cursor.getCount() != 0) {
-    		cursor.moveToFirst();
-    		event = getEventFromCursor(cursor);
+    public boolean applyChanges(ChangeSet changes) {
+    	if (changes.isEmpty()) {
+    		return true;
     	}
-    	cursor.close();
-    	return event;
+    	BatchStatements statements = new BatchStatements(dbWrite);
+    	dbWrite.beginTransaction();
+    	try {
+    		for (Event event: changes.deletedEvents) {
+    			deleteEvent(event);
+    		}
+    		for (Event event: changes.updatedEvents) {
+    			if (updateEvent(event) == null) {
+    				Logger.error("TimetableDatabase.applyChanges: Error updating event " + Integer.toString(event.getId()));
+    				return false;
+    			}
+    		}
+    		for (Event event: changes.insertedEvents) {
+    			if (!insertEvent(event, statements)) {
+    				Logger.error("TimetableDatabase.applyChanges: Error inserting event " + event.getName());
+    				return false;
+    			}
+    		}
+    		for (int i = 0; i < changes.exceptionEvents.size(); i++) {
+    			insertException(changes.exceptionEvents.get(i), changes.exceptionDates.get(i), statements);
+    		}
+    		dbWrite.setTransactionSuccessful();
+    		Logger.log("TimetableDatabase.applyChanges: " + changes.toString() + " applied.");
+    		return true;
+    	} finally {
+    		dbWrite.endTransaction();
+    		statements.close();
+    	}
+    }
+    
+    /*
+     * Insert event, it's period, alarm and exceptions using compiled statements. Should be called inside of transaction.
+     */
+    private boolean insertEvent(Event event, BatchStatements statements) {
+    	EventPeriod period = event.getPeriod();
+    	if (!period.isOk()) {
+    		return false;
+    	}
+    	SQLiteStatement statement = statements.get(BatchStatements.INSERT_PERIOD);
+    	statement.bindLong(1, period.getTypeInt());
+    	statement.bindLong(2, period.getInterval());
+    	statement.bindLong(3, period.getWeekOccurrencesInt());
+    	statement.bindLong(4, period.getEndDateMillis());
+    	statement.bindLong(5, period.getNumberOfRepeats());
+    	bindString(statement, 6, period.getRuleString());
+    	period.setId((int) statement.executeInsert());
+    	if (period.getId() == -1) {
+    		return false;
+    	}
+    	
+    	statement = statements.get(BatchStatements.INSERT_EVENT);
+    	bindString(statement, 1, event.getName());
+    	bindString(statement, 2, event.getPlace());
+    	statement.bindLong(3, event.getStartTimeMillis());
+    	statement.bindLong(4, event.getEndTimeMillis());
+    	statement.bindLong(5, event.getDateMillis());
+    	statement.bindLong(6, period.getId());
+    	statement.bindLong(7, event.mutesDevice() ? 1 : 0);
+    	bindString(statement, 8, event.getNote());
+    	event.setId((int) statement.executeInsert());
+    	if (event.getId() == -1) {
+    		return false;
+    	}
+    	
+    	if (event.hasAlarm()) {
+    		EventAlarm alarm = event.getAlarm();
+    		alarm.event = event;
+    		if (!alarm.isOk()) {
+    			return false;
+    		}
+    		statement = statements.get(BatchStatements.INSERT_ALARM);
+    		statement.bindLong(1, alarm.type.ordinal());
+    		statement.bindLong(2, alarm.getTimeMillis());
+    		statement.bindLong(3, event.getId());
+    		alarm.id = (int) statement.executeInsert();
+    		if (alarm.id == -1) {
+    			return false;
+    		}
+    	}
+    	
+    	statement = statements.get(BatchStatements.INSERT_EXCEPTION);
+    	statement.bindLong(1, event.getId());
+    	for (int day: event.getExceptionDays()) {
+    		statement.bindLong(2, day);
+    		statement.executeInsert();
+    	}
+    	
+    	if (getHorizonAnchor() != NO_HORIZON) {
+    		insertEventOccurrences(event, statements.get(BatchStatements.INSERT_OCCURRENCE));
+    	}
+    	return true;
+    }
+    
+    private void insertException(Event event, Date date, BatchStatements statements) {
+    	SQLiteStatement statement = statements.get(BatchStatements.INSERT_EXCEPTION);
+    	statement.bindLong(1, event.getId());
+    	statement.bindLong(2, DateUtils.getEpochDay(date));
+    	statement.executeInsert();
+    	statement = statements.get(BatchStatements.DELETE_OCCURRENCE);
+    	statement.bindLong(1, event.getId());
+    	statement.bindLong(2, DateUtils.getEpochDay(date));
+    	statement.execute();
+    }
+    
+    private static void bindString(SQLiteStatement statement, int index, String value) {
+    	if (value == null) {
+    		statement.bindNull(index);
+    	} else {
+    		statement.bindString(index, value);
+    	}
+    }
+    
+    /*
+     * Set of changes, that are applied to database in one transaction by method applyChanges.
+     */
+    public static class ChangeSet {
+    	
+    	private List<Event> insertedEvents = new ArrayList<Event>();
+    	
+    	private List<Event> updatedEvents = new ArrayList<Event>();
+    	
+    	private List<Event> deletedEvents = new ArrayList<Event>();
     	
+    	//exceptionDates[i] is added to exceptions of exceptionEvents[i].
+    	private List<Event> exceptionEvents = new ArrayList<Event>();
+    	
+    	private List<Date> exceptionDates = new ArrayList<Date>();
+    	
+    	/*
+    	 * Insert event with all it's exceptions. Ids of event, period and alarm are set, when changes are applied.
+    	 */
+    	public ChangeSet insert(Event event) {
+    		insertedEvents.add(event);
+    		return this;
+    	}
+    	
+    	public ChangeSet update(Event event) {
+    		updatedEvents.add(event);
+    		return this;
+    	}
+    	
+    	public ChangeSet delete(Event event) {
+    		deletedEvents.add(event);
+    		return this;
+    	}
+    	
+    	/*
+    	 * Add exception to event, that is already saved or inserted by this change set.
+    	 */
+    	public ChangeSet addException(Event event, Date date) {
+    		exceptionEvents.add(event);
+    		exceptionDates.add(date);
+    		return this;
+    	}
+    	
+    	public List<Event> getInsertedEvents() {
+    		return insertedEvents;
+    	}
+    	
+    	public List<Event> getUpdatedEvents() {
+    		return updatedEvents;
+    	}
+    	
+    	public List<Event> getDeletedEvents() {
+    		return deletedEvents;
+    	}
+    	
+    	public List<Event> getExceptionEvents() {
+    		return exceptionEvents;
+    	}
+    	
+    	public boolean isEmpty() {
+    		return insertedEvents.isEmpty() && updatedEvents.isEmpty() && deletedEvents.isEmpty() && exceptionEvents.isEmpty();
+    	}
+    	
+    	@Override
+    	public String toString() {
+    		return Integer.toString(insertedEvents.size()) + " inserted, " + Integer.toString(updatedEvents.size()) + " updated, "
+    				+ Integer.toString(deletedEvents.size()) + " deleted, " + Integer.toString(exceptionEvents.size()) + " exceptions";
+    	}
     }
     
     /*
-     * Return all events, that have not finished. 
+     * Statements, that are compiled on first use and reused during one batch.
      */
-    public Vector<Event> getAllEvents() {
-    	Cursor cursor = dbRead.rawQuery("SELECT * FROM Events order by evt_start_time ASC", new String [] {});
-    	Vector<Event> events = new Vector<Event>(); 
-    	if (cursor.getCount() == 0) {
-    		cursor.close();
-    		return events;
+    private static class BatchStatements {
+    	
+    	public static final int INSERT_PERIOD = 0;
+    	
+    	public static final int INSERT_EVENT = 1;
+    	
+    	public static final int INSERT_ALARM = 2;
+    	
+    	public static final int INSERT_EXCEPTION = 3;
+    	
+    	public static final int INSERT_OCCURRENCE = 4;
+    	
+    	public static final int DELETE_OCCURRENCE = 5;
+    	
+    	private static final String [] QUERIES = new String [] {
+    		"INSERT INTO Periods (per_type, per_interval, per_week_occurences, per_end_date, per_num_of_repeats, per_rrule) "
+    				+ "VALUES (?, ?, ?, ?, ?, ?)",
+    		"INSERT INTO Events (evt_name, evt_place, evt_start_time, evt_end_time, evt_date, per_id, evt_mute_device, evt_note) "
+    				+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
+    		"INSERT INTO Alarms (alm_type, alm_time, evt_id) VALUES (?, ?, ?)",
+    		INSERT_EXCEPTION_QUERY,
+    		INSERT_OCCURRENCE_QUERY,
+    		"DELETE FROM Occurrences WHERE evt_id = ? AND occ_day = ?"
+    	};
+    	
+    	private final SQLiteDatabase db;
+    	
+    	private SQLiteStatement [] statements = new SQLiteStatement[QUERIES.length];
+    	
+    	public BatchStatements(SQLiteDatabase db) {
+    		this.db = db;
     	}
-    	cursor.moveToFirst();
-    	do {
-    		Event event = getEventFromCursor(cursor);
-    		if (event == null) {
-    			Logger.error("TimetableDatabase.getAllEvents: Error creating event");
-    		} else {
-    			events.add(event);
+    	
+    	public SQLiteStatement get(int statement) {
+    		if (statements[statement] == null) {
+    			statements[statement] = db.compileStatement(QUERIES[statement]);
     		}
-    	} while (cursor.moveToNext());
-    	cursor.close();
-    	return events;
+    		return statements[statement];
+    	}
+    	
+    	public void close() {
+    		for (SQLiteStatement statement: statements) {
+    			if (statement != null) {
+    				statement.close();
+    			}
+    		}
+    	}
     }
     
     /*
-     * Return events, that have alarm.
+     * Load day, around which Occurrences table is built. 
      */
-    public Vector<Event> searchEventsWithAlarm() {
-    	Cursor cursor = dbRead.rawQuery("SELECT * FROM Events INNER JOIN Alarms ON Events.evt_id = Alarms.evt_id", new String [] {});
-    	Vector<Event> events = new Vector<Event>(); 
-    	if (cursor.getCount() == 0) {
+    private int getHorizonAnchor() {
+    	if (!isHorizonLoaded) {
+    		Cursor cursor = dbRead.rawQuery("SELECT hor_anchor_day FROM OccurrencesHorizon", new String [] {});
+    		mHorizonAnchor = cursor.moveToFirst() ? cursor.getInt(0) : NO_HORIZON;
     		cursor.close();
-    		return events;
+    		isHorizonLoaded = true;
     	}
-    	cursor.moveToFirst();
-    	do {
-    		Event event = getEventFromCursor(cursor);
-    		if (event == null) {
-    			Logger.error("TimetableDatabase.searchEventsWithAlarm: Error creating event");
+    	return mHorizonAnchor;
+    }
+    
+    private boolean isInHorizon(int day) {
+    	int anchor = getHorizonAnchor();
+    	return anchor != NO_HORIZON && day >= anchor - OCCURRENCES_HORIZON_PAST_DAYS 
+    			&& day <= anchor + OCCURRENCES_HORIZON_FUTURE_DAYS;
+    }
+    
+    /*
+     * Rebuild Occurrences table, if it is not built yet or current day is moved too far from the horizon anchor.
+     */
+    private synchronized void updateOccurrencesHorizon() {
+    	int today = DateUtils.getEpochDay(Utils.getCurrDateTime());
+    	int anchor = getHorizonAnchor();
+    	if (anchor != NO_HORIZON && Math.abs(today - anchor) <= OCCURRENCES_HORIZON_SHIFT_DAYS) {
+    		return;
+    	}
+    	Logger.log("TimetableDatabase.updateOccurrencesHorizon: rebuilding occurrences around day " + Integer.toString(today));
+    	EventCursor events = queryAllEvents();
+    	dbWrite.beginTransaction();
+    	SQLiteStatement statement = dbWrite.compileStatement(INSERT_OCCURRENCE_QUERY);
+    	try {
+    		dbWrite.delete("Occurrences", null, null);
+    		dbWrite.delete("OccurrencesHorizon", null, null);
+    		ContentValues values = new ContentValues();
+    		values.put("hor_anchor_day", today);
+    		dbWrite.insert("OccurrencesHorizon", null, values);
+    		mHorizonAnchor = today;
+    		isHorizonLoaded = true;
+    		for (Event event: events) {
+    			insertEventOccurrences(event, statement);
     		}
-    		events.add(event);
-    	} while (cursor.moveToNext());
-    	cursor.close();
-    	return events;
+    		dbWrite.setTransactionSuccessful();
+    	} finally {
+    		dbWrite.endTransaction();
+    		statement.close();
+    		events.close();
+    	}
     }
     
     /*
-     * Return events, that mute device.
+     * Save all occurrences of event within horizon into Occurrences table, replacing old ones.
      */
-    public Vector<Event> searchEventsThatMuteDevice() {
-    	Cursor cursor = dbRead.rawQuery("SELECT * FROM Events where evt_mute_device = 1", new String [] {});
+    private void indexEventOccurrences(Event event) {
+    	if (getHorizonAnchor() == NO_HORIZON) {
+    		//all events will be indexed, when table is built.
+    		return;
+    	}
+    	SQLiteStatement statement = dbWrite.compileStatement(INSERT_OCCURRENCE_QUERY);
+    	dbWrite.beginTransaction();
+    	try {
+    		dbWrite.delete("Occurrences", "evt_id = ?", new String [] {Integer.toString(event.getId())});
+    		insertEventOccurrences(event, statement);
+    		dbWrite.setTransactionSuccessful();
+    	} finally {
+    		dbWrite.endTransaction();
+    		statement.close();
+    	}
+    }
+    
+    /*
+     * Insert occurrences of event within horizon, using given compiled INSERT_OCCURRENCE_QUERY.
+     */
+    private void insertEventOccurrences(Event event, SQLiteStatement statement) {
+    	if (event.getPeriod() == null || event.getDate() == null) {
+    		return;
+    	}
+    	EventPeriod.OccurrenceIterator iterator = event.getOccurrenceIterator(getHorizonAnchor() - OCCURRENCES_HORIZON_PAST_DAYS, 
+    													getHorizonAnchor() + OCCURRENCES_HORIZON_FUTURE_DAYS, mOccurrenceIterator.get());
+    	statement.bindLong(2, event.getId());
+    	while (iterator.hasNext()) {
+    		statement.bindLong(1, iterator.next());
+    		statement.executeInsert();
+    	}
+    }
+    
+    /*
+     * Return cursor over events, that satisfy given condition, using EVENT_QUERY. 
+     * Events are built one by one, while cursor is moved. Cursor should be closed by caller.
+     */
+    private EventCursor queryEvents(String condition, String [] args) {
+    	return new EventCursor(dbRead.rawQuery(EVENT_QUERY + condition, args));
+    }
+    
+    /*
+     * Search events, that satisfy given condition, using EVENT_QUERY. 
+     * All events are loaded in one query and built in one pass through the cursor.
+     */
+    private Vector<Event> searchEvents(String condition, String [] args) {
+    	EventCursor cursor = queryEvents(condition, args);
     	Vector<Event> events = new Vector<Event>(); 
-    	if (cursor.getCount() == 0) {
+    	try {
+    		while (cursor.moveToNext()) {
+    			events.add(cursor.getEvent());
+    		}
+    	} finally {
     		cursor.close();
-    		return events;
     	}
-    	cursor.moveToFirst();
-    	do {
-    		Event event = getEventFromCursor(cursor);
-    		events.add(event);
-    	} while (cursor.moveToNext());
-    	cursor.close();
     	return events;
     }
     
+    /*
+     * Search event given event id.
+     */
+    public Event searchEventById(int id) {
+    	Vector<Event> events = searchEvents(EVENT_BY_ID_CONDITION, new String [] {Integer.toString(id)});
+    	return events.isEmpty() ? null : events.get(0);
+    }
+    
+    /*
+     * Return all events, that have not finished. 
+     */
+    public Vector<Event> getAllEvents() {
+    	return searchEvents(ALL_EVENTS_CONDITION, new String [] {});
+    }
+    
+    /*
+     * Return cursor over all events, sorted by start time. Cursor should be closed after use.
+     */
+    public EventCursor queryAllEvents() {
+    	return queryEvents(ALL_EVENTS_CONDITION, new String [] {});
+    }
+    
+    /*
+     * Return cursor over events, that have alarm. Cursor should be closed after use.
+     */
+    public EventCursor queryEventsWithAlarm() {
+    	return queryEvents(EVENTS_WITH_ALARM_CONDITION, new String [] {});
+    }
+    
+    /*
+     * Return cursor over events, that mute device. Cursor should be closed after use.
+     */
+    public EventCursor queryEventsThatMuteDevice() {
+    	return queryEvents(EVENTS_THAT_MUTE_DEVICE_CONDITION, new String [] {});
+    }
+    
+    /*
+     * Return events, that have alarm.
+     */
+    public Vector<Event> searchEventsWithAlarm() {
+    	return searchEvents(EVENTS_WITH_ALARM_CONDITION, new String [] {});
+    }
+    
+    /*
+     * Return events, that mute device.
+     */
+    public Vector<Event> searchEventsThatMuteDevice() {
+    	return searchEvents(EVENTS_THAT_MUTE_DEVICE_CONDITION, new String [] {});
+    }
+    
     /*
      * Return all events, that have occurrence on given date.
      */
     public Vector<Event> searchEventsByDate(Date date) {
-    	String query = "SELECT * FROM Events order by evt_start_time ASC";
-    	Cursor cursor = dbRead.rawQuery(query, new String [] {});
+    	int day = DateUtils.getEpochDay(date);
+    	updateOccurrencesHorizon();
+    	if (isInHorizon(day)) {
+    		return searchEvents(EVENTS_BY_DAY_CONDITION, new String [] {Integer.toString(day)});
+    	}
+    	EventCursor events = queryAllEvents();
+    	Vector<Event> todayEvents = new Vector<Event>();
+    	try {
+    		for (Event event: events) {
+    			if (event.getPeriod() != null && event.isToday(date)) {
+    				todayEvents.add(event);
+    			}
+    		}
+    	} finally {
+    		events.close();
+    	}
+    	return todayEvents;
+    }
+    
+    /*
+     * Return all occurrences of events between given days(inclusively), grouped by day. 
+     * Days are numbers of days since 01.01.1970. Events of each day are sorted by start time.
+     */
+    public SortedMap<Integer, Vector<Event>> searchOccurrencesBetween(int startDay, int endDay) {
+    	SortedMap<Integer, Vector<Event>> occurrences = new TreeMap<Integer, Vector<Event>>();
+    	updateOccurrencesHorizon();
+    	if (!isInHorizon(startDay) || !isInHorizon(endDay)) {
+    		EventCursor events = queryAllEvents();
+    		try {
+    			for (Event event: events) {
+    				if (event.getPeriod() == null) {
+    					continue;
+    				}
+    				EventPeriod.OccurrenceIterator iterator = event.getOccurrenceIterator(startDay, endDay, mOccurrenceIterator.get());
+    				while (iterator.hasNext()) {
+    					addOccurrence(occurrences, iterator.next(), event);
+    				}
+    			}
+    		} finally {
+    			events.close();
+    		}
+    		return occurrences;
+    	}
     	
-    	Vector<Event> events = new Vector<Event>();
-    	if (cursor.getCount() == 0) {
-    		cursor.close();
-    		return events;
+    	String [] args = new String [] {Integer.toString(startDay), Integer.toString(endDay)};
+    	Map<Integer, Event> events = new HashMap<Integer, Event>();
+    	for (Event event: searchEvents(EVENTS_BETWEEN_DAYS_CONDITION, args)) {
+    		events.put(event.getId(), event);
     	}
-    	cursor.moveToFirst();
-    	do {
-    		Event event = getEventFromCursor(cursor);
-    		if (event != null && event.isToday(date)) {
-    			events.add(event);
+    	Cursor cursor = dbRead.rawQuery(OCCURRENCES_BETWEEN_DAYS_QUERY, args);
+    	while (cursor.moveToNext()) {
+    		Event event = events.get(cursor.getInt(1));
+    		if (event != null) {
+    			addOccurrence(occurrences, cursor.getInt(0), event);
     		}
-    	} while(cursor.moveToNext());
+    	}
     	cursor.close();
-    	return events;
+    	return occurrences;
+    }
+    
+    private void addOccurrence(SortedMap<Integer, Vector<Event>> occurrences, int day, Event event) {
+    	Vector<Event> dayEvents = occurrences.get(day);
+    	if (dayEvents == null) {
+    		dayEvents = new Vector<Event>();
+    		occurrences.put(day, dayEvents);
+    	}
+    	dayEvents.add(event);
     }
     
     /*
@@ -527,6 +1183,9 @@ public class TimetableDatabase extends SQLiteOpenHelper {
     	dbWrite.delete("Exceptions", null, null);
     	dbWrite.delete("Alarms", null, null);
     	dbWrite.delete("Periods", null, null);
+    	dbWrite.delete("Occurrences", null, null);
+    	dbWrite.delete("OccurrencesHorizon", null, null);
+    	mHorizonAnchor = NO_HORIZON;
     }
     
     @Override
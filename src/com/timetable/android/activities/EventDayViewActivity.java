@@ -8,6 +8,7 @@ import java.util.Date;
 
 import org.holoeverywhere.app.Activity;
 import org.holoeverywhere.widget.LinearLayout;
+import org.holoeverywhere.widget.Toast;
 import org.holoeverywhere.widget.datetimepicker.date.DatePickerDialog;
 
 import android.content.Intent;
@@ -23,8 +24,11 @@ import com.timetable.android.EventController.OnEventDeletedListener;
 import com.timetable.android.EventPager;
 import com.timetable.android.EventView;
 import com.timetable.android.EventView.EventViewObserver;
+import com.timetable.android.EventViewProvider;
 import com.timetable.android.Logger;
 import com.timetable.android.R;
+import com.timetable.android.TimetableDatabase;
+import com.timetable.android.TimetableDatabase.OnDatabaseOpenedListener;
 import com.timetable.android.utils.DateFormatFactory;
 import com.timetable.android.utils.DateUtils;
 import com.timetable.android.utils.Utils;
@@ -34,7 +38,7 @@ import com.timetable.android.utils.Utils;
  * Activity that displays all events for certain day.
  * User can view events for next or previous day by shifting page right or left.
  */
-public class EventDayViewActivity extends Activity implements EventViewObserver, OnEventDeletedListener {
+public class EventDayViewActivity extends Activity implements EventViewObserver, OnEventDeletedListener, OnDatabaseOpenedListener {
 	
 	public static final SimpleDateFormat ACTION_BAR_DATE_FORMAT = DateFormatFactory.getFormat("EEE, dd.MM"); 
 	
@@ -105,7 +109,22 @@ public class EventDayViewActivity extends Activity implements EventViewObserver,
 		
 		eventLayout = (LinearLayout) findViewById(R.id.events_table);
 		mActionBar = getSupportActionBar();
+		EventViewProvider.getInstance(this).prewarm(EventViewProvider.PREWARM_VIEWS_NUMBER);
 		
+		//pager is created, when database is opened and migrated.
+		TimetableDatabase.openInBackground(this, this);
+	}
+	
+	@Override
+	public void onDatabaseOpened(boolean isOpened) {
+		if (isFinishing()) {
+			return;
+		}
+		if (!isOpened) {
+			Toast.makeText(this, R.string.database_not_opened, Toast.LENGTH_LONG).show();
+			finish();
+			return;
+		}
 		setEventPager(new EventPager(this, Utils.getCurrDateTime()));
 		DatePickerDialog.OnDateSetListener mOnDateSetListener = new DatePickerDialog.OnDateSetListener() {
 
@@ -157,13 +176,16 @@ public class EventDayViewActivity extends Activity implements EventViewObserver,
 	public void onRestart() {
 		super.onRestart();
 		Logger.log("EventDayViewAcwativity was restarted.");
-		getEventPager().update();
+		if (eventPager != null) {
+			eventPager.update();
+		}
 	}
 	
 	@Override 
 	public void onDestroy() {
 	
 		super.onDestroy();
+		EventViewProvider.clear(this);
 		Logger.sendReport();
 	}
 	
@@ -172,7 +194,9 @@ public class EventDayViewActivity extends Activity implements EventViewObserver,
 		super.onNewIntent(intent);
 		Logger.log("EventDayViewAvtivity: new intent received!");
 		setIntent(intent);
-		initEventPager();
+		if (eventPager != null) {
+			initEventPager();
+		}
 	}
 	
 	@Override
@@ -198,6 +222,10 @@ public class EventDayViewActivity extends Activity implements EventViewObserver,
 	
 	@Override
 	public boolean onOptionsItemSelected(MenuItem item) {
+	    if (eventPager == null && item.getItemId() != R.id.action_settings) {
+	    	//database is not opened yet.
+	    	return true;
+	    }
 	    // Handle item selection
 	    switch (item.getItemId()) {
 	        case R.id.action_add_event:
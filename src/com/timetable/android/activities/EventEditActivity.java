@@ -4,6 +4,8 @@ import java.text.ParseException;
 import java.util.Calendar;
 import java.util.Date;
 
+import org.holoeverywhere.widget.Toast;
+
 import android.os.Bundle;
 import android.text.Editable;
 import android.text.TextWatcher;
@@ -17,6 +19,7 @@ import com.timetable.android.EventController.OnEventUpdatedListener;
 import com.timetable.android.EventPeriod;
 import com.timetable.android.R;
 import com.timetable.android.TimetableDatabase;
+import com.timetable.android.TimetableDatabase.OnDatabaseOpenedListener;
 import com.timetable.android.Logger;
 
 /*
@@ -24,7 +27,7 @@ import com.timetable.android.Logger;
  * Should be started with extra field 'event_id' that contains id of oldEvent,
  * that should be edited and field 'date', that contains editDate, when oldEvent was edited.
  */
-public class EventEditActivity extends EventAddActivity implements OnEventUpdatedListener, OnEventDeletedListener {
+public class EventEditActivity extends EventAddActivity implements OnEventUpdatedListener, OnEventDeletedListener, OnDatabaseOpenedListener {
 
 	public static final String EXTRA_EVENT_ID = "event_id";
 	
@@ -42,6 +45,20 @@ public class EventEditActivity extends EventAddActivity implements OnEventUpdate
 	@Override 
 	public void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
+		//activity can be restored without EventDayViewActivity, so event is searched, when database is opened and migrated.
+		TimetableDatabase.openInBackground(this, this);
+	}
+	
+	@Override
+	public void onDatabaseOpened(boolean isOpened) {
+		if (isFinishing()) {
+			return;
+		}
+		if (!isOpened) {
+			Toast.makeText(this, R.string.database_not_opened, Toast.LENGTH_LONG).show();
+			finish();
+			return;
+		}
 			Bundle extras = getIntent().getExtras();
 			int eventId = extras.getInt(EXTRA_EVENT_ID);
 			db = TimetableDatabase.getInstance(this);
@@ -129,6 +146,10 @@ public class EventEditActivity extends EventAddActivity implements OnEventUpdate
 
 	@Override 
 	public boolean saveEvent()  {
+		if (oldEvent == null) {
+			//event is not loaded yet.
+			return false;
+		}
 		editedEvent = getEvent();
 		if (editedEvent == null) {
 			return false;
@@ -141,6 +162,9 @@ public class EventEditActivity extends EventAddActivity implements OnEventUpdate
 	}
 	
 	public void deleteEvent() {
+		if (oldEvent == null) {
+			return;
+		}
 		EventController eventController = new EventController(this);
 		eventController.setOnEventDeletedListener(this);
 		eventController.deleteEvent(oldEvent, editDate);
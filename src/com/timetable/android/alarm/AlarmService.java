@@ -1,15 +1,9 @@
 package com.timetable.android.alarm;
 
 import java.text.SimpleDateFormat;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
-import java.util.Iterator;
 import java.util.Locale;
-import java.util.PriorityQueue;
-import java.util.Vector;
 
-import android.app.AlarmManager;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
@@ -23,53 +17,39 @@ import android.os.IBinder;
 import android.support.v4.app.NotificationCompat;
 import android.view.WindowManager;
 
-import com.timetable.android.BroadcastActions;
 import com.timetable.android.Event;
+import com.timetable.android.EventTimeline;
 import com.timetable.android.R;
-import com.timetable.android.TimetableDatabase;
 import com.timetable.android.Logger;
 import com.timetable.android.activities.EventDayViewActivity;
 import com.timetable.android.utils.DateUtils;
 import com.timetable.android.utils.Utils;
 
 /*
- * Service, that creates alarm, that would be fired later.
- * Has internal BroadcastReceiver, that receives actions: ACTION_EVENT_ADDED, ACTION_EVENT_UPDATED, ACTION_EVENT_DELETED 
- * and ACTION_ALARM_DISMISSED, that is broadcasted by AlarmDialogActivity, when user dismisses alarm, and it should be recreated.
+ * Service, that shows alarm dialog, when alarm is fired, and notification about the next alarm.
+ * Alarms are scheduled by EventTimeline.
+ * Has internal BroadcastReceiver, that receives actions ACTION_ALARM_DISMISSED and ACTION_ALARM_SNOOZED, 
+ * that are broadcasted by AlarmDialogActivity, when user dismisses or snoozes alarm, and it should be recreated.
  */
-public class AlarmService extends Service {
+public class AlarmService extends Service implements EventTimeline.OnAlarmFiredListener, EventTimeline.OnAlarmsChangedListener {
 
 	public  static final int ALARM_NOTIFICATION_CODE = 123;
 
-	public static final String ACTION_ALARM_FIRED = "com.timetable.android.ACTION_ALARM_FIRED";
-	
 	public static final String ACTION_ALARM_DISMISSED = "com.timetable.android.ACTION_ALARM_DISMISSED";
 	
 	public static final String ACTION_ALARM_SNOOZED = "com.timetable.android.ACTION_ALARM_SNOOZED";
 	
 	public static final long SNOOZE_TIME = 10 * DateUtils.MINUTE_MILLIS;
 	
-	public static final int MAX_QUEUE_SIZE = 10000;
-	
 	private static final String NEXT_ALARM_NOTIFICATION_PREFIX = "";
 	
 	public static final SimpleDateFormat alarmTimeFormat = new SimpleDateFormat("EEE, d. MMM yyyy 'at' HH:mm", Locale.US);
 	
 	private NotificationManager notificationManager;
 
-	private AlarmManager alarmManager;
-	
 	private AlarmBroadcastReceiver mReceiver;
 	
-	private AlarmAdapter mAlarmAdapter;
-	
-	private class AlarmTimeComparator implements Comparator<AlarmContainer> {
-
-		@Override
-		public int compare(AlarmContainer alarm1, AlarmContainer alarm2) {
-			return alarm1.nextOccurrence.compareTo(alarm2.nextOccurrence);
-		}
-	}
+	private EventTimeline mTimeline;
 	
 	@Override
 	public IBinder onBind(Intent arg0) {
@@ -79,20 +59,18 @@ public class AlarmService extends Service {
 	@Override 
 	public void onCreate() {
 		super.onCreate();
-		alarmManager = (AlarmManager)this.getSystemService(Context.ALARM_SERVICE);
 		notificationManager = (NotificationManager) this.getSystemService(Context.NOTIFICATION_SERVICE);
 		mReceiver = new AlarmBroadcastReceiver();
-		mAlarmAdapter = new AlarmAdapter();
 		IntentFilter intentFilter = new IntentFilter();
-		intentFilter.addAction(BroadcastActions.ACTION_EVENT_ADDED);
-		intentFilter.addAction(BroadcastActions.ACTION_EVENT_UPDATED);
-		intentFilter.addAction(BroadcastActions.ACTION_EVENT_DELETED);
-		intentFilter.addAction(AlarmService.ACTION_ALARM_FIRED);
 		intentFilter.addAction(AlarmService.ACTION_ALARM_DISMISSED);
 		intentFilter.addAction(AlarmService.ACTION_ALARM_SNOOZED);
 		registerReceiver(mReceiver, intentFilter);
 		
-		loadAlarms();
+		mTimeline = EventTimeline.getInstance(this);
+		mTimeline.addOnAlarmFiredListener(this);
+		mTimeline.addOnAlarmsChangedListener(this);
+		mTimeline.start();
+		updateNotification();
 		Logger.log("AlarmService.onCreate: service is successfully created");
 	}
 	
@@ -100,6 +78,9 @@ public class AlarmService extends Service {
 	public void onDestroy() {
 		super.onDestroy();
 		unregisterReceiver(mReceiver);
+		mTimeline.removeOnAlarmFiredListener(this);
+		mTimeline.removeOnAlarmsChangedListener(this);
+		mTimeline.stop();
 	}
 	
 	@Override 
@@ -108,97 +89,44 @@ public class AlarmService extends Service {
 		return Service.START_STICKY; 
 	}
 	
-	private Intent getIntentFromEvent(Event event) {
-		Intent intent = new Intent(ACTION_ALARM_FIRED);
-		intent.putExtras(event.convert());
-		return intent;
-	}
-	
-	private PendingIntent getPendingIntentFromEvent(Event event) {
-		return PendingIntent.getBroadcast(this, event.getId(), getIntentFromEvent(event), PendingIntent.FLAG_UPDATE_CURRENT);
+	@Override
+	public void onAlarmFired(Event event) {
+		Logger.log("AlarmService.onAlarmFired: alarm of event " + event.getName() + ", id " + Integer.toString(event.getId()) + " is fired.");
+		fireAlarm(this, event.convert());
 	}
 	
-	public void createAlarm(Event event, Long alarmTime) {
-		alarmManager.set(AlarmManager.RTC_WAKEUP, alarmTime, getPendingIntentFromEvent(event));
-		mAlarmAdapter.add(event, new Date(alarmTime));
+	@Override
+	public void onAlarmsChanged() {
 		updateNotification();
-		
-	}
-	/*
-	 * Create alarm with pending intent, that will be broadcasted to this class, when alarm should run.
-	 */
-	public void createAlarm(Event event) {
-		if (!event.hasAlarm()) {
-			return;
-		}
-		Date nextOccurrence = event.getAlarm().getNextOccurrence();
-		if (nextOccurrence == null) {
-			return;
-		}
-		if (nextOccurrence.compareTo(Utils.getCurrDateTime()) <= 0) {
-			Logger.error("AlarmService.createAlarm: next alarm occurrence is before current time. \n Next alarm: " 
-									+ nextOccurrence.toString() + "\n current time: " + Utils.getCurrDateTime().toString() 
-									+ "Event information: \n" + event.toString());
-			return;
-		}
-		createAlarm(event, nextOccurrence.getTime());
-		Logger.log("AlarmService.createAlarm: creating alarm on date: " + nextOccurrence.toString());
-		
 	}
 	
-	
 	/*
-	 * Delete alarm.
-	 * Delete notification, if needed.
+	 * Show alarm dialog for event with given data.
 	 */
-	public void deleteAlarm(Event event) {
-		Logger.log("AlarmService.deleteAlarm: deleting alarm");
-		if (!mAlarmAdapter.delete(event)) {
-			Logger.log("AlarmService.deleteAlarm: no such alarm found.");
+	private void fireAlarm(Context context, Bundle eventData) {
+		if (!AlarmDialogActivity.checkEvent(context, eventData)) {
 			return;
 		}
-		PendingIntent mIntent = getPendingIntentFromEvent(event);
-		alarmManager.cancel(mIntent);
-		mIntent.cancel();
-		updateNotification();
-	}
-	
-	public void updateAlarm(Event event) {
-		if (event.hasAlarm() && event.getAlarm().getNextOccurrence() != null) {
-			createAlarm(event);
-		} else {
-			deleteAlarm(event);
-		}	
+		Intent alarmDialogIntent = new Intent(context, AlarmDialogActivity.class);
+		alarmDialogIntent.putExtras(eventData);
+		alarmDialogIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+		alarmDialogIntent.addFlags(Intent.FLAG_ACTIVITY_MULTIPLE_TASK);
+		alarmDialogIntent.addFlags(WindowManager.LayoutParams.FLAG_SHOW_WHEN_LOCKED + WindowManager.LayoutParams.FLAG_DISMISS_KEYGUARD + WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON + WindowManager.LayoutParams.FLAG_TURN_SCREEN_ON);
+	    context.startActivity(alarmDialogIntent);
 	}
 	
 	public void snoozeAlarm(Event event) {
-		mAlarmAdapter.delete(event);
-		createAlarm(event, Utils.getCurrDateTime().getTime() + SNOOZE_TIME);
+		mTimeline.snoozeAlarm(event, Utils.getCurrDateTime().getTime() + SNOOZE_TIME);
 	}
 	
 	public boolean existAlarm(Event event) {
-		return PendingIntent.getBroadcast(this, event.getId(), getIntentFromEvent(event), PendingIntent.FLAG_NO_CREATE) != null;
-	}
-	
-	
-	public void loadAlarms() {
-		TimetableDatabase db = TimetableDatabase.getInstance(this);
-		
-		Vector<Event> events = db.searchEventsWithAlarm();
-		Collections.reverse(events);
-		Date today = Utils.getCurrDateTime();
-		for (Event event : events) {
-			EventAlarm alarm = event.getAlarm();
-			if (alarm.getNextOccurrence(today) != null) {
-				createAlarm(event);
-			}
-		}
+		return mTimeline.hasAlarm(event);
 	}
 	
 	public Intent getNotificationIntent() {
 		Intent notificationIntent = new Intent(this, EventDayViewActivity.class);
-		if (mAlarmAdapter.getNextAlarm() != null) {
-			Date nextAlarmEventDate = mAlarmAdapter.getNextAlarm().nextOccurrence;
+		if (mTimeline.hasAlarms()) {
+			Date nextAlarmEventDate = mTimeline.getNextAlarmTime();
 			notificationIntent.putExtra(EventDayViewActivity.EXTRAS_DATE, EventDayViewActivity.EXTRAS_DATE_FORMAT.format(nextAlarmEventDate));
 			//Unless this hack pending intent in notification is not updated and false date is shown, when user clicks it.
 			notificationIntent.setAction(Long.toString(System.currentTimeMillis()));
@@ -219,8 +147,8 @@ public class AlarmService extends Service {
 	public void createNotification() {
 		PendingIntent mIntent = getNotificationPendingIntent(); 
 		String nextAlarmString = "No alarms are set.";
-		if (mAlarmAdapter.getNextAlarm() != null ) {
-			Date nextAlarm = mAlarmAdapter.getNextAlarm().nextOccurrence;
+		if (mTimeline.hasAlarms()) {
+			Date nextAlarm = mTimeline.getNextAlarmTime();
 			if (nextAlarm != null) {
 				nextAlarmString = NEXT_ALARM_NOTIFICATION_PREFIX + alarmTimeFormat.format(nextAlarm); 
 			}
@@ -246,7 +174,7 @@ public class AlarmService extends Service {
 	}
 	
 	public void updateNotification() {
-		if (mAlarmAdapter.isEmpty()) {
+		if (!mTimeline.hasAlarms()) {
 			deleteNotification();
 		} else {
 			createNotification();
@@ -254,66 +182,8 @@ public class AlarmService extends Service {
 		
 	}
 	
-	public static class AlarmContainer {
-		
-		public EventAlarm alarm;
-		
-		public Date nextOccurrence;
-		
-		public AlarmContainer(EventAlarm _alarm, Date _nextOccurrence) {
-			alarm = _alarm;
-			nextOccurrence = _nextOccurrence;
-		}
-	}
-	
-	public class AlarmAdapter {
-
-		private PriorityQueue<AlarmContainer> alarmQueue = new PriorityQueue<AlarmContainer>(MAX_QUEUE_SIZE, new AlarmTimeComparator());
-		
-		public void add(Event event) {
-			add(event, event.getAlarm().getNextOccurrence());
-		}
-		
-		public void add(Event event, Date nextOccurrence) {
-			delete(event);
-			alarmQueue.offer(new AlarmContainer(event.getAlarm(), nextOccurrence));
-		}
-		
-		/*
-		 * Remove event's alarm from adapter. Return true if alarm was found.
-		 */
-		public boolean delete(Event event) {
-			Iterator<AlarmContainer> iterator = alarmQueue.iterator();
-			while(iterator.hasNext()) {
-				EventAlarm nextAlarm = iterator.next().alarm;
-				if (nextAlarm.event.getId() == event.getId()) {
-					iterator.remove();
-					return true;
-				}
-			}
-			return false;
-		
-		}
-		
-		public void update(Event event) {
-			add(event);
-		}
-		
-		public AlarmContainer getNextAlarm() {
-			if (isEmpty()) {
-				return null;
-			}
-			return alarmQueue.peek();
-		}
-		
-		public boolean isEmpty() {
-			return alarmQueue.isEmpty();
-		}
-	}
-	
 	/*
-	 * Class for working with event alarm.
-	 * It contains functional for creating and deleting alarms, receiving them, updating notification, that informs user, that alarm is set. 
+	 * Class for receiving actions from alarm dialog.
 	 */
 	public class AlarmBroadcastReceiver extends BroadcastReceiver {
 		
@@ -330,30 +200,11 @@ public class AlarmService extends Service {
 			}
 			Logger.log("AlarmService.onReceive: action " + action + " received with event " + event.getName() + ", id " + Integer.toString(event.getId()));
 			
-			if (action.equals(AlarmService.ACTION_ALARM_FIRED)) {
-				if (!AlarmDialogActivity.checkEvent(context, eventData)) {
-					return;
-				}
-				Intent alarmDialogIntent = new Intent(context, AlarmDialogActivity.class);
-				alarmDialogIntent.putExtras(eventData);
-				alarmDialogIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-				alarmDialogIntent.addFlags(Intent.FLAG_ACTIVITY_MULTIPLE_TASK);
-				alarmDialogIntent.addFlags(WindowManager.LayoutParams.FLAG_SHOW_WHEN_LOCKED + WindowManager.LayoutParams.FLAG_DISMISS_KEYGUARD + WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON + WindowManager.LayoutParams.FLAG_TURN_SCREEN_ON);
-			    context.startActivity(alarmDialogIntent);
-				return;
-			}
-			
-			if (action.equals(BroadcastActions.ACTION_EVENT_ADDED)) {
-				createAlarm(event);
-			} else if (action.equals(BroadcastActions.ACTION_EVENT_UPDATED) || action.equals(ACTION_ALARM_DISMISSED)) {
-				updateAlarm(event);
-			} else if (action.equals(BroadcastActions.ACTION_EVENT_DELETED)) {
-				deleteAlarm(event);
-			}  else if (action.equals(ACTION_ALARM_SNOOZED)) {
+			if (action.equals(ACTION_ALARM_DISMISSED)) {
+				mTimeline.updateAlarm(event);
+			} else if (action.equals(ACTION_ALARM_SNOOZED)) {
 				snoozeAlarm(event);
 			}
 		}
 	}
 }
-
-	
@@ -1,7 +1,6 @@
 package com.timetable.android.alarm;
 
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Date;
 
 import android.os.Bundle;
@@ -37,8 +36,6 @@ public class EventAlarm {
 
 	public Event event;
 
-	public static final SimpleDateFormat timeFormat = DateFormatFactory.getDateTimeFormat();
-	
 	/*
 	 * Create alarm for given @event with given @data.
 	 */
@@ -49,6 +46,16 @@ public class EventAlarm {
 		setTime(data.getString(BUNDLE_ALARM_TIME));
 	}
 	
+	/*
+	 * Create copy of given @alarm for given @event.
+	 */
+	public EventAlarm(EventAlarm alarm, Event event) {
+		this(event);
+		id = alarm.id;
+		type = alarm.type;
+		time = alarm.time == null ? null : new Date(alarm.time.getTime());
+	}
+	
 	/*
 	 * Construct alarm for given @event.
 	 */
@@ -94,7 +101,7 @@ public class EventAlarm {
 	 * Get alarm time, formated to string.
 	 */
 	public String getTimeString() {
-		return hasTime() ? timeFormat.format(time) : "";
+		return hasTime() ? DateFormatFactory.getThreadDateTimeFormat().format(time) : "";
 	}
 	
 	public void setTime(long millis) {
@@ -105,7 +112,7 @@ public class EventAlarm {
 	 * Set alarm time, given a string, that suits alarm's time format.
 	 */
 	public void setTime(String timeString) throws ParseException {
-		time = DateUtils.getDateFromString(timeFormat, timeString, false);
+		time = DateUtils.getDateFromString(DateFormatFactory.getThreadDateTimeFormat(), timeString, false);
 	}
 	
 	
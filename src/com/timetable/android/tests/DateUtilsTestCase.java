@@ -3,11 +3,14 @@ package com.timetable.android.tests;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.TimeZone;
 
 import junit.framework.TestCase;
 
+import com.timetable.android.Event;
 import com.timetable.android.utils.DateFormatFactory;
 import com.timetable.android.utils.DateUtils;
+import com.timetable.android.utils.ZoneOffsetTable;
 
 public class DateUtilsTestCase extends TestCase{
 	
@@ -52,4 +55,89 @@ public class DateUtilsTestCase extends TestCase{
 		
 		assertEquals(dateTimeFormat.parse("06.08.2014 23:40"), DateUtils.setTime(dateTime, time));
 	}
+	
+	public void testEpochDay() throws ParseException {
+		Date date = dateFormat.parse("29.02.2012");
+		int day = DateUtils.getEpochDay(date);
+		
+		assertEquals(day, DateUtils.getEpochDay(2012, 2, 29));
+		assertEquals(2012, DateUtils.getYear(day));
+		assertEquals(2, DateUtils.getMonth(day));
+		assertEquals(29, DateUtils.getDayOfMonth(day));
+		assertEquals(date, DateUtils.getDateFromEpochDay(day));
+		
+		//29.02.2012 was Wednesday
+		assertEquals(3, DateUtils.getDayOfWeek(day));
+		assertEquals(0, DateUtils.getEpochDay(1970, 1, 1));
+		assertEquals(-1, DateUtils.getEpochDay(1969, 12, 31));
+		assertEquals(28, DateUtils.getDaysInMonth(1900, 2));
+	}
+	
+	public void testThreadFormats() throws InterruptedException {
+		final SimpleDateFormat format = DateFormatFactory.getThreadDateFormat();
+		
+		assertSame(format, DateFormatFactory.getThreadDateFormat());
+		assertNotSame(format, DateFormatFactory.getThreadDateTimeFormat());
+		assertEquals("06.08.2014", format.format(DateUtils.getDateFromEpochDay(DateUtils.getEpochDay(2014, 8, 6))));
+		
+		final SimpleDateFormat [] otherFormat = new SimpleDateFormat[1];
+		Thread thread = new Thread(new Runnable() {
+			
+			@Override
+			public void run() {
+				otherFormat[0] = DateFormatFactory.getThreadDateFormat();
+			}
+		});
+		thread.start();
+		thread.join();
+		
+		assertNotNull(otherFormat[0]);
+		assertNotSame(format, otherFormat[0]);
+	}
+	
+	public void testZoneOffsetTable() throws ParseException {
+		TimeZone zone = TimeZone.getTimeZone("Europe/Berlin");
+		long anchorTime = 1388534400000L; //01.01.2014 00:00 UTC
+		ZoneOffsetTable table = new ZoneOffsetTable(zone, anchorTime);
+		
+		//offset is changed on 30.03.2014 and 26.10.2014.
+		for (long time = anchorTime; time < anchorTime + 366 * DateUtils.DAY_MILLIS; time += DateUtils.HOUR_MILLIS) {
+			assertEquals(zone.getOffset(time), table.getOffset(time));
+		}
+		assertTrue(table.getHitCount() > table.getMissCount());
+		
+		//days out of table.
+		long farTime = anchorTime + 3000 * DateUtils.DAY_MILLIS;
+		assertEquals(zone.getOffset(farTime), table.getOffset(farTime));
+		assertEquals(zone.getOffset(-farTime), table.getOffset(-farTime));
+		
+		Date dateTime = dateTimeFormat.parse("30.03.2014 13:25");
+		
+		assertEquals(dateFormat.parse("30.03.2014").getTime(), DateUtils.extractDateMillis(dateTime.getTime()));
+		assertEquals(timeFormat.parse("13:25").getTime(), DateUtils.extractTimeMillis(dateTime.getTime()));
+		assertEquals(DateUtils.extractDate(dateTime), new Date(DateUtils.extractDateMillis(dateTime.getTime())));
+	}
+	
+	public void testDefaultTimeZoneChange() {
+		TimeZone defaultZone = TimeZone.getDefault();
+		long time = 1407196800000L; //05.08.2014 00:00 UTC
+		try {
+			TimeZone.setDefault(TimeZone.getTimeZone("Europe/Berlin"));
+			Event event = new Event.Builder().setName("event").setDate(time).build();
+			int generation = DateUtils.getZoneGeneration();
+			
+			assertEquals(DateUtils.getEpochDay(2014, 8, 5), DateUtils.getEpochDay(time));
+			assertTrue(event.isOccurrenceDay(DateUtils.getEpochDay(2014, 8, 5)));
+			
+			//offsets and cached occurrences follow new default zone without reset.
+			TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+			
+			assertTrue(DateUtils.getZoneGeneration() != generation);
+			assertEquals(DateUtils.getEpochDay(2014, 8, 4), DateUtils.getEpochDay(time));
+			assertTrue(event.isOccurrenceDay(DateUtils.getEpochDay(2014, 8, 4)));
+			assertFalse(event.isOccurrenceDay(DateUtils.getEpochDay(2014, 8, 5)));
+		} finally {
+			TimeZone.setDefault(defaultZone);
+		}
+	}
 }
@@ -87,7 +87,7 @@ public class EventAlarmTestCase extends TestCase {
 	public void testGetEventOccurrence() throws ParseException {
 		Event event = new Event.Builder()
 					.setDate(dateFormat.parse("10.07.2014"))
-					.setAlarmTime(EventAlarm.timeFormat.parse("06.07.2014 15:47"))
+					.setAlarmTime(dateTimeFormat.parse("06.07.2014 15:47"))
 					.build();
 		EventAlarm alarm = event.getAlarm();
 		assertEquals(dateFormat.parse("10.07.2014"), alarm.getEventOccurrence(alarm.time));
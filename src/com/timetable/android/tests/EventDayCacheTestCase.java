@@ -0,0 +1,95 @@
+package com.timetable.android.tests;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import com.timetable.android.Event;
+import com.timetable.android.EventDayCache;
+import com.timetable.android.EventPeriod;
+import com.timetable.android.utils.DateUtils;
+
+public class EventDayCacheTestCase extends TestCase {
+
+	private int startDay = DateUtils.getEpochDay(2014, 8, 4);
+
+	private Event everySecondDay;
+
+	private Event single;
+
+	private EventDayCache cache;
+
+	public void setUp() throws ParseException {
+		everySecondDay = new Event.Builder()
+							.setId(1)
+							.setName("every second day")
+							.setDate(DateUtils.getDateFromEpochDay(startDay))
+							.setStartTime("12:00")
+							.setPeriodType(EventPeriod.DAILY)
+							.setPeriodInterval(2)
+							.build();
+
+		single = new Event.Builder()
+							.setId(2)
+							.setName("single")
+							.setDate(DateUtils.getDateFromEpochDay(startDay + 2))
+							.setStartTime("10:00")
+							.build();
+
+		List<Event> events = new ArrayList<Event>();
+		events.add(single);
+		events.add(everySecondDay);
+		cache = new EventDayCache();
+		cache.setEvents(Collections.unmodifiableList(events), null);
+	}
+
+	public void testGetEvents() {
+		List<Event> events = cache.getEvents(startDay + 2);
+
+		assertEquals(2, events.size());
+		assertEquals(single, events.get(0));
+		assertEquals(everySecondDay, events.get(1));
+		assertEquals(0, cache.getEvents(startDay + 1).size());
+		assertEquals(0, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+
+		cache.getEvents(startDay + 2);
+		assertEquals(1, cache.getHitCount());
+	}
+
+	public void testPrefetch() {
+		cache.prefetchNow(startDay + 10);
+
+		for (int day = startDay + 10 - EventDayCache.PREFETCH_DAYS; day <= startDay + 10 + EventDayCache.PREFETCH_DAYS; day++) {
+			assertTrue(cache.isCached(day));
+		}
+		assertEquals(1, cache.getEvents(startDay + 12).size());
+		assertEquals(0, cache.getMissCount());
+	}
+
+	public void testInvalidation() throws ParseException {
+		cache.prefetchNow(startDay + 3);
+
+		Event moved = new Event(single.convert());
+		moved.setDate(DateUtils.getDateFromEpochDay(startDay + 5));
+		Set<Integer> days = cache.updateEvent(moved);
+
+		assertEquals(2, days.size());
+		assertTrue(days.contains(startDay + 2));
+		assertTrue(days.contains(startDay + 5));
+		assertTrue(cache.isCached(startDay + 4));
+		assertEquals(1, cache.getEvents(startDay + 2).size());
+		assertEquals(moved, cache.getEvents(startDay + 5).get(0));
+
+		days = cache.deleteEvent(everySecondDay);
+
+		assertTrue(days.contains(startDay + 4));
+		assertFalse(days.contains(startDay + 5));
+		assertEquals(0, cache.getEvents(startDay + 4).size());
+		assertEquals(1, cache.getEvents().size());
+	}
+}
@@ -8,6 +8,7 @@ import junit.framework.TestCase;
 
 import com.timetable.android.EventPeriod;
 import com.timetable.android.utils.DateFormatFactory;
+import com.timetable.android.utils.DateUtils;
 
 public class EventPeriodTestCase extends TestCase {
 
@@ -366,6 +367,20 @@ public class EventPeriodTestCase extends TestCase {
 	
 	}
 	
+	public void testGetNextOccurrenceSkipsShortMonths() throws ParseException {
+		EventPeriod period = new EventPeriod();
+		period.setInterval(1);
+		period.setType(EventPeriod.MONTHLY);
+		Date startDate = dateFormat.parse("31.01.2014");
+		
+		assertEquals(dateFormat.parse("31.03.2014"), period.getNextOccurrence(startDate, dateFormat.parse("01.02.2014")));
+		
+		period.setType(EventPeriod.YEARLY);
+		startDate = dateFormat.parse("29.02.2012");
+		
+		assertEquals(dateFormat.parse("29.02.2016"), period.getNextOccurrence(startDate, dateFormat.parse("01.03.2012")));
+	}
+	
 	public void testGetNextOccurrenceTypeYearly() throws ParseException {
 		
 		EventPeriod period = new EventPeriod();
@@ -387,6 +402,67 @@ public class EventPeriodTestCase extends TestCase {
 		
 	}
 	
+	public void testGetOccurrenceByIndex() {
+		int[][] periods = {
+				//type, interval, week mask, year, month, day of month.
+				{EventPeriod.DAILY.ordinal(), 3, 0, 2014, 9, 1},
+				{EventPeriod.WEEKLY.ordinal(), 1, 0x2A, 2014, 9, 1},
+				{EventPeriod.WEEKLY.ordinal(), 2, 0x41, 2014, 9, 3},
+				{EventPeriod.WEEKLY.ordinal(), 3, 0, 2014, 9, 3},
+				{EventPeriod.MONTHLY.ordinal(), 1, 0, 2014, 1, 15},
+				{EventPeriod.MONTHLY.ordinal(), 1, 0, 2014, 1, 31},
+				{EventPeriod.MONTHLY.ordinal(), 5, 0, 2014, 1, 30},
+				{EventPeriod.MONTHLY.ordinal(), 1, 0, 2011, 1, 29},
+				{EventPeriod.YEARLY.ordinal(), 1, 0, 2012, 2, 29},
+				{EventPeriod.YEARLY.ordinal(), 25, 0, 2000, 2, 29},
+				{EventPeriod.YEARLY.ordinal(), 3, 0, 2014, 7, 2}
+		};
+		for (int[] p: periods) {
+			EventPeriod.Type type = EventPeriod.Type.values()[p[0]];
+			int startDay = DateUtils.getEpochDay(p[3], p[4], p[5]);
+			int day = startDay;
+			for (int index = 0; index < 300; index++) {
+				day = EventPeriod.getNextOccurrence(type, p[1], p[2], startDay, Integer.MAX_VALUE, day);
+				assertEquals(day, EventPeriod.getOccurrenceByIndex(type, p[1], p[2], startDay, index));
+				if (day == EventPeriod.NO_OCCURRENCE) {
+					break;
+				}
+				day++;
+			}
+		}
+	}
+	
+	public void testNumberOfRepeats() throws ParseException {
+		EventPeriod period = new EventPeriod();
+		period.setType(EventPeriod.MONTHLY);
+		period.setInterval(1);
+		period.setNumberOfRepeats(3);
+		Date startDate = dateFormat.parse("31.01.2014");
+		
+		assertEquals(DateUtils.getEpochDay(2014, 5, 31) + 1, period.getEndDay(DateUtils.getEpochDay(startDate)));
+		assertEquals(dateFormat.parse("31.05.2014"), period.getNextOccurrence(startDate, dateFormat.parse("01.04.2014")));
+		assertNull(period.getNextOccurrence(startDate, dateFormat.parse("01.06.2014")));
+		assertFalse(period.isFinished(startDate, dateFormat.parse("31.05.2014")));
+		assertTrue(period.isFinished(startDate, dateFormat.parse("01.06.2014")));
+		
+		period.setNumberOfRepeats(2);
+		
+		assertEquals(DateUtils.getEpochDay(2014, 3, 31) + 1, period.getEndDay(DateUtils.getEpochDay(startDate)));
+		
+		period.setEndDate("31.05.2014");
+		
+		assertTrue(period.isFinished(startDate, dateFormat.parse("31.05.2014")));
+		
+		period.setType(EventPeriod.NONE);
+		
+		assertEquals(DateUtils.getEpochDay(2014, 5, 31), period.getEndDay(DateUtils.getEpochDay(startDate)));
+		
+		//changes through deprecated fields are also noticed.
+		period.type = EventPeriod.MONTHLY;
+		period.endDate = null;
+		
+		assertEquals(DateUtils.getEpochDay(2014, 3, 31) + 1, period.getEndDay(DateUtils.getEpochDay(startDate)));
+	}
 	
 	public void testEquals() throws ParseException {
 		EventPeriod period1 = new EventPeriod();
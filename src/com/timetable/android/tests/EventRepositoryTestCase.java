@@ -0,0 +1,128 @@
+package com.timetable.android.tests;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import android.test.AndroidTestCase;
+import android.test.RenamingDelegatingContext;
+
+import com.timetable.android.Event;
+import com.timetable.android.EventPeriod;
+import com.timetable.android.EventRepository;
+import com.timetable.android.EventWriter;
+import com.timetable.android.TimetableDatabase;
+import com.timetable.android.TimetableDatabase.ChangeSet;
+import com.timetable.android.utils.DateUtils;
+
+public class EventRepositoryTestCase extends AndroidTestCase {
+
+	private static final long TIMEOUT_SECONDS = 5;
+
+	private TimetableDatabase db;
+
+	private EventRepository repository;
+
+	private Event repeated;
+
+	private Event muting;
+
+	public void setUp() throws ParseException {
+		RenamingDelegatingContext context = new RenamingDelegatingContext(getContext(), "EventRepositoryTestCase_");
+		db = TimetableDatabase.getInstance(context);
+		repository = EventRepository.getInstance(context);
+
+		repeated = new Event.Builder()
+						.setName("repeated")
+						.setDate("04.08.2014")
+						.setStartTime("10:00")
+						.setPeriodType(EventPeriod.DAILY)
+						.setPeriodInterval(2)
+						.setAlarmTime("04.08.2014 09:50")
+						.build();
+		muting = new Event.Builder()
+						.setName("muting")
+						.setDate("05.08.2014")
+						.setStartTime("09:00")
+						.setMuteDevice(true)
+						.build();
+		db.insertEvent(repeated);
+		db.insertEvent(muting);
+		repository.reload();
+	}
+
+	public void tearDown() {
+		db.clear();
+		repository.reload();
+	}
+
+	public void testIndexes() {
+		assertTrue(repository.containsEvent(repeated.getId()));
+		assertEquals(repeated, repository.getEvent(repeated.getId()));
+		assertNull(repository.getEvent(-1));
+
+		assertEquals(2, repository.getEvents().size());
+		assertEquals(muting, repository.getEvents().get(0));
+
+		int day = DateUtils.getEpochDay(2014, 8, 6);
+		assertEquals(1, repository.getEvents(day).size());
+		assertEquals(repeated, repository.getEvents(day).get(0));
+	}
+
+	public void testApplyChanges() throws ParseException, InterruptedException {
+		final List<String> changes = new ArrayList<String>();
+		EventRepository.OnEventChangedListener listener = new EventRepository.OnEventChangedListener() {
+
+			@Override
+			public void onEventAdded(Event event) {
+				changes.add("added " + event.getName());
+			}
+
+			@Override
+			public void onEventUpdated(Event event) {
+				changes.add("updated " + event.getName());
+			}
+
+			@Override
+			public void onEventDeleted(Event event) {
+				changes.add("deleted " + event.getName());
+			}
+		};
+		repository.addOnEventChangedListener(listener);
+		int day = DateUtils.getEpochDay(2014, 8, 6);
+		assertEquals(1, repository.getEvents(day).size());
+
+		Event single = new Event.Builder()
+						.setName("single")
+						.setDate("06.08.2014")
+						.setStartTime("11:00")
+						.build();
+		repeated.addException("06.08.2014");
+		final CountDownLatch latch = new CountDownLatch(1);
+		repository.apply(new ChangeSet()
+							.addException(repeated, DateUtils.getDateFromEpochDay(day))
+							.delete(muting)
+							.insert(single), new EventWriter.OnChangesAppliedListener() {
+
+			@Override
+			public void onChangesApplied(boolean isApplied) {
+				latch.countDown();
+			}
+		});
+		assertTrue(latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+		repository.removeOnEventChangedListener(listener);
+
+		assertFalse(repository.containsEvent(muting.getId()));
+		assertEquals(2, repository.getEvents().size());
+		assertEquals(single, repository.getEvent(single.getId()));
+		assertEquals(1, repository.getEvents(day).size());
+		assertEquals(single, repository.getEvents(day).get(0));
+
+		assertEquals(3, changes.size());
+		assertEquals("deleted muting", changes.get(0));
+		assertEquals("added single", changes.get(1));
+		assertEquals("updated repeated", changes.get(2));
+	}
+}
@@ -2,6 +2,7 @@ package com.timetable.android.tests;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
 
 import junit.framework.TestCase;
@@ -11,6 +12,7 @@ import com.timetable.android.Event;
 import com.timetable.android.EventPeriod;
 import com.timetable.android.alarm.EventAlarm;
 import com.timetable.android.utils.DateFormatFactory;
+import com.timetable.android.utils.DateUtils;
 
 public class EventTestCase extends TestCase {
 	
@@ -52,6 +54,34 @@ public class EventTestCase extends TestCase {
 		assertEquals(event, new Event(eventData));
 	}
 	
+	public void testCopy() throws ParseException {
+		Event event = new Event.Builder()
+						.setId(20)
+						.setName("name")
+						.setDate("09.08.2014")
+						.setStartTime("11:03")
+						.setEndTime("12:03")
+						.addException("10.08.2014")
+						.setPeriodType(EventPeriod.DAILY)
+						.setPeriodInterval(1)
+						.setAlarmTime("08.08.2014 11:37")
+						.build();
+		Event copy = new Event(event);
+		
+		assertEquals(event, copy);
+		assertSame(copy, copy.getAlarm().event);
+		
+		copy.getPeriod().setEndDate(dateFormat.parse("12.08.2014"));
+		copy.addException(dateFormat.parse("11.08.2014"));
+		copy.getAlarm().setTime(dateTimeFormat.parse("08.08.2014 11:40").getTime());
+		
+		assertFalse(event.getPeriod().hasEndDate());
+		assertEquals(1, event.getExceptionDays().length);
+		assertEquals(dateTimeFormat.parse("08.08.2014 11:37").getTime(), event.getAlarm().getTimeMillis());
+		assertTrue(event.isToday(dateFormat.parse("13.08.2014")));
+		assertFalse(copy.isToday(dateFormat.parse("13.08.2014")));
+	}
+	
 	public void testIsNew() {
 		Event event = new Event();
 		
@@ -142,7 +172,7 @@ public class EventTestCase extends TestCase {
 		
 		assertFalse(event.isToday(searchDate));
 		
-		event.getExceptions().clear();
+		event.clearExceptions();
 		event.getPeriod().setInterval(3);
 		
 		assertTrue(event.isToday(searchDate));
@@ -325,6 +355,135 @@ public class EventTestCase extends TestCase {
 		
 	}
 	
+	public void testExceptionDays() throws ParseException {
+		Event event = new Event.Builder()
+						.setDate("01.09.2014")
+						.setExceptionDays(new int[] {16320, 16316, 16320})
+						.addException("02.09.2014")
+						.build();
+		
+		assertTrue(Arrays.equals(new int[] {16315, 16316, 16320}, event.getExceptionDays()));
+		assertTrue(event.isException(dateFormat.parse("03.09.2014")));
+		assertFalse(event.isException(dateFormat.parse("04.09.2014")));
+		
+		event.deleteException(dateFormat.parse("03.09.2014"));
+		
+		assertTrue(Arrays.equals(new int[] {16315, 16320}, event.getExceptionDays()));
+		assertEquals(2, event.getExceptionStrings().length);
+		assertEquals("02.09.2014", event.getExceptionStrings()[0]);
+	}
+	
+	public void testGetOccurrencesBetween() throws ParseException {
+		Event event = new Event.Builder()
+						.setDate("1.9.2014")
+						.setPeriodType(EventPeriod.DAILY)
+						.setPeriodInterval(2)
+						.build();
+		
+		int startDay = DateUtils.getEpochDay(event.getDate());
+		
+		int[] occurrences = event.getOccurrencesBetween(startDay - 3, startDay + 6);
+		assertTrue(Arrays.equals(new int[] {startDay, startDay + 2, startDay + 4, startDay + 6}, occurrences));
+		
+		event.addException("3.9.2014");
+		event.getPeriod().setEndDate("7.9.2014");
+		occurrences = event.getOccurrencesBetween(startDay + 1, startDay + 10);
+		assertTrue(Arrays.equals(new int[] {startDay + 4}, occurrences));
+		
+		event.getPeriod().deleteEndDate();
+		event.getPeriod().setNumberOfRepeats(3);
+		occurrences = event.getOccurrencesBetween(startDay, startDay + 100);
+		assertTrue(Arrays.equals(new int[] {startDay, startDay + 4}, occurrences));
+	}
+	
+	public void testIsOccurrenceDay() throws ParseException {
+		Event event = new Event.Builder()
+						.setDate("1.9.2014")
+						.setPeriodType(EventPeriod.WEEKLY)
+						.setPeriodInterval(2)
+						.build();
+		event.getPeriod().addWeekOccurrence(EventPeriod.MONDAY);
+		event.getPeriod().addWeekOccurrence(EventPeriod.THURSDAY);
+		event.addException("4.9.2014");
+		
+		int startDay = DateUtils.getEpochDay(event.getDate());
+		int horizon = Event.getOccurrenceHorizon();
+		
+		//days far from each other are checked to rebuild bitmap.
+		for (int day = startDay - 10; day < startDay + 3 * horizon; day += 1 + horizon / 3) {
+			for (int i = 0; i < 7; i++) {
+				assertEquals(event.getPeriod().getNextOccurrence(startDay, day + i) == day + i && !event.isExceptionDay(day + i), 
+								event.isOccurrenceDay(day + i));
+			}
+		}
+		
+		assertTrue(event.isOccurrenceDay(startDay + 14));
+		
+		event.addExceptionDay(startDay + 14);
+		
+		assertFalse(event.isOccurrenceDay(startDay + 14));
+		
+		event.getPeriod().setInterval(1);
+		
+		assertTrue(event.isOccurrenceDay(startDay + 7));
+		
+		event.setDate(DateUtils.getDateFromEpochDay(startDay + 7));
+		
+		assertFalse(event.isOccurrenceDay(startDay));
+		assertTrue(event.isOccurrenceDay(startDay + 10));
+		
+		//changes through array of week occurrences are also noticed.
+		event.getPeriod().getWeekOccurrences()[EventPeriod.THURSDAY] = false;
+		
+		assertFalse(event.isOccurrenceDay(startDay + 10));
+		assertTrue(event.isOccurrenceDay(startDay + 21));
+	}
+	
+	public void testGetNextOccurrenceDay() throws ParseException {
+		Event event = new Event.Builder()
+						.setDate("1.9.2014")
+						.setPeriodType(EventPeriod.DAILY)
+						.setPeriodInterval(1)
+						.build();
+		int startDay = DateUtils.getEpochDay(event.getDate());
+		
+		//holidays for a semester.
+		int[] holidays = new int[120];
+		for (int i = 0; i < holidays.length; i++) {
+			holidays[i] = startDay + 10 + i;
+		}
+		event.setExceptionDays(holidays);
+		
+		assertEquals(startDay + 5, event.getNextOccurrenceDay(startDay + 5));
+		assertEquals(startDay + 130, event.getNextOccurrenceDay(startDay + 10));
+		assertEquals(dateFormat.parse("9.1.2015"), event.getNextOccurrence(dateFormat.parse("20.9.2014")));
+		
+		int horizon = Event.getOccurrenceHorizon();
+		try {
+			//occurrence is found after the end of bitmap.
+			Event.setOccurrenceHorizon(7);
+			event.setExceptionDays(holidays);
+			
+			assertEquals(startDay + 130, event.getNextOccurrenceDay(startDay + 10));
+			
+			event.getPeriod().setEndDate(DateUtils.getDateFromEpochDay(startDay + 130));
+			
+			assertEquals(EventPeriod.NO_OCCURRENCE, event.getNextOccurrenceDay(startDay + 10));
+			assertNull(event.getNextOccurrence(dateFormat.parse("20.9.2014")));
+			
+			//runs of exceptions are skipped, but the day after each run is checked.
+			event.getPeriod().deleteEndDate();
+			holidays[holidays.length - 1] = startDay + 131;
+			event.setExceptionDays(holidays);
+			
+			assertEquals(startDay + 129, event.getNextOccurrenceDay(startDay + 10));
+			assertEquals(startDay + 130, event.getNextOccurrenceDay(startDay + 130));
+			assertEquals(startDay + 132, event.getNextOccurrenceDay(startDay + 131));
+		} finally {
+			Event.setOccurrenceHorizon(horizon);
+		}
+	}
+	
 	public void testIsOk() throws ParseException {
 		
 		Event event = new Event();
@@ -0,0 +1,185 @@
+package com.timetable.android.tests;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import android.test.AndroidTestCase;
+import android.test.RenamingDelegatingContext;
+
+import com.timetable.android.Event;
+import com.timetable.android.EventRepository;
+import com.timetable.android.EventTimeline;
+import com.timetable.android.EventWriter;
+import com.timetable.android.TimetableDatabase;
+import com.timetable.android.TimetableDatabase.ChangeSet;
+import com.timetable.android.utils.DateFormatFactory;
+import com.timetable.android.utils.FakeTimeProvider;
+import com.timetable.android.utils.SimpleTimeProvider;
+import com.timetable.android.utils.Utils;
+
+public class EventTimelineTestCase extends AndroidTestCase {
+
+	private static final long TIMEOUT_SECONDS = 5;
+
+	private SimpleDateFormat dateTimeFormat = DateFormatFactory.getDateTimeFormat();
+
+	private TimetableDatabase db;
+
+	private EventRepository repository;
+
+	private EventTimeline timeline;
+
+	private FakeTimeProvider timeProvider;
+
+	private Event lesson;
+
+	private Event meeting;
+
+	//transitions, that are dispatched to listener, in order of their dispatch.
+	private List<String> transitions = new Vector<String>();
+
+	private TransitionListener listener = new TransitionListener();
+
+	private class TransitionListener implements EventTimeline.OnEventStartedListener, EventTimeline.OnEventEndedListener,
+													EventTimeline.OnAlarmFiredListener {
+
+		@Override
+		public void onEventStarted(Event event) {
+			transitions.add("started " + event.getName());
+		}
+
+		@Override
+		public void onEventEnded(Event event) {
+			transitions.add("ended " + event.getName());
+		}
+
+		@Override
+		public void onAlarmFired(Event event) {
+			transitions.add("alarm " + event.getName());
+		}
+	}
+
+	public void setUp() throws ParseException {
+		RenamingDelegatingContext context = new RenamingDelegatingContext(getContext(), "EventTimelineTestCase_");
+		db = TimetableDatabase.getInstance(context);
+		repository = EventRepository.getInstance(context);
+		timeline = EventTimeline.getInstance(context);
+		timeProvider = new FakeTimeProvider(dateTimeFormat.parse("04.08.2014 09:00"));
+		Utils.setTimeProvider(timeProvider);
+
+		lesson = new Event.Builder()
+						.setName("lesson")
+						.setDate("04.08.2014")
+						.setStartTime("10:00")
+						.setEndTime("11:00")
+						.setAlarmTime("04.08.2014 09:50")
+						.build();
+		meeting = new Event.Builder()
+						.setName("meeting")
+						.setDate("04.08.2014")
+						.setStartTime("12:00")
+						.setEndTime("13:00")
+						.build();
+		db.insertEvent(lesson);
+		db.insertEvent(meeting);
+		repository.reload();
+	}
+
+	public void tearDown() {
+		timeline.removeOnEventStartedListener(listener);
+		timeline.removeOnEventEndedListener(listener);
+		timeline.removeOnAlarmFiredListener(listener);
+		Utils.setTimeProvider(new SimpleTimeProvider());
+		db.clear();
+		repository.reload();
+		//timeline can be kept running by services of application.
+		timeline.reload();
+		timeline.stop();
+	}
+
+	private void startTimeline() {
+		timeline.start();
+		timeline.reload();
+	}
+
+	public void testDispatchTransitions() throws ParseException {
+		timeline.addOnEventStartedListener(listener);
+		timeline.addOnEventEndedListener(listener);
+		timeline.addOnAlarmFiredListener(listener);
+		startTimeline();
+
+		assertTrue(transitions.isEmpty());
+		assertEquals(lesson.getId(), timeline.getNextAlarmEvent().getId());
+		assertEquals(dateTimeFormat.parse("04.08.2014 09:50"), timeline.getNextAlarmTime());
+
+		timeProvider.setTime(dateTimeFormat.parse("04.08.2014 10:30"));
+		timeline.wakeUp();
+
+		assertEquals(2, transitions.size());
+		assertEquals("alarm lesson", transitions.get(0));
+		assertEquals("started lesson", transitions.get(1));
+		assertFalse(timeline.hasAlarms());
+
+		timeProvider.setTime(dateTimeFormat.parse("04.08.2014 12:30"));
+		timeline.wakeUp();
+
+		assertEquals(4, transitions.size());
+		assertEquals("ended lesson", transitions.get(2));
+		assertEquals("started meeting", transitions.get(3));
+	}
+
+	public void testSnoozeAlarm() throws ParseException {
+		timeline.addOnAlarmFiredListener(listener);
+		startTimeline();
+
+		timeProvider.setTime(dateTimeFormat.parse("04.08.2014 09:55"));
+		timeline.wakeUp();
+		timeline.snoozeAlarm(lesson, dateTimeFormat.parse("04.08.2014 10:05").getTime());
+
+		assertTrue(timeline.hasAlarm(lesson));
+		assertEquals(dateTimeFormat.parse("04.08.2014 10:05"), timeline.getNextAlarmTime());
+
+		timeProvider.setTime(dateTimeFormat.parse("04.08.2014 10:05"));
+		timeline.wakeUp();
+
+		assertEquals(2, transitions.size());
+		assertEquals("alarm lesson", transitions.get(1));
+	}
+
+	public void testEventChanges() throws InterruptedException {
+		startTimeline();
+		assertTrue(timeline.hasAlarm(lesson));
+
+		//repository notifies timeline on the main thread before listener of change set is called.
+		final CountDownLatch latch = new CountDownLatch(1);
+		repository.apply(new ChangeSet().delete(lesson), new EventWriter.OnChangesAppliedListener() {
+
+			@Override
+			public void onChangesApplied(boolean isApplied) {
+				latch.countDown();
+			}
+		});
+		assertTrue(latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+		assertFalse(timeline.hasAlarm(lesson));
+		assertFalse(timeline.hasAlarms());
+	}
+
+	public void testLateListenerIsNotifiedAboutCurrentEvents() throws ParseException {
+		timeProvider.setTime(dateTimeFormat.parse("04.08.2014 10:30"));
+		startTimeline();
+
+		//second service starts timeline, that is already running.
+		timeline.addOnEventStartedListener(listener);
+		timeline.start();
+
+		assertEquals(1, transitions.size());
+		assertEquals("started lesson", transitions.get(0));
+
+		timeline.stop();
+	}
+}
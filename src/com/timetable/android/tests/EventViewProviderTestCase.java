@@ -0,0 +1,88 @@
+package com.timetable.android.tests;
+
+import android.test.AndroidTestCase;
+import android.widget.LinearLayout;
+
+import com.timetable.android.EventView;
+import com.timetable.android.EventViewProvider;
+
+public class EventViewProviderTestCase extends AndroidTestCase {
+
+	private static final int OWNER_ID = 1;
+
+	private static final int OTHER_OWNER_ID = 2;
+
+	private EventViewProvider provider;
+
+	public void setUp() {
+		provider = EventViewProvider.getInstance(getContext());
+	}
+
+	public void tearDown() {
+		EventViewProvider.clear(getContext());
+	}
+
+	public void testPrewarm() {
+		provider.prewarm(EventViewProvider.PREWARM_VIEWS_NUMBER);
+
+		assertEquals(EventViewProvider.PREWARM_VIEWS_NUMBER, provider.getFreeViewsCount());
+
+		provider.prewarm(2 * EventViewProvider.MAX_POOL_SIZE);
+
+		assertEquals(EventViewProvider.MAX_POOL_SIZE, provider.getFreeViewsCount());
+		assertEquals(0, provider.getHitCount());
+		assertEquals(0, provider.getMissCount());
+	}
+
+	public void testHitsAndMisses() {
+		provider.prewarm(1);
+
+		EventView first = provider.getView(OWNER_ID);
+		EventView second = provider.getView(OWNER_ID);
+
+		assertNotSame(first, second);
+		assertEquals(1, provider.getHitCount());
+		assertEquals(1, provider.getMissCount());
+		assertEquals(0, provider.getFreeViewsCount());
+
+		provider.releaseViews(OWNER_ID);
+
+		assertEquals(2, provider.getFreeViewsCount());
+
+		EventView reused = provider.getView(OTHER_OWNER_ID);
+
+		assertTrue(reused == first || reused == second);
+		assertEquals(2, provider.getHitCount());
+		assertEquals(1, provider.getMissCount());
+	}
+
+	public void testReleaseViews() {
+		LinearLayout parent = new LinearLayout(getContext());
+		EventView view = provider.getView(OWNER_ID);
+		parent.addView(view);
+
+		provider.releaseViews(OWNER_ID);
+
+		assertNull(view.getParent());
+		assertEquals(1, provider.getFreeViewsCount());
+
+		//views of owner are released only once.
+		provider.releaseViews(OWNER_ID);
+
+		assertEquals(1, provider.getFreeViewsCount());
+	}
+
+	public void testClear() {
+		provider.prewarm(3);
+		provider.getView(OWNER_ID);
+
+		EventViewProvider.clear(getContext());
+
+		assertEquals(0, provider.getFreeViewsCount());
+
+		EventViewProvider newProvider = EventViewProvider.getInstance(getContext());
+
+		assertNotSame(provider, newProvider);
+		assertEquals(0, newProvider.getFreeViewsCount());
+	}
+}
@@ -0,0 +1,79 @@
+package com.timetable.android.tests;
+
+import java.text.ParseException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import android.os.Looper;
+import android.test.AndroidTestCase;
+import android.test.RenamingDelegatingContext;
+
+import com.timetable.android.Event;
+import com.timetable.android.EventPeriod;
+import com.timetable.android.EventWriter;
+import com.timetable.android.TimetableDatabase;
+import com.timetable.android.TimetableDatabase.ChangeSet;
+
+public class EventWriterTestCase extends AndroidTestCase {
+
+	private static final long TIMEOUT_SECONDS = 5;
+
+	private TimetableDatabase db;
+
+	private EventWriter writer;
+
+	public void setUp() {
+		RenamingDelegatingContext context = new RenamingDelegatingContext(getContext(), "EventWriterTestCase_");
+		db = TimetableDatabase.getInstance(context);
+		writer = EventWriter.getInstance(context);
+	}
+
+	private boolean applyAndWait(ChangeSet changes) throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final boolean [] result = new boolean[2];
+		writer.apply(changes, new EventWriter.OnChangesAppliedListener() {
+
+			@Override
+			public void onChangesApplied(boolean isApplied) {
+				result[0] = isApplied;
+				result[1] = Looper.myLooper() == Looper.getMainLooper();
+				latch.countDown();
+			}
+		});
+		assertTrue(latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+		assertTrue("listener is not called on the main thread", result[1]);
+		return result[0];
+	}
+
+	public void testApplyChanges() throws ParseException, InterruptedException {
+		Event event = new Event.Builder()
+						.setName("repeated")
+						.setDate("04.08.2014")
+						.setStartTime("10:00")
+						.setPeriodType(EventPeriod.DAILY)
+						.setPeriodInterval(1)
+						.build();
+
+		assertTrue(applyAndWait(new ChangeSet().insert(event)));
+		assertEquals(event, db.searchEventById(event.getId()));
+
+		Event singleEvent = new Event.Builder()
+							.setName("single")
+							.setDate("05.08.2014")
+							.setStartTime("11:00")
+							.build();
+		event.addException("05.08.2014");
+		ChangeSet changes = new ChangeSet()
+								.addException(event, singleEvent.getDate())
+								.insert(singleEvent);
+
+		assertTrue(applyAndWait(changes));
+		assertTrue(db.isException(event, singleEvent.getDate()));
+		assertEquals(singleEvent, db.searchEventById(singleEvent.getId()));
+
+		assertTrue(applyAndWait(new ChangeSet().delete(event).delete(singleEvent)));
+		assertNull(db.searchEventById(event.getId()));
+		assertNull(db.searchEventById(singleEvent.getId()));
+		db.clear();
+	}
+}
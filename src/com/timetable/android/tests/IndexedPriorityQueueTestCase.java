@@ -0,0 +1,77 @@
+package com.timetable.android.tests;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.timetable.android.utils.IndexedPriorityQueue;
+
+public class IndexedPriorityQueueTestCase extends TestCase {
+
+	public void testOfferAndPoll() {
+		IndexedPriorityQueue<String> queue = new IndexedPriorityQueue<String>(2);
+
+		assertNull(queue.peek());
+
+		queue.offer(1, 30, "first");
+		queue.offer(2, 10, "second");
+		queue.offer(3, 20, "third");
+
+		assertEquals(3, queue.size());
+		assertEquals("second", queue.peek());
+		assertEquals(10, queue.peekPriority());
+		assertEquals(2, queue.peekKey());
+
+		assertEquals("second", queue.poll());
+		assertEquals("third", queue.poll());
+		assertEquals("first", queue.poll());
+		assertTrue(queue.isEmpty());
+	}
+
+	public void testUpdateAndRemove() {
+		IndexedPriorityQueue<String> queue = new IndexedPriorityQueue<String>();
+		queue.offer(1, 30, "first");
+		queue.offer(2, 10, "second");
+		queue.offer(3, 20, "third");
+
+		queue.offer(1, 5, "first updated");
+
+		assertEquals(3, queue.size());
+		assertEquals("first updated", queue.peek());
+
+		queue.offer(1, 40, "first");
+
+		assertEquals("second", queue.peek());
+		assertTrue(queue.remove(2));
+		assertFalse(queue.remove(2));
+		assertFalse(queue.contains(2));
+		assertEquals("third", queue.peek());
+		assertEquals("first", queue.get(1));
+	}
+
+	public void testRandomOrder() {
+		IndexedPriorityQueue<Integer> queue = new IndexedPriorityQueue<Integer>();
+		Random random = new Random(17);
+		long[] priorities = new long[1000];
+		for (int i = 0; i < priorities.length; i++) {
+			priorities[i] = random.nextInt(100000);
+			queue.offer(i, priorities[i], i);
+		}
+		for (int i = 0; i < priorities.length; i += 3) {
+			queue.remove(i);
+		}
+		long last = Long.MIN_VALUE;
+		int count = 0;
+		while (!queue.isEmpty()) {
+			long priority = queue.peekPriority();
+			int key = queue.poll();
+
+			assertTrue(key % 3 != 0);
+			assertEquals(priorities[key], priority);
+			assertTrue(last <= priority);
+			last = priority;
+			count++;
+		}
+		assertEquals(666, count);
+	}
+}
@@ -17,6 +17,15 @@ public class MyInstrumentationTestRunner extends InstrumentationTestRunner {
 			suite.addTestSuite(TimetableUtilsTestCase.class);
 			suite.addTestSuite(EventAddActivityTestCase.class);
 			suite.addTestSuite(EventAlarmTestCase.class);
+			suite.addTestSuite(IndexedPriorityQueueTestCase.class);
+			suite.addTestSuite(EventDayCacheTestCase.class);
+			suite.addTestSuite(RowMapperTestCase.class);
+			suite.addTestSuite(EventWriterTestCase.class);
+			suite.addTestSuite(EventRepositoryTestCase.class);
+			suite.addTestSuite(RecurrenceRuleTestCase.class);
+			suite.addTestSuite(DateUtilsTestCase.class);
+			suite.addTestSuite(EventTimelineTestCase.class);
+			suite.addTestSuite(EventViewProviderTestCase.class);
 			return suite;
 		}
 }
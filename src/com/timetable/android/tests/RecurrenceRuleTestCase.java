@@ -0,0 +1,150 @@
+package com.timetable.android.tests;
+
+import java.text.ParseException;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import com.timetable.android.EventPeriod;
+import com.timetable.android.RecurrenceRule;
+import com.timetable.android.utils.DateUtils;
+
+public class RecurrenceRuleTestCase extends TestCase {
+
+	/*
+	 * Return first @count occurrences of rule, started on given date, as epoch days.
+	 */
+	private int [] getOccurrences(String rule, int year, int month, int dayOfMonth, int count) throws ParseException {
+		RecurrenceRule.OccurrenceIterator iterator = new RecurrenceRule.OccurrenceIterator()
+											.reset(RecurrenceRule.parse(rule), DateUtils.getEpochDay(year, month, dayOfMonth));
+		int [] occurrences = new int[count];
+		int day = Integer.MIN_VALUE + 1;
+		for (int i = 0; i < count; i++) {
+			occurrences[i] = iterator.getNextOccurrence(day);
+			if (occurrences[i] == EventPeriod.NO_OCCURRENCE) {
+				int [] found = new int[i];
+				System.arraycopy(occurrences, 0, found, 0, i);
+				return found;
+			}
+			day = occurrences[i] + 1;
+		}
+		return occurrences;
+	}
+
+	private int [] days(int year, int month, int... daysOfMonth) {
+		int [] days = new int[daysOfMonth.length];
+		for (int i = 0; i < days.length; i++) {
+			days[i] = DateUtils.getEpochDay(year, month, daysOfMonth[i]);
+		}
+		return days;
+	}
+
+	private void assertOccurrences(int [] expected, int [] actual) {
+		assertEquals(Arrays.toString(expected), Arrays.toString(actual));
+	}
+
+	public void testParse() throws ParseException {
+		RecurrenceRule rule = RecurrenceRule.parse("RRULE:freq=monthly;interval=2;byday=2TU");
+
+		assertEquals(EventPeriod.MONTHLY, rule.getFrequency());
+		assertEquals(2, rule.getInterval());
+		assertEquals("FREQ=MONTHLY;INTERVAL=2;BYDAY=2TU", rule.toString());
+		assertEquals(rule, RecurrenceRule.parse(rule.toString()));
+
+		String [] invalidRules = new String [] {"", "INTERVAL=2", "FREQ=HOURLY", "FREQ=DAILY;INTERVAL=0",
+								"FREQ=DAILY;COUNT=2;UNTIL=20140101", "FREQ=WEEKLY;BYDAY=2TU", "FREQ=WEEKLY;BYMONTHDAY=1",
+								"FREQ=MONTHLY;BYDAY=XX", "FREQ=MONTHLY;BYMONTHDAY=32", "FREQ=DAILY;BYHOUR=10"};
+		for (String invalidRule: invalidRules) {
+			try {
+				RecurrenceRule.parse(invalidRule);
+				fail("Rule is parsed: " + invalidRule);
+			} catch (ParseException e) {
+			}
+		}
+	}
+
+	public void testMonthlyByDay() throws ParseException {
+		//every second Tuesday of month.
+		assertOccurrences(new int [] {DateUtils.getEpochDay(2014, 9, 1), DateUtils.getEpochDay(2014, 9, 9),
+								DateUtils.getEpochDay(2014, 10, 14), DateUtils.getEpochDay(2014, 11, 11)},
+							getOccurrences("FREQ=MONTHLY;BYDAY=2TU", 2014, 9, 1, 4));
+
+		//the last weekday of month.
+		assertOccurrences(new int [] {DateUtils.getEpochDay(2014, 8, 29), DateUtils.getEpochDay(2014, 9, 30),
+								DateUtils.getEpochDay(2014, 10, 31), DateUtils.getEpochDay(2014, 11, 28)},
+							getOccurrences("FREQ=MONTHLY;BYDAY=MO,TU,WE,TH,FR;BYSETPOS=-1", 2014, 8, 29, 4));
+
+		//the last Friday of month.
+		assertOccurrences(new int [] {DateUtils.getEpochDay(2014, 8, 29), DateUtils.getEpochDay(2014, 9, 26)},
+							getOccurrences("FREQ=MONTHLY;BYDAY=-1FR", 2014, 8, 29, 2));
+	}
+
+	public void testMonthlyByMonthDay() throws ParseException {
+		assertOccurrences(new int [] {DateUtils.getEpochDay(2014, 1, 15), DateUtils.getEpochDay(2014, 1, 31),
+								DateUtils.getEpochDay(2014, 2, 1), DateUtils.getEpochDay(2014, 2, 15), DateUtils.getEpochDay(2014, 2, 28)},
+							getOccurrences("FREQ=MONTHLY;BYMONTHDAY=1,15,-1", 2014, 1, 15, 5));
+
+		//months without 31st day are skipped.
+		assertOccurrences(new int [] {DateUtils.getEpochDay(2014, 1, 31), DateUtils.getEpochDay(2014, 3, 31), DateUtils.getEpochDay(2014, 5, 31)},
+							getOccurrences("FREQ=MONTHLY", 2014, 1, 31, 3));
+	}
+
+	public void testYearly() throws ParseException {
+		//the fourth Thursday of November.
+		assertOccurrences(new int [] {DateUtils.getEpochDay(2014, 11, 27), DateUtils.getEpochDay(2015, 11, 26), DateUtils.getEpochDay(2016, 11, 24)},
+							getOccurrences("FREQ=YEARLY;BYMONTH=11;BYDAY=4TH", 2014, 11, 27, 3));
+
+		//the first Monday of year.
+		assertOccurrences(new int [] {DateUtils.getEpochDay(2014, 1, 6), DateUtils.getEpochDay(2015, 1, 5)},
+							getOccurrences("FREQ=YEARLY;BYDAY=1MO", 2014, 1, 6, 2));
+
+		assertOccurrences(new int [] {DateUtils.getEpochDay(2012, 2, 29), DateUtils.getEpochDay(2016, 2, 29)},
+							getOccurrences("FREQ=YEARLY", 2012, 2, 29, 2));
+	}
+
+	public void testCountAndUntil() throws ParseException {
+		assertOccurrences(days(2014, 9, 1, 3, 8, 10), getOccurrences("FREQ=WEEKLY;BYDAY=MO,WE;COUNT=4", 2014, 9, 1, 10));
+		assertOccurrences(days(2014, 9, 1, 3, 8), getOccurrences("FREQ=WEEKLY;BYDAY=MO,WE;UNTIL=20140909T000000Z", 2014, 9, 1, 10));
+
+		//start day is always the first occurrence.
+		assertOccurrences(days(2014, 9, 2, 3, 10), getOccurrences("FREQ=WEEKLY;BYDAY=WE;COUNT=3", 2014, 9, 2, 10));
+
+		RecurrenceRule rule = RecurrenceRule.parse("FREQ=DAILY;INTERVAL=3;COUNT=5");
+		int startDay = DateUtils.getEpochDay(2014, 9, 1);
+
+		assertEquals(startDay + 13, rule.getEndDay(startDay));
+		assertEquals(startDay + 12, rule.getNextOccurrence(startDay, startDay + 10));
+		assertEquals(EventPeriod.NO_OCCURRENCE, rule.getNextOccurrence(startDay, startDay + 13));
+	}
+
+	public void testFromPeriod() throws ParseException {
+		EventPeriod [] periods = new EventPeriod[4];
+		for (int i = 0; i < periods.length; i++) {
+			periods[i] = new EventPeriod();
+		}
+		periods[0].setType(EventPeriod.DAILY);
+		periods[0].setInterval(3);
+		periods[0].setNumberOfRepeats(20);
+		periods[1].setType(EventPeriod.WEEKLY);
+		periods[1].setInterval(2);
+		periods[1].addWeekOccurrence(EventPeriod.MONDAY);
+		periods[1].addWeekOccurrence(EventPeriod.SATURDAY);
+		periods[2].setType(EventPeriod.MONTHLY);
+		periods[2].setInterval(1);
+		periods[2].setEndDate(DateUtils.getDateFromEpochDay(DateUtils.getEpochDay(2016, 1, 1)));
+		periods[3].setType(EventPeriod.YEARLY);
+		periods[3].setInterval(1);
+
+		int startDay = DateUtils.getEpochDay(2012, 2, 29);
+		for (EventPeriod period: periods) {
+			int [] expected = period.getOccurrencesBetween(startDay, startDay, startDay + 2000, null);
+
+			period.setRule(RecurrenceRule.fromPeriod(period, startDay));
+
+			assertTrue(period.hasRule());
+			assertOccurrences(expected, period.getOccurrencesBetween(startDay, startDay, startDay + 2000, null));
+		}
+
+		assertNull(RecurrenceRule.fromPeriod(new EventPeriod(), startDay));
+	}
+}
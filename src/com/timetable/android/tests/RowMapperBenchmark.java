@@ -0,0 +1,56 @@
+package com.timetable.android.tests;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import android.database.MatrixCursor;
+
+import com.timetable.android.Event;
+import com.timetable.android.EventRowMapper;
+import com.timetable.android.Logger;
+
+/*
+ * Compare per row cost of lookup of columns by name with cached indexes of EventRowMapper.
+ * Benchmark is not registered in MyInstrumentationTestRunner, so that it does not slow down the suite. Run it manually:
+ * adb shell am instrument -w -e class com.timetable.android.tests.RowMapperBenchmark
+ * 		com.timetable.android/com.timetable.android.tests.MyInstrumentationTestRunner
+ */
+public class RowMapperBenchmark extends TestCase {
+
+	private static final int BENCHMARK_ROWS = 2000;
+
+	public void testBenchmark() throws ParseException {
+		MatrixCursor cursor = RowMapperTestCase.createCursor(RowMapperTestCase.createEvent(), BENCHMARK_ROWS);
+		List<Event> byName = new ArrayList<Event>(BENCHMARK_ROWS);
+		List<Event> byMapper = new ArrayList<Event>(BENCHMARK_ROWS);
+
+		//warm up both paths, so that JIT does not distort the first measurement.
+		cursor.moveToFirst();
+		EventRowMapper mapper = new EventRowMapper();
+		for (int i = 0; i < BENCHMARK_ROWS; i++) {
+			RowMapperTestCase.mapByName(cursor);
+			mapper.map(cursor);
+		}
+
+		cursor.moveToPosition(-1);
+		long start = System.nanoTime();
+		while (cursor.moveToNext()) {
+			byName.add(RowMapperTestCase.mapByName(cursor));
+		}
+		long byNameTime = System.nanoTime() - start;
+
+		cursor.moveToPosition(-1);
+		start = System.nanoTime();
+		mapper = new EventRowMapper();
+		while (cursor.moveToNext()) {
+			byMapper.add(mapper.map(cursor));
+		}
+		long byMapperTime = System.nanoTime() - start;
+
+		Logger.log("RowMapperBenchmark.testBenchmark: per row " + Long.toString(byNameTime / BENCHMARK_ROWS) + " ns by name, "
+					+ Long.toString(byMapperTime / BENCHMARK_ROWS) + " ns by mapper.");
+		assertEquals(byName, byMapper);
+	}
+}
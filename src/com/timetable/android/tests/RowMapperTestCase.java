@@ -0,0 +1,178 @@
+package com.timetable.android.tests;
+
+import java.text.ParseException;
+
+import junit.framework.TestCase;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+
+import com.timetable.android.AlarmRowMapper;
+import com.timetable.android.Event;
+import com.timetable.android.EventPeriod;
+import com.timetable.android.EventRowMapper;
+import com.timetable.android.PeriodRowMapper;
+import com.timetable.android.alarm.EventAlarm;
+
+public class RowMapperTestCase extends TestCase {
+
+	//columns in the same order, as they are selected by TimetableDatabase.EVENT_QUERY.
+	private static final String [] EVENT_COLUMNS = new String [] {"evt_id", "evt_name", "evt_place", "evt_start_time", "evt_end_time",
+				"evt_date", "evt_mute_device", "evt_note",
+				"per_id", "per_type", "per_interval", "per_week_occurences", "per_end_date", "per_num_of_repeats", "per_rrule",
+				"alm_id", "alm_type", "alm_time", "evt_exceptions"};
+
+	private Event event;
+
+	public void setUp() throws ParseException {
+		event = createEvent();
+	}
+
+	/*
+	 * Return weekly event with alarm and exceptions, so that every column of row is filled.
+	 */
+	static Event createEvent() throws ParseException {
+		Event event = new Event.Builder()
+					.setId(7)
+					.setName("event")
+					.setPlace("place")
+					.setNote("note")
+					.setDate("04.08.2014")
+					.setStartTime("10:00")
+					.setEndTime("11:30")
+					.setMuteDevice(true)
+					.setPeriodType(EventPeriod.WEEKLY)
+					.setPeriodInterval(1)
+					.setPeriodEndDate("04.08.2015")
+					.setAlarmTime("04.08.2014 09:45")
+					.addException("11.08.2014")
+					.addException("18.08.2014")
+					.build();
+		event.getPeriod().setId(3);
+		event.getPeriod().addWeekOccurrence(0);
+		event.getAlarm().id = 5;
+		return event;
+	}
+
+	static Object [] createRow(Event event) {
+		EventPeriod period = event.getPeriod();
+		EventAlarm alarm = event.getAlarm();
+		StringBuilder exceptions = new StringBuilder();
+		for (int day: event.getExceptionDays()) {
+			if (exceptions.length() > 0) {
+				exceptions.append(",");
+			}
+			exceptions.append(day);
+		}
+		return new Object [] {event.getId(), event.getName(), event.getPlace(), event.getStartTimeMillis(), event.getEndTimeMillis(),
+					event.getDateMillis(), event.mutesDevice() ? 1 : 0, event.getNote(),
+					period.getId(), period.getTypeInt(), period.getInterval(), period.getWeekOccurrencesInt(),
+					period.getEndDateMillis(), period.getNumberOfRepeats(), period.getRuleString(),
+					alarm == null ? null : alarm.id, alarm == null ? null : alarm.type.ordinal(), alarm == null ? null : alarm.getTimeMillis(),
+					exceptions.length() == 0 ? null : exceptions.toString()};
+	}
+
+	static MatrixCursor createCursor(Event event, int rows) {
+		MatrixCursor cursor = new MatrixCursor(EVENT_COLUMNS);
+		Object [] row = createRow(event);
+		for (int i = 0; i < rows; i++) {
+			cursor.addRow(row);
+		}
+		return cursor;
+	}
+
+	/*
+	 * Build event the way it was done before row mappers: every column is looked up by name in every row.
+	 */
+	static Event mapByName(Cursor cursor) {
+		EventPeriod period = new EventPeriod(cursor.getInt(cursor.getColumnIndex("per_id")));
+		period.setType(cursor.getInt(cursor.getColumnIndex("per_type")));
+		period.setInterval(cursor.getInt(cursor.getColumnIndex("per_interval")));
+		period.setWeekOccurrences(cursor.getInt(cursor.getColumnIndex("per_week_occurences")));
+		period.setEndDate(cursor.getLong(cursor.getColumnIndex("per_end_date")));
+		period.setNumberOfRepeats(cursor.getInt(cursor.getColumnIndex("per_num_of_repeats")));
+		String [] exceptions = cursor.getString(cursor.getColumnIndex("evt_exceptions")).split(",");
+		int [] exceptionDays = new int[exceptions.length];
+		for (int i = 0; i < exceptions.length; i++) {
+			exceptionDays[i] = Integer.parseInt(exceptions[i]);
+		}
+		Event event = new Event.Builder()
+						.setId(cursor.getInt(cursor.getColumnIndex("evt_id")))
+						.setName(cursor.getString(cursor.getColumnIndex("evt_name")))
+						.setPlace(cursor.getString(cursor.getColumnIndex("evt_place")))
+						.setNote(cursor.getString(cursor.getColumnIndex("evt_note")))
+						.setPeriod(period)
+						.setMuteDevice(cursor.getInt(cursor.getColumnIndex("evt_mute_device")) != 0)
+						.setStartTime(cursor.getLong(cursor.getColumnIndex("evt_start_time")))
+						.setDate(cursor.getLong(cursor.getColumnIndex("evt_date")))
+						.setEndTime(cursor.getLong(cursor.getColumnIndex("evt_end_time")))
+						.setExceptionDays(exceptionDays)
+						.build();
+		EventAlarm alarm = new EventAlarm(event);
+		alarm.id = cursor.getInt(cursor.getColumnIndex("alm_id"));
+		alarm.type = EventAlarm.Type.values()[cursor.getInt(cursor.getColumnIndex("alm_type"))];
+		alarm.setTime(cursor.getLong(cursor.getColumnIndex("alm_time")));
+		event.setAlarm(alarm);
+		return event;
+	}
+
+	public void testEventRowMapper() {
+		MatrixCursor cursor = createCursor(event, 1);
+		cursor.moveToFirst();
+
+		Event mappedEvent = new EventRowMapper().map(cursor);
+
+		assertEquals(event, mappedEvent);
+		assertSame(mappedEvent, mappedEvent.getAlarm().event);
+		assertEquals(mapByName(cursor), mappedEvent);
+	}
+
+	public void testEventWithoutPeriodAndAlarm() {
+		Object [] row = createRow(event);
+		for (int i = 8; i < row.length; i++) {
+			row[i] = null;
+		}
+		MatrixCursor cursor = new MatrixCursor(EVENT_COLUMNS);
+		cursor.addRow(row);
+		cursor.moveToFirst();
+
+		Event mappedEvent = new EventRowMapper().map(cursor);
+
+		assertNull(mappedEvent.getPeriod());
+		assertFalse(mappedEvent.hasAlarm());
+		assertFalse(mappedEvent.hasExceptions());
+	}
+
+	public void testMappersAreRebound() {
+		MatrixCursor periodCursor = new MatrixCursor(new String [] {"per_num_of_repeats", "per_end_date", "per_week_occurences",
+														"per_interval", "per_type", "per_id"});
+		EventPeriod period = event.getPeriod();
+		periodCursor.addRow(new Object [] {period.getNumberOfRepeats(), period.getEndDateMillis(), period.getWeekOccurrencesInt(),
+										period.getInterval(), period.getTypeInt(), period.getId()});
+		PeriodRowMapper periodMapper = new PeriodRowMapper();
+		MatrixCursor eventCursor = createCursor(event, 1);
+		eventCursor.moveToFirst();
+		periodCursor.moveToFirst();
+
+		assertEquals(period, periodMapper.map(eventCursor));
+
+		EventPeriod holder = new EventPeriod();
+		assertSame(holder, periodMapper.map(periodCursor, holder));
+		assertEquals(period, holder);
+
+		AlarmRowMapper alarmMapper = new AlarmRowMapper();
+		assertFalse(alarmMapper.isNull(eventCursor));
+		assertEquals(event.getAlarm(), alarmMapper.map(eventCursor, event));
+	}
+
+	public void testRecurrenceRule() throws ParseException {
+		event.getPeriod().setRule("FREQ=MONTHLY;BYDAY=-1FR");
+		MatrixCursor cursor = createCursor(event, 1);
+		cursor.moveToFirst();
+
+		Event mappedEvent = new EventRowMapper().map(cursor);
+
+		assertTrue(mappedEvent.getPeriod().hasRule());
+		assertEquals(event.getPeriod().getRule(), mappedEvent.getPeriod().getRule());
+		assertEquals(event, mappedEvent);
+	}
+}
@@ -2,21 +2,36 @@ package com.timetable.android.tests;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.SortedMap;
 import java.util.Vector;
 
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
 import android.test.AndroidTestCase;
 import android.test.RenamingDelegatingContext;
 
+import com.timetable.android.DatabaseMigrator;
 import com.timetable.android.Event;
+import com.timetable.android.EventCursor;
 import com.timetable.android.EventPeriod;
+import com.timetable.android.QueryPlanVerifier;
 import com.timetable.android.TimetableDatabase;
 import com.timetable.android.alarm.EventAlarm;
 import com.timetable.android.utils.DateFormatFactory;
+import com.timetable.android.utils.DateUtils;
+import com.timetable.android.utils.Utils;
 
 public class TimetableDatabaseTestCase extends AndroidTestCase {
 
 
+	private static final String FIXTURE_DB_NAME = "fixture.db";
+	
 	private RenamingDelegatingContext mContext;
 	
 	private TimetableDatabase db;
@@ -128,6 +143,58 @@ public class TimetableDatabaseTestCase extends AndroidTestCase {
 		db.clear();
 	}
 	
+	public void testRecurrenceRule() throws ParseException {
+		Event event = new Event.Builder()
+						.setName("event1")
+						.setDate("09.09.2014")
+						.setStartTime("10:00")
+						.build();
+		event.getPeriod().setRule("FREQ=MONTHLY;BYDAY=2TU");
+		
+		event = db.insertEvent(event);
+		Event foundEvent = db.searchEventById(event.getId());
+		
+		assertEquals(event, foundEvent);
+		assertEquals("FREQ=MONTHLY;BYDAY=2TU", foundEvent.getPeriod().getRuleString());
+		assertTrue(foundEvent.isToday(dateFormat.parse("14.10.2014")));
+		
+		event.getPeriod().deleteRule();
+		event.getPeriod().setType(EventPeriod.NONE);
+		db.updateEvent(event);
+		
+		assertFalse(db.searchEventById(event.getId()).getPeriod().hasRule());
+		db.clear();
+	}
+	
+	public void testEventCursor() {
+		for(int i = 0; i < foundEvents.size(); i++) {
+			foundEvents.setElementAt(db.insertEvent(foundEvents.get(i)), i);
+		}
+		
+		EventCursor cursor = db.queryAllEvents();
+		try {
+			assertEquals(foundEvents.size(), cursor.getCount());
+			int i = foundEvents.size() - 1;
+			for (Event event: cursor) {
+				assertEquals(foundEvents.get(i), event);
+				i--;
+			}
+			assertEquals(-1, i);
+		} finally {
+			cursor.close();
+		}
+		
+		cursor = db.queryEventsWithAlarm();
+		try {
+			assertTrue(cursor.moveToNext());
+			assertEquals(foundEvents.get(1), cursor.getEvent());
+			assertFalse(cursor.moveToNext());
+		} finally {
+			cursor.close();
+		}
+		db.clear();
+	}
+	
 	public void testUpdateEvent() throws ParseException {
 		Event oldEvent = new Event.Builder()
 							.setName("old name")
@@ -165,6 +232,246 @@ public class TimetableDatabaseTestCase extends AndroidTestCase {
 	}
 	
 	
+	public void testSearchOccurrencesBetween() {
+		Date today = Utils.getCurrDate();
+		int todayDay = DateUtils.getEpochDay(today);
+		Event event = new Event.Builder()
+						.setName("every second day")
+						.setDate(today)
+						.setStartTime("10:00")
+						.setPeriodType(EventPeriod.DAILY)
+						.setPeriodInterval(2)
+						.build();
+		
+		event = db.insertEvent(event);
+		SortedMap<Integer, Vector<Event>> occurrences = db.searchOccurrencesBetween(todayDay, todayDay + 5);
+		
+		assertEquals(3, occurrences.size());
+		assertTrue(occurrences.containsKey(todayDay + 4));
+		assertEquals(event, occurrences.get(todayDay + 2).get(0));
+		
+		db.insertException(event, DateUtils.getDateFromEpochDay(todayDay + 2));
+		
+		assertEquals(0, db.searchEventsByDate(DateUtils.getDateFromEpochDay(todayDay + 2)).size());
+		assertEquals(1, db.searchEventsByDate(DateUtils.getDateFromEpochDay(todayDay + 4)).size());
+		
+		db.deleteAllEventExceptions(event);
+		
+		assertEquals(1, db.searchEventsByDate(DateUtils.getDateFromEpochDay(todayDay + 2)).size());
+		db.clear();
+	}
+	
+	public void testApplyChanges() throws ParseException {
+		Event event1 = new Event.Builder()
+						.setName("event1")
+						.setDate("04.08.2014")
+						.setStartTime("10:00")
+						.setPeriodType(EventPeriod.DAILY)
+						.setPeriodInterval(1)
+						.addException("05.08.2014")
+						.setAlarmTime("04.08.2014 09:50")
+						.build();
+		
+		Event event2 = new Event.Builder()
+						.setName("event2")
+						.setDate("04.08.2014")
+						.setStartTime("12:00")
+						.build();
+		
+		assertTrue(db.insertEvents(Arrays.asList(event1, event2)));
+		assertEquals(event1, db.searchEventById(event1.getId()));
+		assertEquals(event2, db.searchEventById(event2.getId()));
+		assertTrue(db.isException(event1, dateFormat.parse("05.08.2014")));
+		
+		Date exception = dateFormat.parse("06.08.2014");
+		event1.setName("event1 updated");
+		event1.addException(exception);
+		TimetableDatabase.ChangeSet changes = new TimetableDatabase.ChangeSet()
+												.update(event1)
+												.addException(event1, exception)
+												.delete(event2);
+		
+		assertTrue(db.applyChanges(changes));
+		assertEquals(event1, db.searchEventById(event1.getId()));
+		assertNull(db.searchEventById(event2.getId()));
+		assertEquals(0, db.searchEventsByDate(exception).size());
+		db.clear();
+	}
+	
+	/*
+	 * Create fixture database of version 3 with 26 exceptions, saved as strings. One of them is invalid.
+	 */
+	private SQLiteDatabase createVersion3Fixture() {
+		mContext.deleteDatabase(FIXTURE_DB_NAME);
+		SQLiteDatabase fixture = mContext.openOrCreateDatabase(FIXTURE_DB_NAME, Context.MODE_PRIVATE, null);
+		fixture.execSQL("CREATE TABLE Events (evt_id INTEGER NOT NULL PRIMARY KEY AUTOINCREMENT, evt_name VARCHAR(45), "
+							+ "evt_place VARCHAR(45), evt_start_time BIGINT, evt_end_time BIGINT, evt_date BIGINT, per_id INT, "
+							+ "evt_mute_device INT, evt_note TEXT)");
+		fixture.execSQL("CREATE TABLE Periods (per_id INTEGER PRIMARY KEY AUTOINCREMENT, per_type INTEGER NOT NULL, "
+							+ "per_interval INTEGER, per_week_occurences INTEGER, per_end_date BIGINT, per_num_of_repeats INTEGER)");
+		fixture.execSQL("CREATE TABLE Alarms (alm_id INTEGER PRIMARY KEY AUTOINCREMENT, alm_time BIGINT, alm_type INTEGER, evt_id INTEGER)");
+		fixture.execSQL("INSERT INTO Periods (per_type, per_interval) VALUES (1, 1)");
+		fixture.execSQL("CREATE TABLE Exceptions (ex_id INTEGER PRIMARY KEY AUTOINCREMENT, evt_id INTEGER NOT NULL, ex_date DATE)");
+		for (int i = 0; i < 25; i++) {
+			fixture.execSQL("INSERT INTO Exceptions (evt_id, ex_date) VALUES (?, ?)", 
+								new Object [] {i % 3 + 1, String.format("2014-08-%02d", i + 1)});
+		}
+		fixture.execSQL("INSERT INTO Exceptions (evt_id, ex_date) VALUES (1, 'invalid')");
+		DatabaseMigrator.createVersionTable(fixture, 3);
+		return fixture;
+	}
+	
+	/*
+	 * Fixture database of version 3, whose exceptions are saved as strings, is migrated without losing data.
+	 */
+	public void testMigrationFromVersion3() {
+		SQLiteDatabase fixture = createVersion3Fixture();
+		
+		final List<Integer> progress = new ArrayList<Integer>();
+		DatabaseMigrator migrator = TimetableDatabase.createMigrator()
+										.setChunkSize(10)
+										.setOnMigrationProgressListener(new DatabaseMigrator.OnMigrationProgressListener() {
+											
+											@Override
+											public void onMigrationProgress(int version, int done, int total) {
+												assertEquals(5, version);
+												assertEquals(26, total);
+												progress.add(done);
+											}
+										});
+		
+		int latestVersion = migrator.getLatestVersion();
+		
+		assertTrue(migrator.migrate(fixture));
+		assertEquals(latestVersion, DatabaseMigrator.getVersion(fixture));
+		assertEquals(Arrays.asList(10, 20, 26), progress);
+		
+		Cursor cursor = fixture.rawQuery("SELECT ex_day FROM Exceptions WHERE evt_id = 1 ORDER BY ex_day", new String [] {});
+		assertEquals(9, cursor.getCount());
+		cursor.moveToFirst();
+		assertEquals(DateUtils.getEpochDay(2014, 8, 1), cursor.getInt(0));
+		cursor.close();
+		
+		cursor = fixture.rawQuery("SELECT COUNT(*) FROM Occurrences", new String [] {});
+		cursor.moveToFirst();
+		assertEquals(0, cursor.getInt(0));
+		cursor.close();
+		
+		//old periods have no recurrence rule.
+		cursor = fixture.rawQuery("SELECT per_rrule FROM Periods", new String [] {});
+		cursor.moveToFirst();
+		assertTrue(cursor.isNull(0));
+		cursor.close();
+		
+		//failed migration is rolled back and does not change version.
+		migrator.addMigration(new DatabaseMigrator.Migration(latestVersion + 1) {
+			
+			@Override
+			public void migrate(SQLiteDatabase db, DatabaseMigrator failingMigrator) {
+				db.execSQL("DELETE FROM Exceptions");
+				db.execSQL("INSERT INTO NotExistingTable VALUES (1)");
+			}
+		});
+		
+		assertFalse(migrator.migrate(fixture));
+		assertEquals(latestVersion, DatabaseMigrator.getVersion(fixture));
+		cursor = fixture.rawQuery("SELECT COUNT(*) FROM Exceptions", new String [] {});
+		cursor.moveToFirst();
+		assertEquals(25, cursor.getInt(0));
+		cursor.close();
+		
+		fixture.close();
+		mContext.deleteDatabase(FIXTURE_DB_NAME);
+	}
+	
+	/*
+	 * Each chunk of copied rows is committed, so interrupted migration is continued from the last chunk.
+	 */
+	public void testInterruptedMigration() {
+		SQLiteDatabase fixture = createVersion3Fixture();
+		final List<Integer> progress = new ArrayList<Integer>();
+		DatabaseMigrator migrator = TimetableDatabase.createMigrator()
+										.setChunkSize(10)
+										.setOnMigrationProgressListener(new DatabaseMigrator.OnMigrationProgressListener() {
+											
+											@Override
+											public void onMigrationProgress(int version, int done, int total) {
+												progress.add(done);
+												if (progress.size() == 1) {
+													throw new RuntimeException("interrupted");
+												}
+											}
+										});
+		
+		assertFalse(migrator.migrate(fixture));
+		assertEquals(4, DatabaseMigrator.getVersion(fixture));
+		Cursor cursor = fixture.rawQuery("SELECT COUNT(*) FROM Exceptions", new String [] {});
+		cursor.moveToFirst();
+		assertEquals(10, cursor.getInt(0));
+		cursor.close();
+		
+		assertTrue(migrator.migrate(fixture));
+		assertEquals(migrator.getLatestVersion(), DatabaseMigrator.getVersion(fixture));
+		assertEquals(Arrays.asList(10, 20, 26), progress);
+		cursor = fixture.rawQuery("SELECT COUNT(*) FROM Exceptions", new String [] {});
+		cursor.moveToFirst();
+		assertEquals(25, cursor.getInt(0));
+		cursor.close();
+		
+		fixture.close();
+		mContext.deleteDatabase(FIXTURE_DB_NAME);
+	}
+	
+	public void testQueryPlans() {
+		assertTrue(QueryPlanVerifier.isTableScan("SCAN TABLE Alarms"));
+		assertTrue(QueryPlanVerifier.isTableScan("SCAN Events"));
+		assertFalse(QueryPlanVerifier.isTableScan("SCAN TABLE Alarms USING COVERING INDEX Alarms_evt_id"));
+		assertFalse(QueryPlanVerifier.isTableScan("SEARCH TABLE Events USING INTEGER PRIMARY KEY (rowid=?)"));
+		
+		assertEquals(new ArrayList<String>(), db.verifyQueryPlans());
+	}
+	
+	public void testConcurrentReads() throws InterruptedException {
+		for(int i = 0; i < foundEvents.size(); i++) {
+			foundEvents.setElementAt(db.insertEvent(foundEvents.get(i)), i);
+		}
+		final int searchDay = DateUtils.getEpochDay(searchDate);
+		final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+		Thread [] readers = new Thread[4];
+		for (int i = 0; i < readers.length; i++) {
+			readers[i] = new Thread(new Runnable() {
+				
+				@Override
+				public void run() {
+					try {
+						for (int j = 0; j < 20; j++) {
+							assertTrue(db.getAllEvents().size() >= foundEvents.size());
+							assertTrue(db.searchOccurrencesBetween(searchDay, searchDay + 10).get(searchDay).size() >= foundEvents.size());
+							assertEquals("27.12.2013", db.searchEventById(foundEvents.get(0).getId()).getDateString());
+						}
+					} catch (Throwable e) {
+						errors.add(e);
+					}
+				}
+			});
+			readers[i].start();
+		}
+		for (int i = 0; i < 20; i++) {
+			Event event = new Event.Builder()
+							.setName("written while reading")
+							.setDate(searchDate)
+							.setStartTime(searchDate)
+							.build();
+			db.deleteEvent(db.insertEvent(event));
+		}
+		for (Thread reader: readers) {
+			reader.join();
+		}
+		
+		assertEquals(new ArrayList<Throwable>(), errors);
+		db.clear();
+	}
+	
 	public void testAlarm() throws ParseException {
 		
 		Event event1 = new Event.Builder()
@@ -1,10 +1,24 @@
 package com.timetable.android.utils;
 
 import java.text.SimpleDateFormat;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 
 public class DateFormatFactory {
 	
+	/*
+	 * SimpleDateFormat is not thread-safe, so formats, that are shared by classes, used from different threads,
+	 * are created once for each thread and pattern.
+	 */
+	private static final ThreadLocal<Map<String, SimpleDateFormat>> threadFormats = new ThreadLocal<Map<String, SimpleDateFormat>>() {
+		
+		@Override
+		protected Map<String, SimpleDateFormat> initialValue() {
+			return new HashMap<String, SimpleDateFormat>();
+		}
+	};
+	
 	public static SimpleDateFormat getFormat(String format) {
 		SimpleDateFormat dateFormat = new SimpleDateFormat(format, Locale.US);
 		//dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
@@ -31,4 +45,33 @@ public class DateFormatFactory {
 		return getFormat("dd.MM.yyyy HH:mm:ss");
 	}
 	
+	/*
+	 * Return format, that belongs to the current thread. It should not be passed to other threads.
+	 */
+	public static SimpleDateFormat getThreadFormat(String format) {
+		Map<String, SimpleDateFormat> formats = threadFormats.get();
+		SimpleDateFormat dateFormat = formats.get(format);
+		if (dateFormat == null) {
+			dateFormat = getFormat(format);
+			formats.put(format, dateFormat);
+		}
+		return dateFormat;
+	}
+	
+	public static SimpleDateFormat getThreadDateFormat() {
+		return getThreadFormat("dd.MM.yyyy");
+	}
+	
+	public static SimpleDateFormat getThreadTimeFormat() {
+		return getThreadFormat("HH:mm");
+	}
+	
+	public static SimpleDateFormat getThreadDateTimeFormat() {
+		return getThreadFormat("dd.MM.yyyy HH:mm");
+	}
+	
+	public static SimpleDateFormat getThreadLongDateTimeFormat() {
+		return getThreadFormat("dd.MM.yyyy HH:mm:ss");
+	}
+	
 }
@@ -4,6 +4,8 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.TimeZone;
 
 public class DateUtils {
@@ -22,9 +24,58 @@ public class DateUtils {
 	
 	public static final int AFTER = 1;
 	
+	//tables of offsets of time zones, that were default, by id of zone.
+	private static final Map<String, ZoneOffsetTable> sOffsetTables = new HashMap<String, ZoneOffsetTable>();
+	
+	//table of the last used default time zone, or null, if it should be found again.
+	private static volatile ZoneOffsetTable sOffsetTable;
+	
+	//is incremented each time default time zone is changed, so that cached epoch days can be checked.
+	private static volatile int sZoneGeneration = 0;
+	
+	/*
+	 * Return table of offsets of the current default time zone, that is built around current time.
+	 */
+	public static ZoneOffsetTable getOffsetTable() {
+		TimeZone zone = TimeZone.getDefault();
+		ZoneOffsetTable table = sOffsetTable;
+		if (table != null && table.getZone().getID().equals(zone.getID())) {
+			return table;
+		}
+		synchronized (sOffsetTables) {
+			table = sOffsetTables.get(zone.getID());
+			if (table == null) {
+				table = new ZoneOffsetTable(zone, System.currentTimeMillis());
+				sOffsetTables.put(zone.getID(), table);
+			}
+			sOffsetTable = table;
+			sZoneGeneration++;
+		}
+		return table;
+	}
+	
+	/*
+	 * Return generation of the current default time zone. Epoch days, that were computed
+	 * with different generation, may be wrong for the current zone.
+	 */
+	public static int getZoneGeneration() {
+		getOffsetTable();
+		return sZoneGeneration;
+	}
+	
+	/*
+	 * Drop offsets of all time zones, so that they are built again.
+	 * Should be called, when time zone of device or it's rules are changed.
+	 */
+	public static void resetTimeZone() {
+		synchronized (sOffsetTables) {
+			sOffsetTables.clear();
+			sOffsetTable = null;
+		}
+	}
 	
 	public static long getOffset(long time) {
-		return TimeZone.getDefault().getOffset(time);
+		return getOffsetTable().getOffset(time);
 	}
 	
 	public static long addOffset(long time) {
@@ -43,6 +94,104 @@ public class DateUtils {
 		return new Date(removeOffset(time.getTime()));
 	}
 	
+	/*
+	 * Return number of days between 01.01.1970 and local date of given time.
+	 */
+	public static int getEpochDay(long time) {
+		long localTime = addOffset(time);
+		long day = localTime / DAY_MILLIS;
+		if (localTime % DAY_MILLIS < 0) {
+			day--;
+		}
+		return (int) day;
+	}
+	
+	public static int getEpochDay(Date date) {
+		return getEpochDay(date.getTime());
+	}
+	
+	/*
+	 * Return local midnight of the day, that has given number of days since 01.01.1970.
+	 */
+	public static Date getDateFromEpochDay(int epochDay) {
+		long localTime = epochDay * DAY_MILLIS;
+		return new Date(localTime - getOffset(removeOffset(localTime)));
+	}
+	
+	/*
+	 * Return date of the day, that has given number of days since 01.01.1970, with the same local time as given @time.
+	 */
+	public static Date getDateFromEpochDay(int epochDay, Date time) {
+		long localTime = epochDay * DAY_MILLIS + addOffset(time.getTime()) - getEpochDay(time) * DAY_MILLIS;
+		return new Date(localTime - getOffset(removeOffset(localTime)));
+	}
+	
+	/*
+	 * Return number of days between 01.01.1970 and given date.
+	 * Month is counted from 1(January) to 12(December).
+	 */
+	public static int getEpochDay(int year, int month, int dayOfMonth) {
+		//days are counted in 400 years eras, that start on 1st of March.
+		int y = month <= 2 ? year - 1 : year;
+		int era = (y >= 0 ? y : y - 399) / 400;
+		int yearOfEra = y - era * 400;
+		int dayOfYear = (153 * ((month + 9) % 12) + 2) / 5 + dayOfMonth - 1;
+		int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+	
+	/*
+	 * Return year, month(from 1 to 12) and day of month of given epoch day, packed into one integer.
+	 * Use getYear, getMonth and getDayOfMonth to unpack them.
+	 */
+	private static int getCivilDate(int epochDay) {
+		int z = epochDay + 719468;
+		int era = (z >= 0 ? z : z - 146096) / 146097;
+		int dayOfEra = z - era * 146097;
+		int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		int monthFromMarch = (5 * dayOfYear + 2) / 153;
+		int dayOfMonth = dayOfYear - (153 * monthFromMarch + 2) / 5 + 1;
+		int month = monthFromMarch < 10 ? monthFromMarch + 3 : monthFromMarch - 9;
+		int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+		return (year << 9) | (month << 5) | dayOfMonth;
+	}
+	
+	public static int getYear(int epochDay) {
+		return getCivilDate(epochDay) >> 9;
+	}
+	
+	public static int getMonth(int epochDay) {
+		return (getCivilDate(epochDay) >> 5) & 15;
+	}
+	
+	public static int getDayOfMonth(int epochDay) {
+		return getCivilDate(epochDay) & 31;
+	}
+	
+	/*
+	 * Return day of the week of given epoch day, Sunday is 0, Saturday is 6.
+	 * 01.01.1970 was Thursday.
+	 */
+	public static int getDayOfWeek(int epochDay) {
+		int dayOfWeek = (epochDay + 4) % 7;
+		return dayOfWeek < 0 ? dayOfWeek + 7 : dayOfWeek;
+	}
+	
+	public static boolean isLeapYear(int year) {
+		return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+	}
+	
+	/*
+	 * Return number of days in given month(from 1 to 12).
+	 */
+	public static int getDaysInMonth(int year, int month) {
+		if (month == 2) {
+			return isLeapYear(year) ? 29 : 28;
+		}
+		return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+	}
+	
 	/*
 	 * Try to parse date from string. If string is empty, return null;
 	 */
@@ -78,8 +227,23 @@ public class DateUtils {
 		cal.set(Calendar.MILLISECOND, 0);
 		return cal.getTime();
 	*/
-		long localTime = addOffset(dateTime.getTime());
-		return removeOffset(new Date(localTime - localTime % DAY_MILLIS));
+		return new Date(extractDateMillis(dateTime.getTime()));
+	}
+	
+	/*
+	 * Return local midnight of the day of given time.
+	 */
+	public static long extractDateMillis(long time) {
+		long localTime = addOffset(time);
+		return removeOffset(localTime - getLocalTimeOfDay(localTime));
+	}
+	
+	/*
+	 * Return milliseconds since midnight of given local time.
+	 */
+	private static long getLocalTimeOfDay(long localTime) {
+		long timeOfDay = localTime % DAY_MILLIS;
+		return timeOfDay < 0 ? timeOfDay + DAY_MILLIS : timeOfDay;
 	}
 	
 	public static Calendar extractTime(Calendar dateTime) {
@@ -98,7 +262,14 @@ public class DateUtils {
 		cal.set(Calendar.DAY_OF_YEAR, 1);
 		return cal.getTime();
 	*/
-		return new Date(removeOffset(addOffset(dateTime.getTime()) % DAY_MILLIS));
+		return new Date(extractTimeMillis(dateTime.getTime()));
+	}
+	
+	/*
+	 * Return time of day of given time, placed on 01.01.1970.
+	 */
+	public static long extractTimeMillis(long time) {
+		return removeOffset(getLocalTimeOfDay(addOffset(time)));
 	}
 	
 	public static Date setTime(Date date, Date time) {
@@ -127,7 +298,7 @@ public class DateUtils {
 		if (date1 == null || date2 == null) {
 			return false;
 		}
-		return extractDate(date1).equals(extractDate(date2));
+		return extractDateMillis(date1.getTime()) == extractDateMillis(date2.getTime());
 	}
 	
 	/*
@@ -135,10 +306,7 @@ public class DateUtils {
 	 * Time is not considered.
 	 */
 	public static int compareDates(Date first, Date second) {
-		int ans = extractDate(first).compareTo(extractDate(second));
-		if (ans < 0) return BEFORE;
-		else if (ans > 0) return AFTER;
-		else return EQUALS;
+		return compareMillis(extractDateMillis(first.getTime()), extractDateMillis(second.getTime()));
 	}
 	
 	/* 
@@ -146,9 +314,12 @@ public class DateUtils {
 	 * Date is not considered.
 	 */
 	public static int compareTimes(Date first, Date second) {
-		int ans = extractTime(first).compareTo(extractTime(second));
-		if (ans < 0) return BEFORE;
-		else if (ans > 0) return AFTER;
+		return compareMillis(extractTimeMillis(first.getTime()), extractTimeMillis(second.getTime()));
+	}
+	
+	private static int compareMillis(long first, long second) {
+		if (first < second) return BEFORE;
+		else if (first > second) return AFTER;
 		else return EQUALS;
 	}
 }
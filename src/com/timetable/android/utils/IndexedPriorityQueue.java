@@ -0,0 +1,209 @@
+package com.timetable.android.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Min-heap of values, identified by integer keys and ordered by long priorities.
+ * Each key can be contained in queue only once, so value can be found, updated or removed by it's key in O(log n).
+ */
+public class IndexedPriorityQueue<T> {
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private int[] keys;
+
+	private long[] priorities;
+
+	private Object[] values;
+
+	private int size = 0;
+
+	//position of each key in the heap.
+	private Map<Integer, Integer> positions = new HashMap<Integer, Integer>();
+
+	public IndexedPriorityQueue() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public IndexedPriorityQueue(int initialCapacity) {
+		if (initialCapacity < 1) {
+			initialCapacity = 1;
+		}
+		keys = new int[initialCapacity];
+		priorities = new long[initialCapacity];
+		values = new Object[initialCapacity];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean contains(int key) {
+		return positions.containsKey(key);
+	}
+
+	/*
+	 * Add value with given key and priority to the queue.
+	 * If queue already contains given key, it's value and priority are replaced.
+	 */
+	public void offer(int key, long priority, T value) {
+		Integer position = positions.get(key);
+		if (position != null) {
+			int i = position;
+			long oldPriority = priorities[i];
+			priorities[i] = priority;
+			values[i] = value;
+			if (priority < oldPriority) {
+				siftUp(i);
+			} else {
+				siftDown(i);
+			}
+			return;
+		}
+
+		if (size == keys.length) {
+			grow();
+		}
+		keys[size] = key;
+		priorities[size] = priority;
+		values[size] = value;
+		positions.put(key, size);
+		siftUp(size++);
+	}
+
+	/*
+	 * Remove value with given key. Return true, if value was found.
+	 */
+	public boolean remove(int key) {
+		Integer position = positions.remove(key);
+		if (position == null) {
+			return false;
+		}
+		int i = position;
+		size--;
+		if (i != size) {
+			move(size, i);
+			siftDown(i);
+			siftUp(i);
+		}
+		values[size] = null;
+		return true;
+	}
+
+	/*
+	 * Return value with given key or null, if queue does not contain it.
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(int key) {
+		Integer position = positions.get(key);
+		return position == null ? null : (T) values[position];
+	}
+
+	/*
+	 * Return value with the smallest priority or null, if queue is empty.
+	 */
+	@SuppressWarnings("unchecked")
+	public T peek() {
+		return isEmpty() ? null : (T) values[0];
+	}
+
+	/*
+	 * Return the smallest priority in queue. Queue should not be empty.
+	 */
+	public long peekPriority() {
+		return priorities[0];
+	}
+
+	public int peekKey() {
+		return keys[0];
+	}
+
+	/*
+	 * Remove and return value with the smallest priority or null, if queue is empty.
+	 */
+	public T poll() {
+		if (isEmpty()) {
+			return null;
+		}
+		T value = peek();
+		remove(keys[0]);
+		return value;
+	}
+
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			values[i] = null;
+		}
+		size = 0;
+		positions.clear();
+	}
+
+	private void siftUp(int i) {
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (priorities[parent] <= priorities[i]) {
+				break;
+			}
+			swap(i, parent);
+			i = parent;
+		}
+	}
+
+	private void siftDown(int i) {
+		while (true) {
+			int smallest = i;
+			int left = 2 * i + 1;
+			int right = left + 1;
+			if (left < size && priorities[left] < priorities[smallest]) {
+				smallest = left;
+			}
+			if (right < size && priorities[right] < priorities[smallest]) {
+				smallest = right;
+			}
+			if (smallest == i) {
+				return;
+			}
+			swap(i, smallest);
+			i = smallest;
+		}
+	}
+
+	private void swap(int i, int j) {
+		int key = keys[i];
+		long priority = priorities[i];
+		Object value = values[i];
+		move(j, i);
+		keys[j] = key;
+		priorities[j] = priority;
+		values[j] = value;
+		positions.put(key, j);
+	}
+
+	/*
+	 * Move element from position @from to position @to, overwriting element on it.
+	 */
+	private void move(int from, int to) {
+		keys[to] = keys[from];
+		priorities[to] = priorities[from];
+		values[to] = values[from];
+		positions.put(keys[to], to);
+	}
+
+	private void grow() {
+		int capacity = keys.length * 2;
+		int[] newKeys = new int[capacity];
+		long[] newPriorities = new long[capacity];
+		Object[] newValues = new Object[capacity];
+		System.arraycopy(keys, 0, newKeys, 0, size);
+		System.arraycopy(priorities, 0, newPriorities, 0, size);
+		System.arraycopy(values, 0, newValues, 0, size);
+		keys = newKeys;
+		priorities = newPriorities;
+		values = newValues;
+	}
+}
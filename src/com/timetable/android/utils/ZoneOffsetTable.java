@@ -0,0 +1,90 @@
+package com.timetable.android.utils;
+
+import java.util.TimeZone;
+
+/*
+ * Table of offsets of time zone from UTC for each day around given time, so that offset is found by array lookup
+ * instead of evaluating rules of time zone. Offset of each day is computed once, when it is requested for the first time.
+ * Days, on which offset is changed, are marked, and offsets on them and on days out of table are computed by time zone.
+ * Table can be used by several threads: entries are computed from the same zone, so concurrent writes are equal.
+ */
+public class ZoneOffsetTable {
+
+	//number of days before and after anchor day, for which offsets are kept.
+	public static final int DAYS_AROUND = 800;
+
+	//is saved for days, on which offset is changed.
+	private static final int TRANSITION = Integer.MIN_VALUE;
+
+	//is saved for days, whose offset is not computed yet.
+	private static final int NOT_COMPUTED = Integer.MAX_VALUE;
+
+	private final TimeZone mZone;
+
+	//the first day in table, counted since 01.01.1970 in UTC.
+	private final long mFromDay;
+
+	private final int [] mOffsets = new int[2 * DAYS_AROUND + 1];
+
+	//counters are not synchronized, they are used only for statistics.
+	private int mHits = 0;
+
+	private int mMisses = 0;
+
+	public ZoneOffsetTable(TimeZone zone, long anchorTime) {
+		mZone = zone;
+		mFromDay = getUtcDay(anchorTime) - DAYS_AROUND;
+		for (int i = 0; i < mOffsets.length; i++) {
+			mOffsets[i] = NOT_COMPUTED;
+		}
+	}
+
+	public TimeZone getZone() {
+		return mZone;
+	}
+
+	/*
+	 * Return offset of zone from UTC in milliseconds at given time.
+	 */
+	public int getOffset(long time) {
+		long index = getUtcDay(time) - mFromDay;
+		if (index < 0 || index >= mOffsets.length) {
+			mMisses++;
+			return mZone.getOffset(time);
+		}
+		int offset = mOffsets[(int) index];
+		if (offset == NOT_COMPUTED) {
+			offset = computeDayOffset(mFromDay + index);
+			mOffsets[(int) index] = offset;
+		}
+		if (offset == TRANSITION) {
+			mMisses++;
+			return mZone.getOffset(time);
+		}
+		mHits++;
+		return offset;
+	}
+
+	/*
+	 * Return offset of zone during given UTC day or TRANSITION, if offset is changed on that day.
+	 * Zones do not change offset more than once a day, so offsets at the beginning and at the end of day are compared.
+	 */
+	private int computeDayOffset(long day) {
+		long start = day * DateUtils.DAY_MILLIS;
+		int offset = mZone.getOffset(start);
+		return offset == mZone.getOffset(start + DateUtils.DAY_MILLIS - 1) ? offset : TRANSITION;
+	}
+
+	private static long getUtcDay(long time) {
+		long day = time / DateUtils.DAY_MILLIS;
+		return time % DateUtils.DAY_MILLIS < 0 ? day - 1 : day;
+	}
+
+	public int getHitCount() {
+		return mHits;
+	}
+
+	public int getMissCount() {
+		return mMisses;
+	}
+}